@@ -0,0 +1,47 @@
+package com.github.grishberg.tests;
+
+import com.github.grishberg.tests.commands.DeviceRunnerCommand;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Remembers which annotation lists have commands, so {@link CommandsForAnnotationProvider}
+ * is called only for tests which need commands. Discovered tests share annotation lists,
+ * so lookup is done by list identity and costs the same for any number of annotations.
+ * Not thread safe, should be created for each plan.
+ */
+public class AnnotationCommandDispatcher {
+    private final CommandsForAnnotationProvider commandsForAnnotationProvider;
+    private final IdentityHashMap<List<String>, Boolean> hasCommands = new IdentityHashMap<>();
+
+    public AnnotationCommandDispatcher(CommandsForAnnotationProvider commandsForAnnotationProvider) {
+        this.commandsForAnnotationProvider = commandsForAnnotationProvider;
+    }
+
+    /**
+     * @param annotations annotation list of test, must not be changed later.
+     * @return new commands for annotations or empty list.
+     */
+    public List<DeviceRunnerCommand> provideCommand(List<String> annotations) {
+        Boolean known = hasCommands.get(annotations);
+        if (Boolean.FALSE.equals(known)) {
+            return Collections.emptyList();
+        }
+        List<DeviceRunnerCommand> commands = commandsForAnnotationProvider.provideCommand(annotations);
+        if (known == null) {
+            hasCommands.put(annotations, !commands.isEmpty());
+        }
+        return commands;
+    }
+
+    public boolean hasCommands(List<String> annotations) {
+        Boolean known = hasCommands.get(annotations);
+        if (known == null) {
+            known = !commandsForAnnotationProvider.provideCommand(annotations).isEmpty();
+            hasCommands.put(annotations, known);
+        }
+        return known;
+    }
+}
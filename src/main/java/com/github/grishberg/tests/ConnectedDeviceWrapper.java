@@ -2,12 +2,18 @@ package com.github.grishberg.tests;
 
 import com.android.ddmlib.*;
 import com.android.utils.ILogger;
+import com.github.grishberg.tests.adb.AdbShellSession;
 import com.github.grishberg.tests.commands.ExecuteCommandException;
 import com.github.grishberg.tests.exceptions.PullCoverageException;
 import org.gradle.internal.impldep.org.apache.maven.wagon.CommandExecutionException;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
@@ -16,13 +22,41 @@ import java.util.concurrent.TimeUnit;
  */
 public class ConnectedDeviceWrapper implements IShellEnabledDevice, DeviceShellExecuter {
     public static final String COVERAGE_FILE_NAME = "coverage.ec";
+    private static final String API_LEVEL_PROPERTY = "ro.build.version.sdk";
+    private static final String ABI_PROPERTY = "ro.product.cpu.abi";
+    private static final String[] AVD_NAME_PROPERTIES = {"ro.boot.qemu.avd_name", "ro.kernel.qemu.avd_name"};
+    private static final long SHELL_TIMEOUT_MINUTES = 5L;
+    private static final String GETPROP_COMMAND = "getprop";
     private final IDevice device;
-    private String name;
+    @Nullable
+    private volatile String name;
+    private String fingerprint;
+    @Nullable
+    private volatile Future<?> pendingInstall;
+    @Nullable
+    private volatile AdbShellSession shellSession;
+    @Nullable
+    private volatile DeviceProperties properties;
 
     public ConnectedDeviceWrapper(IDevice device) {
         this.device = device;
     }
 
+    /**
+     * @param shellSession session for short shell commands, each command opens new adb
+     *                     connection when null or when device doesn't support session.
+     */
+    public void setShellSession(@Nullable AdbShellSession shellSession) {
+        this.shellSession = shellSession;
+    }
+
+    public void closeShellSession() {
+        AdbShellSession session = shellSession;
+        if (session != null) {
+            session.close();
+        }
+    }
+
     @Override
     public void executeShellCommand(String command,
                                     IShellOutputReceiver receiver,
@@ -32,17 +66,102 @@ public class ConnectedDeviceWrapper implements IShellEnabledDevice, DeviceShellE
         device.executeShellCommand(command, receiver, maxTimeToOutputResponse, maxTimeUnits);
     }
 
+    /**
+     * Property is read from snapshot, separate request is made only when snapshot is not available.
+     */
     @Override
     public Future<String> getSystemProperty(String name) {
-        return device.getSystemProperty(name);
+        DeviceProperties snapshot = getProperties();
+        if (snapshot.isEmpty()) {
+            return device.getSystemProperty(name);
+        }
+        return CompletableFuture.completedFuture(snapshot.get(name));
+    }
+
+    /**
+     * @return snapshot of all system properties made by one getprop command when it is requested
+     * first time, empty snapshot when getprop is failed. Failed getprop is not cached and is
+     * repeated on next request. Wrapper is created again when device is reconnected,
+     * so snapshot is refreshed on reconnect.
+     */
+    public DeviceProperties getProperties() {
+        DeviceProperties snapshot = properties;
+        if (snapshot == null) {
+            synchronized (this) {
+                snapshot = properties;
+                if (snapshot == null) {
+                    snapshot = loadProperties();
+                    if (!snapshot.isEmpty()) {
+                        properties = snapshot;
+                    }
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    private DeviceProperties loadProperties() {
+        try {
+            String output = executeShellCommandAndReturnOutput(GETPROP_COMMAND);
+            return output != null ? DeviceProperties.parse(output) : DeviceProperties.EMPTY;
+        } catch (ExecuteCommandException e) {
+            return DeviceProperties.EMPTY;
+        }
     }
 
+    /**
+     * @return AVD name of emulator from properties snapshot, serial number for other devices
+     * or when snapshot is not available. Name is not cached until snapshot is loaded.
+     */
     @Override
     public String getName() {
-        if (name == null) {
-            name = device.getAvdName();
+        String deviceName = name;
+        if (deviceName != null) {
+            return deviceName;
+        }
+        DeviceProperties snapshot = getProperties();
+        for (String property : AVD_NAME_PROPERTIES) {
+            String avdName = snapshot.get(property);
+            if (avdName != null && !avdName.isEmpty()) {
+                deviceName = avdName;
+                break;
+            }
+        }
+        if (deviceName == null) {
+            deviceName = getSerialNumber();
+        }
+        if (!snapshot.isEmpty()) {
+            name = deviceName;
+        }
+        return deviceName;
+    }
+
+    /**
+     * @return API level and ABI of device, devices with the same fingerprint have the same test plan.
+     */
+    public String getFingerprint() {
+        if (fingerprint == null) {
+            String apiLevel = getSystemPropertyValue(API_LEVEL_PROPERTY);
+            String abi = getSystemPropertyValue(ABI_PROPERTY);
+            if (apiLevel == null || abi == null) {
+                fingerprint = getSerialNumber();
+            } else {
+                fingerprint = apiLevel + "/" + abi;
+            }
+        }
+        return fingerprint;
+    }
+
+    @Nullable
+    private String getSystemPropertyValue(String propertyName) {
+        try {
+            return getSystemProperty(propertyName).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
         }
-        return name;
     }
 
     public IDevice getDevice() {
@@ -67,10 +186,48 @@ public class ConnectedDeviceWrapper implements IShellEnabledDevice, DeviceShellE
         }
     }
 
+    public void pushFile(String localPath, String remotePath) throws ExecuteCommandException {
+        try {
+            device.pushFile(localPath, remotePath);
+        } catch (Exception e) {
+            throw new ExecuteCommandException("pushFile exception:", e);
+        }
+    }
+
     public boolean isEmulator() {
         return device.isEmulator();
     }
 
+    /**
+     * @param pendingInstall apk files installation which is started in background.
+     */
+    public void setPendingInstall(@Nullable Future<?> pendingInstall) {
+        this.pendingInstall = pendingInstall;
+    }
+
+    /**
+     * Waits until apk files installation started in background is finished.
+     */
+    public void waitForPendingInstall() throws ExecuteCommandException {
+        Future<?> install = pendingInstall;
+        if (install == null) {
+            return;
+        }
+        try {
+            install.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExecuteCommandException("Waiting for apk install was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new ExecuteCommandException("Apk install failed on device " + getSerialNumber(),
+                    e.getCause());
+        }
+    }
+
+    public boolean isOnline() {
+        return device.isOnline();
+    }
+
     public String getSerialNumber() {
         return device.getSerialNumber();
     }
@@ -131,8 +288,11 @@ public class ConnectedDeviceWrapper implements IShellEnabledDevice, DeviceShellE
      * @throws CommandExecutionException
      */
     public void executeShellCommand(String command) throws ExecuteCommandException {
+        if (executeInShellSession(command) != null) {
+            return;
+        }
         try {
-            executeShellCommand(command, new CollectingOutputReceiver(), 5L, TimeUnit.MINUTES);
+            executeShellCommand(command, new CollectingOutputReceiver(), SHELL_TIMEOUT_MINUTES, TimeUnit.MINUTES);
         } catch (Exception e) {
             throw new ExecuteCommandException("executeShellCommand exception:", e);
         }
@@ -140,15 +300,60 @@ public class ConnectedDeviceWrapper implements IShellEnabledDevice, DeviceShellE
 
     @Override
     public String executeShellCommandAndReturnOutput(String command) throws ExecuteCommandException {
+        String sessionOutput = executeInShellSession(command);
+        if (sessionOutput != null) {
+            return sessionOutput;
+        }
+        return executeShellCommandWithoutSession(command);
+    }
+
+    /**
+     * Executes command by separate adb shell request even when shell session is set,
+     * so command is limited by adb shell request payload, as am instrument command.
+     *
+     * @return output of command.
+     */
+    public String executeShellCommandWithoutSession(String command) throws ExecuteCommandException {
         try {
             CollectingOutputReceiver receiver = new CollectingOutputReceiver();
-            executeShellCommand(command, receiver, 5L, TimeUnit.MINUTES);
+            executeShellCommand(command, receiver, SHELL_TIMEOUT_MINUTES, TimeUnit.MINUTES);
             return receiver.getOutput();
         } catch (Exception e) {
             throw new ExecuteCommandException("executeShellCommand exception:", e);
         }
     }
 
+    /**
+     * @return output of command or null when shell session is not available.
+     */
+    @Nullable
+    private String executeInShellSession(String command) throws ExecuteCommandException {
+        AdbShellSession session = shellSession;
+        if (session == null || !session.isSupported()) {
+            return null;
+        }
+        try {
+            return session.execute(command, SHELL_TIMEOUT_MINUTES, TimeUnit.MINUTES).getOutput();
+        } catch (ExecuteCommandException e) {
+            if (session.isSupported()) {
+                throw e;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Executes all commands from batch by one adb shell invocation.
+     *
+     * @return results in order of added commands.
+     */
+    public List<ShellCommandResult> executeShellCommands(ShellCommandBatch batch) throws ExecuteCommandException {
+        if (batch.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return batch.parseOutput(executeShellCommandAndReturnOutput(batch.buildCommand()));
+    }
+
     private class MultilineLoggerReceiver extends MultiLineReceiver {
         private final ILogger logger;
 
@@ -42,9 +42,10 @@ public class DefaultCommandProvider implements DeviceRunnerCommandProvider {
         List<TestPlanElement> planSet = testPlanProvider.provideTestPlan(device, instrumentalArgs);
 
         List<TestPlanElement> planList = new ArrayList<>();
+        AnnotationCommandDispatcher dispatcher = new AnnotationCommandDispatcher(commandsForAnnotationProvider);
         int testIndex = 0;
         for (TestPlanElement currentPlan : planSet) {
-            List<DeviceRunnerCommand> commandsForAnnotations = commandsForAnnotationProvider
+            List<DeviceRunnerCommand> commandsForAnnotations = dispatcher
                     .provideCommand(currentPlan.getAnnotations());
             if (!commandsForAnnotations.isEmpty()) {
                 if (!planList.isEmpty()) {
@@ -1,61 +1,124 @@
 package com.github.grishberg.tests;
 
+import com.github.grishberg.tests.commands.ApkInstaller;
 import com.github.grishberg.tests.commands.DeviceCommandResult;
 import com.github.grishberg.tests.commands.DeviceRunnerCommand;
 import com.github.grishberg.tests.commands.DeviceRunnerCommandProvider;
 import com.github.grishberg.tests.commands.ExecuteCommandException;
+import com.github.grishberg.tests.common.DeviceWorkerExecutors;
 import com.github.grishberg.tests.common.RunnerLogger;
 import com.github.grishberg.tests.exceptions.ProcessCrashedException;
 import com.github.grishberg.tests.planner.InstrumentalTestPlanProvider;
 
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Executes commands for online devices.
+ * When commands for one device are failed or task is interrupted, commands on other devices
+ * are cancelled.
+ * If command provider supports dynamic devices, devices connected during run join it,
+ * and disconnected devices don't fail the run.
  */
 class DeviceCommandsRunner {
     private static final String TAG = "DCR";
+    private static final long TERMINATION_TIMEOUT_SECONDS = 30;
     private final InstrumentalTestPlanProvider testPlanProvider;
     private final DeviceRunnerCommandProvider commandProvider;
-    private boolean hasFailedTests;
-    private Throwable commandException;
+    private final int maxParallelDevices;
+    private final Set<String> activeDevices = new HashSet<>();
+    private final List<ConnectedDeviceWrapper> startedDevices = new ArrayList<>();
+    private final List<Future<Boolean>> futures = new ArrayList<>();
+    private CompletionService<Boolean> completionService;
+    private TestRunnerContext context;
+    private boolean acceptingDevices;
+    @Nullable
+    private ApkInstaller apkInstaller;
 
     DeviceCommandsRunner(InstrumentalTestPlanProvider testPlanProvider,
                          DeviceRunnerCommandProvider commandProvider) {
+        this(testPlanProvider, commandProvider, 0);
+    }
+
+    /**
+     * @param maxParallelDevices max count of devices which execute commands simultaneously,
+     *                           0 - all devices.
+     */
+    DeviceCommandsRunner(InstrumentalTestPlanProvider testPlanProvider,
+                         DeviceRunnerCommandProvider commandProvider,
+                         int maxParallelDevices) {
         this.testPlanProvider = testPlanProvider;
         this.commandProvider = commandProvider;
+        this.maxParallelDevices = maxParallelDevices;
+    }
+
+    /**
+     * @param apkInstaller installs apk files on each device in background while first commands
+     *                     are executed.
+     */
+    void setApkInstaller(@Nullable ApkInstaller apkInstaller) {
+        this.apkInstaller = apkInstaller;
     }
 
     boolean runCommands(ConnectedDeviceWrapper[] devices, final TestRunnerContext context) throws InterruptedException,
             ExecuteCommandException {
-        final CountDownLatch deviceCounter = new CountDownLatch(devices.length);
-        final Environment environment = context.getEnvironment();
+        if (devices.length == 0) {
+            return true;
+        }
         final RunnerLogger logger = context.getLogger();
-        for (ConnectedDeviceWrapper device : devices) {
-            new Thread(() -> {
+        ExecutorService executor = DeviceWorkerExecutors.newExecutor(maxParallelDevices);
+        boolean hasFailedTests = false;
+        Throwable commandException = null;
+        synchronized (this) {
+            this.context = context;
+            activeDevices.clear();
+            startedDevices.clear();
+            futures.clear();
+            completionService = new ExecutorCompletionService<>(executor);
+            acceptingDevices = true;
+            for (ConnectedDeviceWrapper device : devices) {
+                submitDevice(device);
+            }
+        }
+        try {
+            int completed = 0;
+            while (!isAllDevicesCompleted(completed)) {
+                Future<Boolean> future = completionService.take();
+                completed++;
                 try {
-                    List<DeviceRunnerCommand> commands = commandProvider.provideCommandsForDevice(device,
-                            testPlanProvider, environment);
-                    for (DeviceRunnerCommand command : commands) {
-                        logger.d(TAG, "Before executing device = {} command = {}",
-                                device, command.toString());
-                        DeviceCommandResult result = command.execute(device, context);
-                        logger.d(TAG, "After executing device = {} command = {}",
-                                device, command.toString());
-                        if (result.isFailed()) {
-                            hasFailedTests = true;
-                        }
+                    if (!future.get()) {
+                        hasFailedTests = true;
                     }
-                } catch (Exception e) {
-                    logger.e(TAG, "Execute command exception:", e);
-                    commandException = e;
-                } finally {
-                    deviceCounter.countDown();
+                } catch (ExecutionException e) {
+                    commandException = e.getCause();
+                    logger.e(TAG, "Execute command exception:", commandException);
+                    cancel();
+                    break;
                 }
-            }).start();
+            }
+        } catch (InterruptedException e) {
+            logger.i(TAG, "runCommands interrupted, cancel commands on all devices");
+            cancel();
+            throw e;
+        } finally {
+            synchronized (this) {
+                acceptingDevices = false;
+            }
+            executor.shutdownNow();
+            if (apkInstaller != null) {
+                apkInstaller.shutdown();
+            }
+            executor.awaitTermination(TERMINATION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
         }
-        deviceCounter.await();
         if (commandException != null) {
             if (commandException instanceof ExecuteCommandException) {
                 throw (ExecuteCommandException) commandException;
@@ -65,6 +128,124 @@ class DeviceCommandsRunner {
             }
             throw new ExecuteCommandException(commandException);
         }
+        if (commandProvider.hasUnfinishedWork()) {
+            logger.e(TAG, "All devices are completed, but some tests were not executed");
+            return false;
+        }
         return !hasFailedTests;
     }
+
+    /**
+     * Adds device connected during run.
+     *
+     * @return true if device will execute commands.
+     */
+    synchronized boolean addDevice(ConnectedDeviceWrapper device) {
+        if (!acceptingDevices || !commandProvider.isDynamicDevicesSupported()) {
+            return false;
+        }
+        if (!submitDevice(device)) {
+            return false;
+        }
+        context.getLogger().i(TAG, "device {} joined test run", device);
+        return true;
+    }
+
+    private boolean submitDevice(ConnectedDeviceWrapper device) {
+        if (!activeDevices.add(device.getSerialNumber())) {
+            return false;
+        }
+        startedDevices.add(device);
+        futures.add(completionService.submit(() -> executeDeviceCommands(device)));
+        return true;
+    }
+
+    /**
+     * New devices are not accepted when all submitted devices are completed.
+     */
+    private synchronized boolean isAllDevicesCompleted(int completedCount) {
+        if (completedCount < futures.size()) {
+            return false;
+        }
+        acceptingDevices = false;
+        return true;
+    }
+
+    private synchronized void onDeviceCompleted(ConnectedDeviceWrapper device) {
+        activeDevices.remove(device.getSerialNumber());
+    }
+
+    /**
+     * @return false if device has failed tests.
+     */
+    private boolean executeDeviceCommands(ConnectedDeviceWrapper device)
+            throws ExecuteCommandException, InterruptedException {
+        RunnerLogger logger = context.getLogger();
+        boolean success = true;
+        try {
+            // one getprop snapshot when device joins, later property requests are read from it
+            device.getProperties();
+            if (apkInstaller != null) {
+                device.setPendingInstall(apkInstaller.install(device, context));
+            }
+            List<DeviceRunnerCommand> commands = commandProvider.provideCommandsForDevice(device,
+                    testPlanProvider, context.getEnvironment());
+            for (DeviceRunnerCommand command : commands) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException("Commands for device " + device + " are cancelled");
+                }
+                logger.d(TAG, "Before executing device = {} command = {}",
+                        device, command.toString());
+                DeviceCommandResult result = executeCommand(device, command);
+                logger.d(TAG, "After executing device = {} command = {}",
+                        device, command.toString());
+                if (result.isFailed()) {
+                    success = false;
+                }
+            }
+        } catch (DeviceDisconnectedException e) {
+            logger.i(TAG, "device {} is disconnected, its work is left for other devices", device);
+        } finally {
+            onDeviceCompleted(device);
+        }
+        return success;
+    }
+
+    private DeviceCommandResult executeCommand(ConnectedDeviceWrapper device, DeviceRunnerCommand command)
+            throws ExecuteCommandException, DeviceDisconnectedException {
+        try {
+            return command.execute(device, context);
+        } catch (ExecuteCommandException | RuntimeException e) {
+            if (commandProvider.isDynamicDevicesSupported() && !device.isOnline()) {
+                throw new DeviceDisconnectedException();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Interrupts device workers and stops application under test, so instrumentation
+     * doesn't continue on device after adb connection is closed.
+     */
+    private synchronized void cancel() {
+        acceptingDevices = false;
+        for (Future<Boolean> future : futures) {
+            future.cancel(true);
+        }
+        InstrumentalPluginExtension instrumentalInfo = context.getInstrumentalInfo();
+        if (instrumentalInfo == null || instrumentalInfo.getApplicationId() == null) {
+            return;
+        }
+        RunnerLogger logger = context.getLogger();
+        for (ConnectedDeviceWrapper device : startedDevices) {
+            try {
+                device.executeShellCommand("am force-stop " + instrumentalInfo.getApplicationId());
+            } catch (ExecuteCommandException e) {
+                logger.e(TAG, "Can't stop instrumentation on device " + device, e);
+            }
+        }
+    }
+
+    private static class DeviceDisconnectedException extends Exception {
+    }
 }
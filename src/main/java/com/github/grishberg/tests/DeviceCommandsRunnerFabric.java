@@ -13,7 +13,8 @@ public class DeviceCommandsRunnerFabric {
         this.testPlanProvider = testPlanProvider;
     }
 
-    DeviceCommandsRunner provideDeviceCommandRunner(DeviceRunnerCommandProvider commandProvider) {
-        return new DeviceCommandsRunner(testPlanProvider, commandProvider);
+    DeviceCommandsRunner provideDeviceCommandRunner(DeviceRunnerCommandProvider commandProvider,
+                                                    int maxParallelDevices) {
+        return new DeviceCommandsRunner(testPlanProvider, commandProvider, maxParallelDevices);
     }
 }
@@ -0,0 +1,44 @@
+package com.github.grishberg.tests;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of device system properties, parsed from {@code getprop} output
+ * with lines like {@code [ro.build.version.sdk]: [26]}.
+ */
+public class DeviceProperties {
+    static final DeviceProperties EMPTY = new DeviceProperties(Collections.<String, String>emptyMap());
+    private final Map<String, String> properties;
+
+    private DeviceProperties(Map<String, String> properties) {
+        this.properties = properties;
+    }
+
+    public static DeviceProperties parse(String getpropOutput) {
+        HashMap<String, String> properties = new HashMap<>();
+        for (String line : getpropOutput.split("\r?\n")) {
+            int nameEnd = line.indexOf("]: [");
+            if (!line.startsWith("[") || nameEnd < 0 || !line.endsWith("]")) {
+                continue;
+            }
+            properties.put(line.substring(1, nameEnd), line.substring(nameEnd + 4, line.length() - 1));
+        }
+        return new DeviceProperties(Collections.unmodifiableMap(properties));
+    }
+
+    @Nullable
+    public String get(String name) {
+        return properties.get(name);
+    }
+
+    public Map<String, String> getAll() {
+        return properties;
+    }
+
+    public boolean isEmpty() {
+        return properties.isEmpty();
+    }
+}
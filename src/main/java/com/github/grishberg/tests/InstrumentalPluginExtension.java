@@ -13,10 +13,21 @@ public class InstrumentalPluginExtension {
     String applicationId;
     String instrumentalPackage;
     String instrumentalRunner;
+    String testApkPath;
+    String appApkPath;
+    boolean installApks;
+    boolean offlineTestDiscovery;
+    boolean testFileEnabled;
+    boolean reorderTestsByCommands;
+    boolean persistentShellEnabled;
+    boolean compactTestPlanEnabled;
     String instrumentListener = "com.github.grishberg.annotationprinter.AnnotationsTestPrinter";
     boolean coverageEnabled;
     boolean makeScreenshotsWhenFail;
     boolean saveLogcat;
+    boolean shardingEnabled;
+    int shardBatchSize = 20;
+    int maxParallelDevices;
     Closure<Map<String, String>> instrumentationArgsProvider;
 
     public void setFlavorName(String flavorName) {
@@ -59,6 +70,107 @@ public class InstrumentalPluginExtension {
         this.instrumentalRunner = instrumentalRunner;
     }
 
+    public String getTestApkPath() {
+        return testApkPath;
+    }
+
+    /**
+     * @param testApkPath path to test apk, when set discovered test plan is cached until apk changes.
+     */
+    public void setTestApkPath(String testApkPath) {
+        this.testApkPath = testApkPath;
+    }
+
+    public String getAppApkPath() {
+        return appApkPath;
+    }
+
+    public void setAppApkPath(String appApkPath) {
+        this.appApkPath = appApkPath;
+    }
+
+    public boolean isInstallApks() {
+        return installApks;
+    }
+
+    /**
+     * @param installApks when true, app and test apk files are installed on each device
+     *                    in background before tests are started.
+     */
+    public void setInstallApks(boolean installApks) {
+        this.installApks = installApks;
+    }
+
+    public boolean isOfflineTestDiscovery() {
+        return offlineTestDiscovery;
+    }
+
+    /**
+     * @param offlineTestDiscovery when true, test plan is built from dex files of test apk
+     *                             instead of am instrument -e log true on device.
+     *                             Feature and flags are not available offline, so plan is
+     *                             still discovered on device when testFilter uses them.
+     */
+    public void setOfflineTestDiscovery(boolean offlineTestDiscovery) {
+        this.offlineTestDiscovery = offlineTestDiscovery;
+    }
+
+    public boolean isTestFileEnabled() {
+        return testFileEnabled;
+    }
+
+    /**
+     * @param testFileEnabled when true, selected test classes are pushed to device in file and
+     *                        passed with -e testFile, so any count of tests is executed
+     *                        by one am instrument invocation.
+     */
+    public void setTestFileEnabled(boolean testFileEnabled) {
+        this.testFileEnabled = testFileEnabled;
+    }
+
+    public boolean isReorderTestsByCommands() {
+        return reorderTestsByCommands;
+    }
+
+    /**
+     * @param reorderTestsByCommands when true, tests with commands for annotations are grouped
+     *                               and other tests fill their instrumentation runs, so plan is
+     *                               executed with fewer am instrument invocations.
+     *                               Applied only with sharding enabled, tests are not kept
+     *                               in discovered or class order. Without duration history
+     *                               batches are queued after discovery is finished instead of
+     *                               while tests are discovered. Runs are limited by shardBatchSize.
+     */
+    public void setReorderTestsByCommands(boolean reorderTestsByCommands) {
+        this.reorderTestsByCommands = reorderTestsByCommands;
+    }
+
+    public boolean isPersistentShellEnabled() {
+        return persistentShellEnabled;
+    }
+
+    /**
+     * @param persistentShellEnabled when true, short shell commands are executed in one
+     *                               long-lived shell for each device instead of opening
+     *                               new adb connection for each command.
+     */
+    public void setPersistentShellEnabled(boolean persistentShellEnabled) {
+        this.persistentShellEnabled = persistentShellEnabled;
+    }
+
+    public boolean isCompactTestPlanEnabled() {
+        return compactTestPlanEnabled;
+    }
+
+    /**
+     * @param compactTestPlanEnabled when true, discovered test plan is stored in compact
+     *                               arrays shared between devices and elements are created
+     *                               on demand, for suites with large number of tests.
+     */
+    public void setCompactTestPlanEnabled(boolean compactTestPlanEnabled) {
+        this.compactTestPlanEnabled = compactTestPlanEnabled;
+    }
+
     public boolean isCoverageEnabled() {
         return coverageEnabled;
     }
@@ -98,4 +210,32 @@ public class InstrumentalPluginExtension {
     public void setSaveLogcat(boolean saveLogcat) {
         this.saveLogcat = saveLogcat;
     }
+
+    public boolean isShardingEnabled() {
+        return shardingEnabled;
+    }
+
+    public void setShardingEnabled(boolean shardingEnabled) {
+        this.shardingEnabled = shardingEnabled;
+    }
+
+    public int getShardBatchSize() {
+        return shardBatchSize;
+    }
+
+    public void setShardBatchSize(int shardBatchSize) {
+        this.shardBatchSize = shardBatchSize;
+    }
+
+    public int getMaxParallelDevices() {
+        return maxParallelDevices;
+    }
+
+    /**
+     * @param maxParallelDevices max count of devices which execute tests simultaneously,
+     *                           0 - all connected devices.
+     */
+    public void setMaxParallelDevices(int maxParallelDevices) {
+        this.maxParallelDevices = maxParallelDevices;
+    }
 }
@@ -5,10 +5,16 @@ import com.android.build.gradle.internal.test.report.TestReport;
 import com.android.build.gradle.internal.test.report.TestReportExt;
 import com.android.ddmlib.AndroidDebugBridge;
 import com.android.ddmlib.IDevice;
+import com.github.grishberg.tests.adb.AdbShellSession;
 import com.github.grishberg.tests.adb.AdbWrapper;
+import com.github.grishberg.tests.commands.ApkInstaller;
+import com.github.grishberg.tests.commands.InstallApkCommand;
 import com.github.grishberg.tests.commands.DeviceRunnerCommandProvider;
 import com.github.grishberg.tests.commands.ExecuteCommandException;
 import com.github.grishberg.tests.common.RunnerLogger;
+import com.github.grishberg.tests.sharding.DurationBalancedPlanner;
+import com.github.grishberg.tests.sharding.TestBatchBuilder;
+import com.github.grishberg.tests.sharding.TestDurationHistory;
 import org.gradle.api.DefaultTask;
 import org.gradle.api.GradleException;
 import org.gradle.api.Nullable;
@@ -19,7 +25,10 @@ import org.gradle.internal.logging.ConsoleRenderer;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static com.github.grishberg.tests.common.FileHelper.cleanFolder;
@@ -43,6 +52,8 @@ public class InstrumentationTestTask extends DefaultTask {
     private DeviceCommandsRunnerFabric deviceCommandsRunnerFabric;
     private AdbWrapper adbWrapper;
     private RunnerLogger logger;
+    private final List<ConnectedDeviceWrapper> createdDevices =
+            Collections.synchronizedList(new ArrayList<>());
 
     public InstrumentationTestTask() {
         instrumentationInfo = getProject().getExtensions()
@@ -74,12 +85,22 @@ public class InstrumentationTestTask extends DefaultTask {
         Environment environment = new Environment(getResultsDir(),
                 getReportsDir(), getCoverageDir());
         DeviceCommandsRunner runner = deviceCommandsRunnerFabric
-                .provideDeviceCommandRunner(commandProvider);
+                .provideDeviceCommandRunner(commandProvider, instrumentationInfo.getMaxParallelDevices());
+        if (instrumentationInfo.isInstallApks()) {
+            runner.setApkInstaller(new ApkInstaller(provideInstallCommands()));
+        }
 
         HashMap<String, String> screenshotRelations = new HashMap<>();
         TestRunnerContext context = new TestRunnerContext(instrumentationInfo,
                 environment, screenshotRelations, logger);
-        boolean success = runner.runCommands(provideDevices(), context);
+        adbWrapper.setOnlineDeviceListener(device -> runner.addDevice(createDeviceWrapper(device)));
+        boolean success;
+        try {
+            success = runner.runCommands(provideDevices(), context);
+        } finally {
+            adbWrapper.setOnlineDeviceListener(null);
+            closeShellSessions();
+        }
         generateHtmlReport(success, screenshotRelations);
     }
 
@@ -102,11 +123,43 @@ public class InstrumentationTestTask extends DefaultTask {
         }
     }
 
+    private List<InstallApkCommand> provideInstallCommands() {
+        List<InstallApkCommand> installCommands = new ArrayList<>();
+        if (instrumentationInfo.getAppApkPath() != null) {
+            installCommands.add(new InstallApkCommand(new File(instrumentationInfo.getAppApkPath()),
+                    instrumentationInfo.getApplicationId()));
+        }
+        if (instrumentationInfo.getTestApkPath() != null) {
+            installCommands.add(new InstallApkCommand(new File(instrumentationInfo.getTestApkPath()),
+                    instrumentationInfo.getInstrumentalPackage()));
+        }
+        return installCommands;
+    }
+
+    private ConnectedDeviceWrapper createDeviceWrapper(IDevice device) {
+        ConnectedDeviceWrapper deviceWrapper = new ConnectedDeviceWrapper(device);
+        if (instrumentationInfo.isPersistentShellEnabled()) {
+            deviceWrapper.setShellSession(new AdbShellSession(device.getSerialNumber(),
+                    AndroidDebugBridge.getSocketAddress(), logger));
+            createdDevices.add(deviceWrapper);
+        }
+        return deviceWrapper;
+    }
+
+    private void closeShellSessions() {
+        synchronized (createdDevices) {
+            for (ConnectedDeviceWrapper deviceWrapper : createdDevices) {
+                deviceWrapper.closeShellSession();
+            }
+            createdDevices.clear();
+        }
+    }
+
     private ConnectedDeviceWrapper[] provideDevices() {
         IDevice[] devices = adbWrapper.provideDevices();
         ConnectedDeviceWrapper[] deviceWrappers = new ConnectedDeviceWrapper[devices.length];
         for (int i = 0; i < devices.length; i++) {
-            deviceWrappers[i] = new ConnectedDeviceWrapper(devices[i]);
+            deviceWrappers[i] = createDeviceWrapper(devices[i]);
         }
         return deviceWrappers;
     }
@@ -130,6 +183,15 @@ public class InstrumentationTestTask extends DefaultTask {
             instrumentationArgsProvider = new DefaultInstrumentationArgsProvider();
             logger.i(TAG, "initWithAndroidSdk: instrumentationArgsProvider is empty, use DefaultInstrumentationArgsProvider");
         }
+        if (commandProvider == null && instrumentationInfo.isShardingEnabled()) {
+            logger.i(TAG, "command provider is empty, use ShardedCommandProvider");
+            commandProvider = new ShardedCommandProvider(getProject(),
+                    instrumentationArgsProvider,
+                    new TestBatchBuilder(commandsForAnnotationProvider,
+                            instrumentationInfo.getShardBatchSize(), provideReorderer()),
+                    new DurationBalancedPlanner(TestDurationHistory.load(getResultsDir(), logger)),
+                    logger);
+        }
         if (commandProvider == null) {
             logger.i(TAG, "command provider is empty, use DefaultCommandProvider");
             commandProvider = new DefaultCommandProvider(getProject(),
@@ -137,6 +199,11 @@ public class InstrumentationTestTask extends DefaultTask {
         }
     }
 
+    @Nullable
+    private TestBatchReorderer provideReorderer() {
+        return instrumentationInfo.isReorderTestsByCommands() ? new TestBatchReorderer(logger) : null;
+    }
+
     @Input
     public void setInstrumentationInfo(InstrumentalPluginExtension instrumentationInfo) {
         this.instrumentationInfo = instrumentationInfo;
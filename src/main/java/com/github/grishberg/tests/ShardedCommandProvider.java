@@ -0,0 +1,166 @@
+package com.github.grishberg.tests;
+
+import com.github.grishberg.tests.commands.DeviceRunnerCommand;
+import com.github.grishberg.tests.commands.DeviceRunnerCommandProvider;
+import com.github.grishberg.tests.commands.ExecuteCommandException;
+import com.github.grishberg.tests.commands.SetAnimationSpeedCommand;
+import com.github.grishberg.tests.common.RunnerLogger;
+import com.github.grishberg.tests.planner.InstrumentalTestPlanProvider;
+import com.github.grishberg.tests.planner.TestPlanElement;
+import com.github.grishberg.tests.planner.TestPlanListener;
+import com.github.grishberg.tests.sharding.DurationBalancedPlanner;
+import com.github.grishberg.tests.sharding.RunTestBatchesCommand;
+import com.github.grishberg.tests.sharding.TestBatch;
+import com.github.grishberg.tests.sharding.TestBatchBuilder;
+import com.github.grishberg.tests.sharding.TestBatchQueue;
+import org.gradle.api.Project;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Provides commands which execute test batches from queue shared between all devices,
+ * so fast devices are not waiting for slow ones.
+ * Test plan is discovered on first device, other devices start executing batches
+ * as soon as they are discovered.
+ */
+public class ShardedCommandProvider implements DeviceRunnerCommandProvider {
+    private static final String TAG = ShardedCommandProvider.class.getSimpleName();
+    private final Project project;
+    private final InstrumentationArgsProvider argsProvider;
+    private final TestBatchBuilder batchBuilder;
+    private final DurationBalancedPlanner planner;
+    private final RunnerLogger logger;
+    private final TestBatchQueue queue = new TestBatchQueue();
+    private boolean discoveryStarted;
+
+    ShardedCommandProvider(Project project,
+                           InstrumentationArgsProvider argsProvider,
+                           TestBatchBuilder batchBuilder,
+                           DurationBalancedPlanner planner,
+                           RunnerLogger logger) {
+        this.project = project;
+        this.argsProvider = argsProvider;
+        this.batchBuilder = batchBuilder;
+        this.planner = planner;
+        this.logger = logger;
+    }
+
+    @Override
+    public List<DeviceRunnerCommand> provideCommandsForDevice(ConnectedDeviceWrapper device,
+                                                              InstrumentalTestPlanProvider testPlanProvider,
+                                                              Environment environment) throws ExecuteCommandException {
+        List<DeviceRunnerCommand> commands = new ArrayList<>();
+        commands.add(new SetAnimationSpeedCommand(0, 0, 0));
+        Map<String, String> instrumentalArgs = argsProvider.provideInstrumentationArgs(device);
+        logger.i(TAG, "provideCommandsForDevice: device = {}, args = {}",
+                device, instrumentalArgs);
+
+        if (startDiscoveryIfNeeded()) {
+            fillQueue(device, testPlanProvider, instrumentalArgs);
+        }
+
+        commands.add(new RunTestBatchesCommand(project, queue, instrumentalArgs));
+        commands.add(new SetAnimationSpeedCommand(1, 1, 1));
+        return commands;
+    }
+
+    @Override
+    public boolean isDynamicDevicesSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean hasUnfinishedWork() {
+        return queue.hasUnfinishedBatches();
+    }
+
+    private synchronized boolean startDiscoveryIfNeeded() {
+        if (discoveryStarted) {
+            return false;
+        }
+        discoveryStarted = true;
+        return true;
+    }
+
+    /**
+     * Test plan is requested from first device, all devices share the same plan.
+     * Queue is closed even if discovery is failed, so other devices are not waiting forever.
+     */
+    private void fillQueue(ConnectedDeviceWrapper device,
+                           InstrumentalTestPlanProvider testPlanProvider,
+                           Map<String, String> instrumentalArgs) throws ExecuteCommandException {
+        try {
+            if (planner.hasHistory()) {
+                fillQueueOrderedByDuration(device, testPlanProvider, instrumentalArgs);
+            } else if (batchBuilder.isReorderingEnabled()) {
+                fillQueueReordered(device, testPlanProvider, instrumentalArgs);
+            } else {
+                streamToQueue(device, testPlanProvider, instrumentalArgs);
+            }
+        } finally {
+            queue.close();
+        }
+    }
+
+    private void fillQueueOrderedByDuration(ConnectedDeviceWrapper device,
+                                            InstrumentalTestPlanProvider testPlanProvider,
+                                            Map<String, String> instrumentalArgs)
+            throws ExecuteCommandException {
+        List<TestPlanElement> planList = testPlanProvider.provideTestPlan(device, instrumentalArgs);
+        List<TestBatch> batches = planner.orderByDuration(batchBuilder.buildBatches(planList));
+        queue.addAll(batches);
+        logger.i(TAG, "fillQueue: {} tests split into {} batches",
+                planList.size(), batches.size());
+    }
+
+    /**
+     * Without history reordering still needs whole plan, so batches are added to queue
+     * after discovery is finished.
+     */
+    private void fillQueueReordered(ConnectedDeviceWrapper device,
+                                    InstrumentalTestPlanProvider testPlanProvider,
+                                    Map<String, String> instrumentalArgs)
+            throws ExecuteCommandException {
+        List<TestPlanElement> planList = testPlanProvider.provideTestPlan(device, instrumentalArgs);
+        List<TestBatch> batches = batchBuilder.buildBatches(planList);
+        queue.addAll(batches);
+        logger.i(TAG, "fillQueueReordered: {} tests split into {} batches",
+                planList.size(), batches.size());
+    }
+
+    /**
+     * Without history and reordering order of batches doesn't matter, so each batch is added
+     * to queue as soon as its tests are discovered.
+     */
+    private void streamToQueue(ConnectedDeviceWrapper device,
+                               InstrumentalTestPlanProvider testPlanProvider,
+                               Map<String, String> instrumentalArgs) throws ExecuteCommandException {
+        int[] batchesCount = new int[1];
+        TestBatchBuilder.BatchCollector collector = batchBuilder.newCollector(batch -> {
+            batchesCount[0]++;
+            queue.addAll(Collections.singletonList(batch));
+        });
+        List<TestPlanElement> planList = testPlanProvider.provideTestPlan(device, instrumentalArgs,
+                new TestPlanListener() {
+                    @Override
+                    public void onTestDiscovered(TestPlanElement element) {
+                        collector.add(element);
+                    }
+
+                    @Override
+                    public void onDiscoveryFinished() {
+                        collector.finish();
+                    }
+                });
+        collector.finish();
+        logger.i(TAG, "streamToQueue: {} tests split into {} batches",
+                planList.size(), batchesCount[0]);
+    }
+
+    TestBatchQueue getQueue() {
+        return queue;
+    }
+}
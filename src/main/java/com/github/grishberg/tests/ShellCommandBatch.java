@@ -0,0 +1,92 @@
+package com.github.grishberg.tests;
+
+import com.github.grishberg.tests.commands.ExecuteCommandException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Several shell commands executed by one adb shell invocation.
+ * After each command empty line and sentinel line with command index and exit code
+ * are printed, so output can be split back into results of each command.
+ * Commands are executed by the same shell, so {@code exit} or changed directory
+ * affect next commands. Each command is placed on its own lines inside of group,
+ * so trailing {@code &} or comment in command don't break sentinel.
+ */
+public class ShellCommandBatch {
+    private static final String SENTINEL_PREFIX = "__shell_batch_";
+    private final String sentinel;
+    private final ArrayList<String> commands = new ArrayList<>();
+
+    public ShellCommandBatch() {
+        this(SENTINEL_PREFIX + Long.toHexString(System.nanoTime()));
+    }
+
+    ShellCommandBatch(String sentinel) {
+        this.sentinel = sentinel;
+    }
+
+    public ShellCommandBatch add(String command) {
+        commands.add(command);
+        return this;
+    }
+
+    public List<String> getCommands() {
+        return Collections.unmodifiableList(commands);
+    }
+
+    public boolean isEmpty() {
+        return commands.isEmpty();
+    }
+
+    /**
+     * @return single shell command which executes all commands one by one.
+     */
+    String buildCommand() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < commands.size(); i++) {
+            if (i > 0) {
+                sb.append('\n');
+            }
+            sb.append("{\n").append(commands.get(i))
+                    .append("\n} ; r=$? ; echo ; echo ")
+                    .append(sentinel).append(':').append(i).append(":$r");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param output output of command from {@link #buildCommand()}.
+     * @return results in order of added commands.
+     * @throws ExecuteCommandException when output has no sentinel for some command.
+     */
+    List<ShellCommandResult> parseOutput(String output) throws ExecuteCommandException {
+        String normalized = output.replace("\r\n", "\n");
+        ArrayList<ShellCommandResult> results = new ArrayList<>(commands.size());
+        int pos = 0;
+        for (int i = 0; i < commands.size(); i++) {
+            String marker = "\n" + sentinel + ":" + i + ":";
+            int markerPos = normalized.indexOf(marker, pos);
+            if (markerPos < 0) {
+                throw new ExecuteCommandException("No result for shell command '"
+                        + commands.get(i) + "', output: " + output);
+            }
+            int codeStart = markerPos + marker.length();
+            int lineEnd = normalized.indexOf('\n', codeStart);
+            if (lineEnd < 0) {
+                lineEnd = normalized.length();
+            }
+            int exitCode;
+            try {
+                exitCode = Integer.parseInt(normalized.substring(codeStart, lineEnd).trim());
+            } catch (NumberFormatException e) {
+                throw new ExecuteCommandException("Wrong exit code for shell command '"
+                        + commands.get(i) + "'", e);
+            }
+            results.add(new ShellCommandResult(exitCode, normalized.substring(pos, markerPos)));
+            pos = Math.min(lineEnd + 1, normalized.length());
+        }
+        return results;
+    }
+}
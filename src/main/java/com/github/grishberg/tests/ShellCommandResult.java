@@ -0,0 +1,31 @@
+package com.github.grishberg.tests;
+
+/**
+ * Exit code and output of one shell command from {@link ShellCommandBatch}.
+ */
+public class ShellCommandResult {
+    private final int exitCode;
+    private final String output;
+
+    public ShellCommandResult(int exitCode, String output) {
+        this.exitCode = exitCode;
+        this.output = output;
+    }
+
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    public String getOutput() {
+        return output;
+    }
+
+    public boolean isSuccessful() {
+        return exitCode == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "ShellCommandResult{exitCode=" + exitCode + ", output='" + output + "'}";
+    }
+}
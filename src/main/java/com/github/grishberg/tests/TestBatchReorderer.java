@@ -0,0 +1,87 @@
+package com.github.grishberg.tests;
+
+import com.github.grishberg.tests.common.RunnerLogger;
+import com.github.grishberg.tests.planner.TestPlanElement;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Reorders test plan, so tests with commands for annotations split it into as few
+ * instrumentation runs as possible. Each test with commands starts new run, tests with equal
+ * annotations are placed together and tests without commands fill runs started by them.
+ * Relative order of tests without commands and of tests with equal annotations is kept,
+ * other ordering is not guaranteed, so it is used only for sharded batches.
+ */
+public class TestBatchReorderer {
+    private static final String TAG = TestBatchReorderer.class.getSimpleName();
+    private final RunnerLogger logger;
+
+    public TestBatchReorderer(RunnerLogger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * @param batchSize max count of tests in one instrumentation run.
+     * @return reordered plan or the same plan when there are no tests with commands.
+     */
+    public List<TestPlanElement> reorder(List<TestPlanElement> plan,
+                                         AnnotationCommandDispatcher dispatcher,
+                                         int batchSize) {
+        LinkedHashMap<List<String>, List<TestPlanElement>> testsWithCommands = new LinkedHashMap<>();
+        ArrayList<TestPlanElement> otherTests = new ArrayList<>();
+        for (TestPlanElement test : plan) {
+            if (!dispatcher.hasCommands(test.getAnnotations())) {
+                otherTests.add(test);
+                continue;
+            }
+            List<TestPlanElement> group = testsWithCommands.get(test.getAnnotations());
+            if (group == null) {
+                group = new ArrayList<>();
+                testsWithCommands.put(test.getAnnotations(), group);
+            }
+            group.add(test);
+        }
+        if (testsWithCommands.isEmpty()) {
+            return plan;
+        }
+        ArrayList<TestPlanElement> result = new ArrayList<>(plan.size());
+        int otherPos = 0;
+        for (List<TestPlanElement> group : testsWithCommands.values()) {
+            for (TestPlanElement test : group) {
+                result.add(test);
+                int fill = Math.min(batchSize - 1, otherTests.size() - otherPos);
+                result.addAll(otherTests.subList(otherPos, otherPos + fill));
+                otherPos += fill;
+            }
+        }
+        result.addAll(otherTests.subList(otherPos, otherTests.size()));
+
+        int before = countBatches(plan, dispatcher, batchSize);
+        int after = countBatches(result, dispatcher, batchSize);
+        logger.i(TAG, "reorder: {} tests need {} instrumentation runs instead of {}, saved {}",
+                plan.size(), after, before, before - after);
+        return result;
+    }
+
+    /**
+     * @return count of instrumentation runs for plan, when each test with commands
+     * starts new run.
+     */
+    static int countBatches(List<TestPlanElement> plan,
+                            AnnotationCommandDispatcher dispatcher,
+                            int batchSize) {
+        int batches = 0;
+        int testsInBatch = 0;
+        for (TestPlanElement test : plan) {
+            if (testsInBatch == 0 || testsInBatch >= batchSize
+                    || dispatcher.hasCommands(test.getAnnotations())) {
+                batches++;
+                testsInBatch = 0;
+            }
+            testsInBatch++;
+        }
+        return batches;
+    }
+}
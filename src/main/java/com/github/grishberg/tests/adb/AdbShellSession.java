@@ -0,0 +1,216 @@
+package com.github.grishberg.tests.adb;
+
+import com.github.grishberg.tests.ShellCommandResult;
+import com.github.grishberg.tests.commands.ExecuteCommandException;
+import com.github.grishberg.tests.common.RunnerLogger;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-lived shell on device, opened with {@code exec:sh} service of adb server.
+ * Short commands are written to shell stdin one by one instead of opening new adb connection
+ * for each command. Each command is executed in subshell without stdin, its output is ended by
+ * empty line and sentinel line with exit code. Command is placed on its own lines inside of
+ * subshell, so trailing {@code &} or comment in command don't break sentinel.
+ * Session is reopened by next command when stream is broken or command is timed out.
+ */
+public class AdbShellSession implements Closeable {
+    private static final String TAG = AdbShellSession.class.getSimpleName();
+    private static final String SHELL_SERVICE = "exec:sh";
+    private static final String OKAY = "OKAY";
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final int CHUNK_SIZE = 8192;
+    private final String serialNumber;
+    private final InetSocketAddress adbAddress;
+    private final RunnerLogger logger;
+    private final String sentinel = "__shell_session_" + Long.toHexString(System.nanoTime());
+    private final StringBuilder buffer = new StringBuilder();
+    private final char[] chunk = new char[CHUNK_SIZE];
+    @Nullable
+    private Socket socket;
+    @Nullable
+    private Reader reader;
+    @Nullable
+    private OutputStream output;
+    private int commandIndex;
+    private volatile boolean supported = true;
+
+    public AdbShellSession(String serialNumber, InetSocketAddress adbAddress, RunnerLogger logger) {
+        this.serialNumber = serialNumber;
+        this.adbAddress = adbAddress;
+        this.logger = logger;
+    }
+
+    /**
+     * @return false when device doesn't provide shell service for session.
+     */
+    public boolean isSupported() {
+        return supported;
+    }
+
+    /**
+     * @param timeout max time of command execution, 0 for waiting without timeout.
+     */
+    public synchronized ShellCommandResult execute(String command, long timeout, TimeUnit unit)
+            throws ExecuteCommandException {
+        if (!supported) {
+            throw new ExecuteCommandException("Shell session is not supported by " + serialNumber);
+        }
+        boolean reused = socket != null;
+        openIfNeeded();
+        try {
+            return executeInSession(command, timeout, unit);
+        } catch (SocketTimeoutException e) {
+            close();
+            throw new ExecuteCommandException("Shell command timed out: " + command, e);
+        } catch (IOException e) {
+            close();
+            if (!reused || buffer.length() > 0) {
+                throw new ExecuteCommandException("Shell session is broken while executing: " + command, e);
+            }
+            logger.w(TAG, "shell session for {} is closed, reconnecting: {}", serialNumber, e.getMessage());
+        }
+        openIfNeeded();
+        try {
+            return executeInSession(command, timeout, unit);
+        } catch (IOException e) {
+            close();
+            throw new ExecuteCommandException("Shell session is broken while executing: " + command, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (socket == null) {
+            return;
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            logger.d(TAG, "close shell session for {}: {}", serialNumber, e.getMessage());
+        }
+        socket = null;
+        reader = null;
+        output = null;
+    }
+
+    private void openIfNeeded() throws ExecuteCommandException {
+        if (socket != null) {
+            return;
+        }
+        Socket newSocket = new Socket();
+        try {
+            newSocket.connect(adbAddress, CONNECT_TIMEOUT_MS);
+            newSocket.setTcpNoDelay(true);
+            newSocket.setSoTimeout(CONNECT_TIMEOUT_MS);
+            InputStream in = newSocket.getInputStream();
+            OutputStream out = newSocket.getOutputStream();
+            String error = sendRequest(in, out, "host:transport:" + serialNumber);
+            if (error != null) {
+                throw new IOException("adb transport error: " + error);
+            }
+            error = sendRequest(in, out, SHELL_SERVICE);
+            if (error != null) {
+                supported = false;
+                logger.w(TAG, "shell session is not supported by {}: {}", serialNumber, error);
+                throw new IOException("adb shell service error: " + error);
+            }
+            socket = newSocket;
+            reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+            output = out;
+        } catch (IOException e) {
+            try {
+                newSocket.close();
+            } catch (IOException closeException) {
+                logger.d(TAG, "close socket: {}", closeException.getMessage());
+            }
+            throw new ExecuteCommandException("Can't open shell session for " + serialNumber, e);
+        }
+    }
+
+    /**
+     * @return error message from adb or null when request is accepted.
+     */
+    @Nullable
+    private static String sendRequest(InputStream in, OutputStream out, String request) throws IOException {
+        byte[] payload = request.getBytes(StandardCharsets.UTF_8);
+        out.write(String.format("%04x", payload.length).getBytes(StandardCharsets.US_ASCII));
+        out.write(payload);
+        out.flush();
+        String status = readString(in, 4);
+        if (OKAY.equals(status)) {
+            return null;
+        }
+        return readString(in, Integer.parseInt(readString(in, 4), 16));
+    }
+
+    private static String readString(InputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            int read = in.read(bytes, offset, length - offset);
+            if (read < 0) {
+                throw new EOFException("adb connection is closed");
+            }
+            offset += read;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private ShellCommandResult executeInSession(String command, long timeout, TimeUnit unit) throws IOException {
+        int index = commandIndex++;
+        String marker = "\n" + sentinel + ":" + index + ":";
+        buffer.setLength(0);
+        output.write(("(\n" + command + "\n) </dev/null 2>&1 ; r=$? ; echo ; echo "
+                + sentinel + ":" + index + ":$r\n").getBytes(StandardCharsets.UTF_8));
+        output.flush();
+
+        long deadline = timeout > 0 ? System.nanoTime() + unit.toNanos(timeout) : 0;
+        int markerPos = -1;
+        while (true) {
+            socket.setSoTimeout(readTimeout(deadline));
+            int read = reader.read(chunk);
+            if (read < 0) {
+                throw new EOFException("shell session is closed");
+            }
+            int searchFrom = Math.max(0, buffer.length() - marker.length());
+            buffer.append(chunk, 0, read);
+            if (markerPos < 0) {
+                markerPos = buffer.indexOf(marker, searchFrom);
+            }
+            if (markerPos < 0) {
+                continue;
+            }
+            int codeStart = markerPos + marker.length();
+            int lineEnd = buffer.indexOf("\n", codeStart);
+            if (lineEnd < 0) {
+                continue;
+            }
+            int exitCode = Integer.parseInt(buffer.substring(codeStart, lineEnd).trim());
+            return new ShellCommandResult(exitCode, buffer.substring(0, markerPos));
+        }
+    }
+
+    private static int readTimeout(long deadline) throws SocketTimeoutException {
+        if (deadline == 0) {
+            return 0;
+        }
+        long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remainingMs <= 0) {
+            throw new SocketTimeoutException("shell command timeout");
+        }
+        return (int) Math.min(remainingMs, Integer.MAX_VALUE);
+    }
+}
@@ -4,17 +4,26 @@ import com.android.ddmlib.AndroidDebugBridge;
 import com.android.ddmlib.IDevice;
 import org.gradle.api.Nullable;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * Wraps interaction with adb static methods.
+ * Keeps pool of online devices updated by adb device change events.
  */
-public class AdbWrapper {
+public class AdbWrapper implements AndroidDebugBridge.IDeviceChangeListener {
     private static final int ADB_TIMEOUT = 10;
     private static final int ONE_SECOND = 1000;
+    private final Map<String, IDevice> onlineDevices = new LinkedHashMap<>();
     @Nullable
     private AndroidDebugBridge adb;
+    @Nullable
+    private volatile OnlineDeviceListener onlineDeviceListener;
 
     public void initWithAndroidSdk(String androidSdkPath) {
         adb = AndroidDebugBridge.createBridge(androidSdkPath + "/platform-tools/adb", false);
+        AndroidDebugBridge.removeDeviceChangeListener(this);
+        AndroidDebugBridge.addDeviceChangeListener(this);
     }
 
     public void waitForAdb() throws InterruptedException {
@@ -27,6 +36,56 @@ public class AdbWrapper {
     }
 
     public IDevice[] provideDevices() {
-        return adb.getDevices();
+        IDevice[] devices = adb.getDevices();
+        synchronized (onlineDevices) {
+            for (IDevice device : devices) {
+                if (device.isOnline()) {
+                    onlineDevices.put(device.getSerialNumber(), device);
+                }
+            }
+        }
+        return devices;
+    }
+
+    /**
+     * @param listener receives devices which became online, null for unsubscribing.
+     */
+    public void setOnlineDeviceListener(@Nullable OnlineDeviceListener listener) {
+        onlineDeviceListener = listener;
+    }
+
+    @Override
+    public void deviceConnected(IDevice device) {
+        updateDeviceState(device);
+    }
+
+    @Override
+    public void deviceDisconnected(IDevice device) {
+        synchronized (onlineDevices) {
+            onlineDevices.remove(device.getSerialNumber());
+        }
+    }
+
+    @Override
+    public void deviceChanged(IDevice device, int changeMask) {
+        if ((changeMask & IDevice.CHANGE_STATE) != 0) {
+            updateDeviceState(device);
+        }
+    }
+
+    private void updateDeviceState(IDevice device) {
+        synchronized (onlineDevices) {
+            if (!device.isOnline()) {
+                onlineDevices.remove(device.getSerialNumber());
+                return;
+            }
+            if (onlineDevices.put(device.getSerialNumber(), device) != null) {
+                return;
+            }
+        }
+        OnlineDeviceListener listener = onlineDeviceListener;
+        if (listener != null) {
+            listener.onDeviceOnline(device);
+        }
     }
 }
@@ -0,0 +1,10 @@
+package com.github.grishberg.tests.adb;
+
+import com.android.ddmlib.IDevice;
+
+/**
+ * Receives devices which became online while tests are running.
+ */
+public interface OnlineDeviceListener {
+    void onDeviceOnline(IDevice device);
+}
@@ -0,0 +1,64 @@
+package com.github.grishberg.tests.commands;
+
+import com.github.grishberg.tests.ConnectedDeviceWrapper;
+import com.github.grishberg.tests.TestRunnerContext;
+import com.github.grishberg.tests.common.DeviceWorkerExecutors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Installs apk files in background, all apk files for device are installed simultaneously.
+ * Device can be prepared and test plan can be discovered while apk files are installing,
+ * commands which need installed app wait for {@link ConnectedDeviceWrapper#waitForPendingInstall()}.
+ */
+public class ApkInstaller {
+    private static final String TAG = ApkInstaller.class.getSimpleName();
+    private final List<InstallApkCommand> installCommands;
+    private final ExecutorService executor;
+
+    public ApkInstaller(List<InstallApkCommand> installCommands) {
+        this(installCommands, DeviceWorkerExecutors.newExecutor(0));
+    }
+
+    ApkInstaller(List<InstallApkCommand> installCommands, ExecutorService executor) {
+        this.installCommands = new ArrayList<>(installCommands);
+        this.executor = executor;
+    }
+
+    /**
+     * Starts installing apk files on device.
+     *
+     * @return future which is completed when all apk files are installed.
+     */
+    public Future<Void> install(ConnectedDeviceWrapper device, TestRunnerContext context) {
+        context.getLogger().i(TAG, "start installing {} apk files on device {}",
+                installCommands.size(), device);
+        List<CompletableFuture<Void>> installs = new ArrayList<>();
+        for (InstallApkCommand command : installCommands) {
+            installs.add(CompletableFuture.runAsync(() -> installApk(device, context, command), executor));
+        }
+        return CompletableFuture.allOf(installs.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * Stops threads of installer, installations which are not finished are interrupted.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static void installApk(ConnectedDeviceWrapper device,
+                                   TestRunnerContext context,
+                                   InstallApkCommand command) {
+        try {
+            command.execute(device, context);
+        } catch (ExecuteCommandException e) {
+            throw new CompletionException(e);
+        }
+    }
+}
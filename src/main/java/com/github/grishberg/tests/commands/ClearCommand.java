@@ -19,6 +19,7 @@ public class ClearCommand implements DeviceRunnerCommand {
         StringBuilder command = new StringBuilder("pm clear ");
         command.append(instrumentalInfo.getApplicationId());
 
+        device.waitForPendingInstall();
         device.executeShellCommand(command.toString());
         return new DeviceCommandResult();
     }
@@ -13,4 +13,20 @@ public interface DeviceRunnerCommandProvider {
     List<DeviceRunnerCommand> provideCommandsForDevice(ConnectedDeviceWrapper device,
                                                        InstrumentalTestPlanProvider testPlanProvider,
                                                        Environment environment) throws ExecuteCommandException;
+
+    /**
+     * @return true if devices connected during test run can take part of work and work
+     * of disconnected device is executed by other devices.
+     */
+    default boolean isDynamicDevicesSupported() {
+        return false;
+    }
+
+    /**
+     * @return true if some work was not executed after all devices are completed,
+     * for example when work of disconnected device was not taken by other devices.
+     */
+    default boolean hasUnfinishedWork() {
+        return false;
+    }
 }
@@ -4,6 +4,10 @@ package com.github.grishberg.tests.commands;
  * Exception while executing command on device.
  */
 public class ExecuteCommandException extends Exception {
+    public ExecuteCommandException(String message) {
+        super(message);
+    }
+
     public ExecuteCommandException(String message, Throwable e) {
         super(message, e);
     }
@@ -4,18 +4,37 @@ import com.github.grishberg.tests.ConnectedDeviceWrapper;
 import com.github.grishberg.tests.TestRunnerContext;
 import com.github.grishberg.tests.common.RunnerLogger;
 
+import javax.annotation.Nullable;
 import java.io.File;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
 import java.util.Locale;
 
+import static com.github.grishberg.tests.common.FileHelper.hashFile;
+
 /**
  * Installs apk file to current device.
+ * When package name is known, install is skipped if device already has the same apk.
  */
 public class InstallApkCommand implements DeviceRunnerCommand {
     private static final String TAG = InstallApkCommand.class.getSimpleName();
+    private static final String PACKAGE_PATH_PREFIX = "package:";
     private final File apkFile;
+    @Nullable
+    private final String packageName;
+    private String apkChecksum;
+    private String apkChecksumKey;
 
     public InstallApkCommand(File apkFile) {
+        this(apkFile, null);
+    }
+
+    /**
+     * @param packageName package of apk file, used for checking installed apk.
+     */
+    public InstallApkCommand(File apkFile, @Nullable String packageName) {
         this.apkFile = apkFile;
+        this.packageName = packageName;
     }
 
     @Override
@@ -23,12 +42,17 @@ public class InstallApkCommand implements DeviceRunnerCommand {
             throws ExecuteCommandException {
         RunnerLogger logger = runnerContext.getLogger();
         DeviceCommandResult result = new DeviceCommandResult();
+        if (isAlreadyInstalled(device, logger)) {
+            logger.i(TAG, "InstallApkCommand: {} is already installed on {}", apkFile.getName(), device);
+            return result;
+        }
         Exception lastException = null;
         for (int i = 0; i < 3; i++) {
             try {
                 String extraArgument = "";
                 logger.i(TAG, "InstallApkCommand: install file {}", apkFile.getName());
                 device.installPackage(apkFile.getAbsolutePath(), true, extraArgument);
+                lastException = null;
                 break;
             } catch (Exception e) {
                 logger.e(TAG, "InstallApkCommand: ", e);
@@ -42,4 +66,37 @@ public class InstallApkCommand implements DeviceRunnerCommand {
         }
         return result;
     }
+
+    /**
+     * Compares md5 of local apk with md5 of apk installed for package on device.
+     * Devices without md5sum tool always reinstall apk.
+     */
+    private boolean isAlreadyInstalled(ConnectedDeviceWrapper device, RunnerLogger logger) {
+        if (packageName == null || !apkFile.isFile()) {
+            return false;
+        }
+        try {
+            String[] paths = device.executeShellCommandAndReturnOutput("pm path " + packageName)
+                    .trim().split("\\s+");
+            if (paths.length != 1 || !paths[0].startsWith(PACKAGE_PATH_PREFIX)) {
+                return false;
+            }
+            String installedPath = paths[0].substring(PACKAGE_PATH_PREFIX.length());
+            String installedChecksum = device.executeShellCommandAndReturnOutput("md5sum " + installedPath)
+                    .trim().split("\\s+")[0];
+            return installedChecksum.equalsIgnoreCase(getApkChecksum());
+        } catch (ExecuteCommandException | IOException | NoSuchAlgorithmException e) {
+            logger.e(TAG, "InstallApkCommand: can't check installed apk", e);
+            return false;
+        }
+    }
+
+    private synchronized String getApkChecksum() throws IOException, NoSuchAlgorithmException {
+        String checksumKey = apkFile.length() + ":" + apkFile.lastModified();
+        if (!checksumKey.equals(apkChecksumKey)) {
+            apkChecksum = hashFile(apkFile, "MD5");
+            apkChecksumKey = checksumKey;
+        }
+        return apkChecksum;
+    }
 }
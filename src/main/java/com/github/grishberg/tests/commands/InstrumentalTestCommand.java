@@ -39,6 +39,7 @@ public class InstrumentalTestCommand implements DeviceRunnerCommand {
         try {
             TestXmlReportsGenerator testRunListener = testRunnerBuilder.getTestRunListener();
 
+            targetDevice.waitForPendingInstall();
             testRunnerBuilder.getTestRunner().run(testRunListener);
 
             TestRunResult runResult = testRunListener.getRunResult();
@@ -1,6 +1,7 @@
 package com.github.grishberg.tests.commands;
 
 import com.github.grishberg.tests.ConnectedDeviceWrapper;
+import com.github.grishberg.tests.ShellCommandBatch;
 import com.github.grishberg.tests.TestRunnerContext;
 
 /**
@@ -21,12 +22,13 @@ public class SetAnimationSpeedCommand implements DeviceRunnerCommand {
     @Override
     public DeviceCommandResult execute(ConnectedDeviceWrapper device, TestRunnerContext context)
             throws ExecuteCommandException {
-        device.executeShellCommand(String.format("settings put global window_animation_scale %d",
-                windowAnimationScale));
-        device.executeShellCommand(String.format("settings put global transition_animation_scale %d",
-                transitionAnimationScale));
-        device.executeShellCommand(String.format("settings put global animator_duration_scale %d",
-                animatorDurationScale));
+        device.executeShellCommands(new ShellCommandBatch()
+                .add(String.format("settings put global window_animation_scale %d",
+                        windowAnimationScale))
+                .add(String.format("settings put global transition_animation_scale %d",
+                        transitionAnimationScale))
+                .add(String.format("settings put global animator_duration_scale %d",
+                        animatorDurationScale)));
         return new DeviceCommandResult();
     }
 }
@@ -7,8 +7,15 @@ import com.github.grishberg.tests.InstrumentalPluginExtension;
 import com.github.grishberg.tests.TestRunnerContext;
 import com.github.grishberg.tests.commands.reports.TestXmlReportsGenerator;
 import com.github.grishberg.tests.planner.TestPlanElement;
+import com.github.grishberg.tests.planner.TestSelection;
 import org.gradle.api.Project;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -17,8 +24,11 @@ import java.util.Map;
  * Executes instrumentation test for single test method.
  */
 public class SingleInstrumentalTestCommand implements DeviceRunnerCommand {
+    private static final String TAG = SingleInstrumentalTestCommand.class.getSimpleName();
     private static final String CLASS = "class";
     private static final String PACKAGE = "package";
+    private static final String TEST_FILE = "testFile";
+    private static final String DEVICE_TMP_DIR = "/data/local/tmp/";
     private final Project project;
     private String testName;
     private final Map<String, String> instrumentationArgs;
@@ -34,9 +44,37 @@ public class SingleInstrumentalTestCommand implements DeviceRunnerCommand {
         initTargetTestArgs(testForExecution);
     }
 
+    /**
+     * @param selection tests selected by package, notPackage, class and notClass arguments.
+     */
+    public SingleInstrumentalTestCommand(Project project,
+                                         String testReportSuffix,
+                                         Map<String, String> instrumentalArgs,
+                                         TestSelection selection) {
+        this.project = project;
+        this.testName = testReportSuffix;
+        this.instrumentationArgs = new HashMap<>(instrumentalArgs);
+        instrumentationArgs.putAll(selection.getInstrumentationArgs());
+    }
+
+    /**
+     * Buffers are pre-sized with lengths of cached targets, so arguments are built
+     * without reallocations.
+     */
     private void initTargetTestArgs(List<TestPlanElement> testForExecution) {
-        StringBuilder sbClass = new StringBuilder();
-        StringBuilder sbPackage = new StringBuilder();
+        int classLength = 0;
+        int packageLength = 0;
+        for (int i = 0; i < testForExecution.size(); i++) {
+            TestPlanElement plan = testForExecution.get(i);
+            int length = plan.getAmInstrumentCommand().length() + 1;
+            if (plan.isPackage()) {
+                packageLength += length;
+            } else {
+                classLength += length;
+            }
+        }
+        StringBuilder sbClass = new StringBuilder(classLength);
+        StringBuilder sbPackage = new StringBuilder(packageLength);
         for (int i = 0; i < testForExecution.size(); i++) {
             TestPlanElement plan = testForExecution.get(i);
             if (plan.isPackage()) {
@@ -68,9 +106,19 @@ public class SingleInstrumentalTestCommand implements DeviceRunnerCommand {
         InstrumentalPluginExtension instrumentationInfo = context.getInstrumentalInfo();
         Environment environment = context.getEnvironment();
 
+        Map<String, String> args = instrumentationArgs;
+        String testFile = null;
+        if (instrumentationInfo.isTestFileEnabled() && instrumentationArgs.containsKey(CLASS)) {
+            testFile = DEVICE_TMP_DIR + instrumentationInfo.getInstrumentalPackage()
+                    + "_" + testName + ".txt";
+            args = new HashMap<>(instrumentationArgs);
+            args.put(TEST_FILE, testFile);
+            args.remove(CLASS);
+        }
+
         TestRunnerBuilder testRunnerBuilder = new TestRunnerBuilder(project,
                 testName,
-                instrumentationArgs,
+                args,
                 targetDevice,
                 context);
 
@@ -79,6 +127,10 @@ public class SingleInstrumentalTestCommand implements DeviceRunnerCommand {
         try {
             TestXmlReportsGenerator testRunListener = testRunnerBuilder.getTestRunListener();
 
+            targetDevice.waitForPendingInstall();
+            if (testFile != null) {
+                pushTestFile(targetDevice, testFile, context);
+            }
             testRunnerBuilder.getTestRunner().run(testRunListener);
 
             TestRunResult runResult = testRunListener.getRunResult();
@@ -93,10 +145,49 @@ public class SingleInstrumentalTestCommand implements DeviceRunnerCommand {
             }
         } catch (Exception e) {
             throw new ExecuteCommandException("SingleInstrumentalTestCommand.execute failed:", e);
+        } finally {
+            if (testFile != null) {
+                removeTestFile(targetDevice, testFile, context);
+            }
         }
         return result;
     }
 
+    private void removeTestFile(ConnectedDeviceWrapper device, String remotePath,
+                                TestRunnerContext context) {
+        try {
+            device.executeShellCommand("rm -f " + remotePath);
+        } catch (ExecuteCommandException e) {
+            context.getLogger().e(TAG, "Can't remove test file " + remotePath, e);
+        }
+    }
+
+    /**
+     * Writes tests from class argument one per line and pushes file to device, so count of tests
+     * is not limited by length of shell command.
+     */
+    private void pushTestFile(ConnectedDeviceWrapper device, String remotePath,
+                              TestRunnerContext context) throws ExecuteCommandException {
+        String tests = instrumentationArgs.get(CLASS);
+        context.getLogger().i(TAG, "push test file {} to device {}", remotePath, device);
+        File localFile = null;
+        try {
+            localFile = File.createTempFile(testName, ".txt");
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(localFile),
+                    StandardCharsets.UTF_8)) {
+                writer.write(tests.replace(',', '\n'));
+                writer.write('\n');
+            }
+            device.pushFile(localFile.getAbsolutePath(), remotePath);
+        } catch (IOException e) {
+            throw new ExecuteCommandException("Can't write test file:", e);
+        } finally {
+            if (localFile != null && !localFile.delete()) {
+                localFile.deleteOnExit();
+            }
+        }
+    }
+
     @Override
     public String toString() {
         return "SingleInstrumentalTestCommand{ " + instrumentationArgs + " }";
@@ -0,0 +1,56 @@
+package com.github.grishberg.tests.common;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates executors for device workers. Workers mostly wait for blocking adb calls,
+ * so virtual threads are used when JVM supports them.
+ */
+public class DeviceWorkerExecutors {
+    private static final String THREAD_NAME_PREFIX = "device-worker-";
+
+    private DeviceWorkerExecutors() {/* empty constructor for helper class */}
+
+    /**
+     * @param maxThreads max count of devices which execute commands simultaneously,
+     *                   0 - without limit.
+     */
+    public static ExecutorService newExecutor(int maxThreads) {
+        if (maxThreads <= 0) {
+            return Executors.newCachedThreadPool(provideThreadFactory());
+        }
+        return Executors.newFixedThreadPool(maxThreads, provideThreadFactory());
+    }
+
+    static ThreadFactory provideThreadFactory() {
+        ThreadFactory virtualThreadFactory = createVirtualThreadFactory();
+        if (virtualThreadFactory != null) {
+            return virtualThreadFactory;
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, THREAD_NAME_PREFIX + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Project is compiled for java 8, so Thread.ofVirtual() is called via reflection.
+     */
+    private static ThreadFactory createVirtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Method nameMethod = builderClass.getMethod("name", String.class, long.class);
+            builder = nameMethod.invoke(builder, THREAD_NAME_PREFIX, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -3,7 +3,11 @@ package com.github.grishberg.tests.common;
 import org.apache.commons.io.FileUtils;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 /**
  * Created by grishberg on 04.04.18.
@@ -17,4 +21,28 @@ public class FileHelper {
             throw new IOException("Cant create folder " + dir.getAbsolutePath());
         }
     }
+
+    /**
+     * @param algorithm name of {@link MessageDigest} algorithm.
+     * @return hex string of file content hash.
+     */
+    public static String hashFile(File file, String algorithm) throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance(algorithm);
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream is = new FileInputStream(file)) {
+            int read;
+            while ((read = is.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    public static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
 }
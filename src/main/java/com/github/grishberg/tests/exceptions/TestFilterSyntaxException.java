@@ -0,0 +1,10 @@
+package com.github.grishberg.tests.exceptions;
+
+/**
+ * Thrown when test filter expression can't be parsed.
+ */
+public class TestFilterSyntaxException extends RuntimeException {
+    public TestFilterSyntaxException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,87 @@
+package com.github.grishberg.tests.planner;
+
+import com.github.grishberg.tests.ConnectedDeviceWrapper;
+import com.github.grishberg.tests.commands.ExecuteCommandException;
+import com.github.grishberg.tests.common.RunnerLogger;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Measures the longest shell command which device accepts, result is cached by device fingerprint.
+ * Probe command starts external shell with long argument, so both adb payload limit and
+ * exec argument limit are checked, as for am instrument. Probe doesn't use shell session,
+ * commands written to session stdin are not limited by adb payload.
+ */
+public class ArgumentLimitProbe {
+    private static final String TAG = ArgumentLimitProbe.class.getSimpleName();
+    private static final String PROBE_COMMAND = "sh -c 'echo ok' ";
+    private static final String PROBE_OUTPUT = "ok";
+    static final int MAX_COMMAND_LENGTH = 128 * 1024;
+    private static final int PRECISION = 1024;
+    private final ConcurrentHashMap<String, Integer> limits = new ConcurrentHashMap<>();
+    private final RunnerLogger logger;
+
+    public ArgumentLimitProbe(RunnerLogger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * @return max length of shell command in bytes, {@link TestPlanSplitter#STRING_LIMIT}
+     * when device doesn't accept even this length. Failed probe is cached too.
+     */
+    public int getCommandLimit(ConnectedDeviceWrapper device) {
+        String fingerprint = device.getFingerprint();
+        Integer limit = limits.get(fingerprint);
+        if (limit != null) {
+            return limit;
+        }
+        int probedLimit = probe(device);
+        if (probedLimit < 0) {
+            logger.w(TAG, "device {} doesn't accept probe command, use default limit {} bytes",
+                    device, TestPlanSplitter.STRING_LIMIT);
+            probedLimit = TestPlanSplitter.STRING_LIMIT;
+        } else {
+            logger.i(TAG, "device {} accepts shell commands up to {} bytes", device, probedLimit);
+        }
+        limits.putIfAbsent(fingerprint, probedLimit);
+        return probedLimit;
+    }
+
+    /**
+     * Binary search between default limit and max argument length of linux exec.
+     *
+     * @return -1 when default limit is not accepted.
+     */
+    private int probe(ConnectedDeviceWrapper device) {
+        if (isAccepted(device, MAX_COMMAND_LENGTH)) {
+            return MAX_COMMAND_LENGTH;
+        }
+        int accepted = TestPlanSplitter.STRING_LIMIT;
+        if (!isAccepted(device, accepted)) {
+            return -1;
+        }
+        int rejected = MAX_COMMAND_LENGTH;
+        while (rejected - accepted > PRECISION) {
+            int length = (accepted + rejected) >>> 1;
+            if (isAccepted(device, length)) {
+                accepted = length;
+            } else {
+                rejected = length;
+            }
+        }
+        return accepted;
+    }
+
+    private boolean isAccepted(ConnectedDeviceWrapper device, int commandLength) {
+        char[] padding = new char[commandLength - PROBE_COMMAND.length()];
+        Arrays.fill(padding, 'x');
+        try {
+            String output = device.executeShellCommandWithoutSession(PROBE_COMMAND + new String(padding));
+            return output != null && output.trim().equals(PROBE_OUTPUT);
+        } catch (ExecuteCommandException e) {
+            logger.d(TAG, "shell command with {} bytes is not accepted: {}", commandLength, e.getMessage());
+            return false;
+        }
+    }
+}
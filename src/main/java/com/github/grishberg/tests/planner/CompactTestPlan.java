@@ -0,0 +1,325 @@
+package com.github.grishberg.tests.planner;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Package tree of test plan stored in parallel arrays indexed by node id, for suites where
+ * tree of {@link TestPlanElement} takes too much memory.
+ * Strings are stored once in string table, annotation and flag lists are shared,
+ * {@link TestPlanElement} views are created on demand.
+ * Plan is not changed after it is built, so it can be shared between devices,
+ * excluded nodes are passed by caller in bitset.
+ */
+public class CompactTestPlan {
+    static final int ROOT = 0;
+    static final int NO_NODE = -1;
+    private static final int INITIAL_CAPACITY = 256;
+    private static final NodeType[] TYPES = NodeType.values();
+    private final ArrayList<String> strings = new ArrayList<>();
+    private final HashMap<String, Integer> stringIds = new HashMap<>();
+    private final ArrayList<List<String>> lists = new ArrayList<>();
+    private final HashMap<List<String>, Integer> listIds = new HashMap<>();
+    /**
+     * Package and class nodes by parent id in high and name id in low bits.
+     */
+    private final HashMap<Long, Integer> childIds = new HashMap<>();
+    private int nodeCount;
+    private byte[] types = new byte[INITIAL_CAPACITY];
+    private int[] parents = new int[INITIAL_CAPACITY];
+    private int[] names = new int[INITIAL_CAPACITY];
+    private int[] firstChildren = new int[INITIAL_CAPACITY];
+    private int[] lastChildren = new int[INITIAL_CAPACITY];
+    private int[] nextSiblings = new int[INITIAL_CAPACITY];
+    private int[] testIds = new int[INITIAL_CAPACITY];
+    private int[] features = new int[INITIAL_CAPACITY];
+    private int[] annotations = new int[INITIAL_CAPACITY];
+    private int[] flags = new int[INITIAL_CAPACITY];
+    private int[] tests = new int[INITIAL_CAPACITY];
+    private int testCount;
+    private String lastClassName;
+    private int lastClassNode;
+
+    public CompactTestPlan() {
+        addNode(NodeType.PACKAGE, NO_NODE, intern(""));
+    }
+
+    /**
+     * @param testMethods discovered test methods.
+     */
+    public static CompactTestPlan of(List<TestPlanElement> testMethods) {
+        CompactTestPlan plan = new CompactTestPlan();
+        for (TestPlanElement element : testMethods) {
+            plan.addTest(element);
+        }
+        return plan;
+    }
+
+    /**
+     * Adds test method and missing package and class nodes.
+     *
+     * @return node id of test method.
+     */
+    public int addTest(TestPlanElement element) {
+        int classNode = findOrCreateClass(element.getClassName());
+        int node = addNode(NodeType.METHOD, classNode, intern(element.getMethodName()));
+        testIds[node] = intern(element.getTestId());
+        features[node] = element.getFeature() != null ? intern(element.getFeature()) : NO_NODE;
+        annotations[node] = internList(element.getAnnotations());
+        flags[node] = internList(element.getFlags());
+        tests = ensureCapacity(tests, testCount + 1);
+        tests[testCount++] = node;
+        return node;
+    }
+
+    public int getTestCount() {
+        return testCount;
+    }
+
+    /**
+     * @return node id of test method at position in discovery order.
+     */
+    public int getTestNode(int position) {
+        return tests[position];
+    }
+
+    public NodeType getType(int node) {
+        return TYPES[types[node]];
+    }
+
+    /**
+     * @return name of package segment, class or test method.
+     */
+    public String getName(int node) {
+        return strings.get(names[node]);
+    }
+
+    /**
+     * @return parent node id or -1 for root packages and classes.
+     */
+    public int getParent(int node) {
+        int parent = parents[node];
+        return parent == ROOT ? NO_NODE : parent;
+    }
+
+    /**
+     * @return first child node id or -1 for test method.
+     */
+    int getFirstChild(int node) {
+        return firstChildren[node];
+    }
+
+    /**
+     * @return next node id with the same parent or -1 for last child.
+     */
+    int getNextSibling(int node) {
+        return nextSiblings[node];
+    }
+
+    /**
+     * @return package name, full class name or class name with method for am instrument.
+     */
+    public String getAmInstrumentCommand(int node) {
+        if (getType(node) == NodeType.METHOD) {
+            return getAmInstrumentCommand(parents[node]) + "#" + getName(node);
+        }
+        StringBuilder sb = new StringBuilder();
+        appendPath(sb, node);
+        return sb.toString();
+    }
+
+    /**
+     * @return new element with the same data as node, package and class elements have full name.
+     */
+    public TestPlanElement getElement(int node) {
+        NodeType type = getType(node);
+        if (type != NodeType.METHOD) {
+            return new TestPlanElement(type, getAmInstrumentCommand(node));
+        }
+        TestPlanElement element = new TestPlanElement(strings.get(testIds[node]), getName(node),
+                getAmInstrumentCommand(parents[node]));
+        element.addAnnotations(lists.get(annotations[node]));
+        element.setFlags(lists.get(flags[node]));
+        if (features[node] != NO_NODE) {
+            element.setFeature(strings.get(features[node]));
+        }
+        return element;
+    }
+
+    /**
+     * @return views of all test methods in discovery order.
+     */
+    public List<TestPlanElement> getTestMethods() {
+        return new ArrayList<>(testMethodViews());
+    }
+
+    /**
+     * @return list of test methods in discovery order, new view is created on each access.
+     */
+    List<TestPlanElement> testMethodViews() {
+        return new TestMethodViews();
+    }
+
+    /**
+     * Same as {@link TestPlanElement#getCompoundElements()} for all roots: classes without
+     * excluded methods, not excluded methods of other classes. Excluded node excludes its subtree.
+     *
+     * @param excluded ids of excluded nodes.
+     */
+    public List<TestPlanElement> getCompoundElements(BitSet excluded) {
+        BitSet hasExcluded = new BitSet(nodeCount);
+        for (int node = nodeCount - 1; node > ROOT; node--) {
+            if (excluded.get(node) || hasExcluded.get(node)) {
+                hasExcluded.set(parents[node]);
+            }
+        }
+        ArrayList<TestPlanElement> result = new ArrayList<>();
+        int[] stack = new int[INITIAL_CAPACITY];
+        int stackSize = 0;
+        stack[stackSize++] = ROOT;
+        while (stackSize > 0) {
+            int node = stack[--stackSize];
+            if (excluded.get(node)) {
+                continue;
+            }
+            if (!hasExcluded.get(node) && types[node] != NodeType.PACKAGE.ordinal()) {
+                result.add(getElement(node));
+                continue;
+            }
+            int childrenStart = stackSize;
+            for (int child = firstChildren[node]; child != NO_NODE; child = nextSiblings[child]) {
+                stack = ensureCapacity(stack, stackSize + 1);
+                stack[stackSize++] = child;
+            }
+            reverse(stack, childrenStart, stackSize);
+        }
+        return result;
+    }
+
+    private int findOrCreateClass(String className) {
+        if (className.equals(lastClassName)) {
+            return lastClassNode;
+        }
+        int node = ROOT;
+        int start = 0;
+        while (true) {
+            int dot = className.indexOf('.', start);
+            boolean last = dot < 0;
+            int name = intern(className.substring(start, last ? className.length() : dot));
+            long key = ((long) node << 32) | (name & 0xFFFFFFFFL);
+            Integer child = childIds.get(key);
+            if (child == null) {
+                child = addNode(last ? NodeType.CLASS : NodeType.PACKAGE, node, name);
+                childIds.put(key, child);
+            }
+            node = child;
+            if (last) {
+                break;
+            }
+            start = dot + 1;
+        }
+        lastClassName = className;
+        lastClassNode = node;
+        return node;
+    }
+
+    private int addNode(NodeType type, int parent, int name) {
+        int node = nodeCount++;
+        if (node == types.length) {
+            int capacity = node * 2;
+            types = Arrays.copyOf(types, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            names = Arrays.copyOf(names, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            lastChildren = Arrays.copyOf(lastChildren, capacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+            testIds = Arrays.copyOf(testIds, capacity);
+            features = Arrays.copyOf(features, capacity);
+            annotations = Arrays.copyOf(annotations, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+        }
+        types[node] = (byte) type.ordinal();
+        parents[node] = parent;
+        names[node] = name;
+        firstChildren[node] = NO_NODE;
+        lastChildren[node] = NO_NODE;
+        nextSiblings[node] = NO_NODE;
+        testIds[node] = NO_NODE;
+        features[node] = NO_NODE;
+        annotations[node] = NO_NODE;
+        flags[node] = NO_NODE;
+        if (parent != NO_NODE) {
+            if (lastChildren[parent] == NO_NODE) {
+                firstChildren[parent] = node;
+            } else {
+                nextSiblings[lastChildren[parent]] = node;
+            }
+            lastChildren[parent] = node;
+        }
+        return node;
+    }
+
+    private void appendPath(StringBuilder sb, int node) {
+        int parent = parents[node];
+        if (parent != ROOT) {
+            appendPath(sb, parent);
+            sb.append('.');
+        }
+        sb.append(getName(node));
+    }
+
+    private int intern(String value) {
+        Integer id = stringIds.get(value);
+        if (id == null) {
+            id = strings.size();
+            strings.add(value);
+            stringIds.put(value, id);
+        }
+        return id;
+    }
+
+    private int internList(List<String> values) {
+        List<String> list = values != null ? values : Collections.<String>emptyList();
+        Integer id = listIds.get(list);
+        if (id == null) {
+            id = lists.size();
+            List<String> shared = Collections.unmodifiableList(new ArrayList<>(list));
+            lists.add(shared);
+            listIds.put(shared, id);
+        }
+        return id;
+    }
+
+    private class TestMethodViews extends AbstractList<TestPlanElement> implements RandomAccess {
+        @Override
+        public TestPlanElement get(int index) {
+            if (index < 0 || index >= testCount) {
+                throw new IndexOutOfBoundsException("index " + index + ", size " + testCount);
+            }
+            return getElement(tests[index]);
+        }
+
+        @Override
+        public int size() {
+            return testCount;
+        }
+    }
+
+    private static int[] ensureCapacity(int[] array, int size) {
+        return size <= array.length ? array : Arrays.copyOf(array, Math.max(size, array.length * 2));
+    }
+
+    private static void reverse(int[] array, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            int tmp = array[i];
+            array[i] = array[j];
+            array[j] = tmp;
+        }
+    }
+}
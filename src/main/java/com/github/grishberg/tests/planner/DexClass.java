@@ -0,0 +1,56 @@
+package com.github.grishberg.tests.planner;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class definition from dex file with annotations of class and its methods.
+ */
+class DexClass {
+    private static final int ACC_INTERFACE = 0x200;
+    private static final int ACC_ABSTRACT = 0x400;
+    private final String name;
+    @Nullable
+    private final String superClassName;
+    private final int accessFlags;
+    private final Map<String, List<String>> methodAnnotations = new LinkedHashMap<>();
+    private List<String> classAnnotations = Collections.emptyList();
+
+    DexClass(String name, @Nullable String superClassName, int accessFlags) {
+        this.name = name;
+        this.superClassName = superClassName;
+        this.accessFlags = accessFlags;
+    }
+
+    void addMethodAnnotations(String methodName, List<String> annotations) {
+        methodAnnotations.put(methodName, annotations);
+    }
+
+    void setClassAnnotations(List<String> classAnnotations) {
+        this.classAnnotations = classAnnotations;
+    }
+
+    List<String> getClassAnnotations() {
+        return classAnnotations;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    @Nullable
+    String getSuperClassName() {
+        return superClassName;
+    }
+
+    boolean isAbstract() {
+        return (accessFlags & (ACC_ABSTRACT | ACC_INTERFACE)) != 0;
+    }
+
+    Map<String, List<String>> getMethodAnnotations() {
+        return methodAnnotations;
+    }
+}
@@ -0,0 +1,153 @@
+package com.github.grishberg.tests.planner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads classes and runtime visible class and method annotations from dex file.
+ */
+class DexReader {
+    private static final int NO_INDEX = 0xffffffff;
+    private static final int VISIBILITY_RUNTIME = 1;
+    private static final int STRING_IDS_OFF = 0x3C;
+    private static final int TYPE_IDS_OFF = 0x44;
+    private static final int METHOD_IDS_OFF = 0x5C;
+    private static final int CLASS_DEFS_SIZE = 0x60;
+    private static final int CLASS_DEFS_OFF = 0x64;
+    private static final int CLASS_DEF_ITEM_SIZE = 32;
+    private static final int METHOD_ID_ITEM_SIZE = 8;
+    private final byte[] data;
+    private final String[] strings;
+    private int position;
+
+    DexReader(byte[] data) throws IOException {
+        this.data = data;
+        if (data.length < 0x70 || data[0] != 'd' || data[1] != 'e' || data[2] != 'x') {
+            throw new IOException("Not a dex file");
+        }
+        strings = new String[readInt(0x38)];
+    }
+
+    /**
+     * @return classes defined in dex file.
+     */
+    List<DexClass> readClasses() throws IOException {
+        int classDefsSize = readInt(CLASS_DEFS_SIZE);
+        int classDefsOff = readInt(CLASS_DEFS_OFF);
+        ArrayList<DexClass> classes = new ArrayList<>(classDefsSize);
+        for (int i = 0; i < classDefsSize; i++) {
+            int classDefOff = classDefsOff + i * CLASS_DEF_ITEM_SIZE;
+            String className = typeName(readInt(classDefOff));
+            int accessFlags = readInt(classDefOff + 4);
+            int superclassIdx = readInt(classDefOff + 8);
+            String superClassName = superclassIdx == NO_INDEX ? null : typeName(superclassIdx);
+            DexClass dexClass = new DexClass(className, superClassName, accessFlags);
+            int annotationsOff = readInt(classDefOff + 20);
+            if (annotationsOff != 0) {
+                readAnnotations(dexClass, annotationsOff);
+            }
+            classes.add(dexClass);
+        }
+        return classes;
+    }
+
+    private void readAnnotations(DexClass dexClass, int directoryOff) throws IOException {
+        int classAnnotationsOff = readInt(directoryOff);
+        if (classAnnotationsOff != 0) {
+            dexClass.setClassAnnotations(readAnnotationSet(classAnnotationsOff));
+        }
+        int fieldsSize = readInt(directoryOff + 4);
+        int annotatedMethodsSize = readInt(directoryOff + 8);
+        int methodsOff = directoryOff + 16 + fieldsSize * 8;
+        for (int i = 0; i < annotatedMethodsSize; i++) {
+            int methodIdx = readInt(methodsOff + i * 8);
+            int annotationSetOff = readInt(methodsOff + i * 8 + 4);
+            String methodName = methodName(methodIdx);
+            dexClass.addMethodAnnotations(methodName, readAnnotationSet(annotationSetOff));
+        }
+    }
+
+    private List<String> readAnnotationSet(int annotationSetOff) throws IOException {
+        int size = readInt(annotationSetOff);
+        ArrayList<String> annotations = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int annotationOff = readInt(annotationSetOff + 4 + i * 4);
+            if ((data[annotationOff] & 0xff) != VISIBILITY_RUNTIME) {
+                continue;
+            }
+            position = annotationOff + 1;
+            annotations.add(typeName(readUleb128()));
+        }
+        return annotations;
+    }
+
+    private String methodName(int methodIdx) throws IOException {
+        int methodIdOff = readInt(METHOD_IDS_OFF) + methodIdx * METHOD_ID_ITEM_SIZE;
+        return string(readInt(methodIdOff + 4));
+    }
+
+    private String typeName(int typeIdx) throws IOException {
+        String descriptor = string(readInt(readInt(TYPE_IDS_OFF) + typeIdx * 4));
+        if (descriptor.length() > 2 && descriptor.charAt(0) == 'L') {
+            return descriptor.substring(1, descriptor.length() - 1).replace('/', '.');
+        }
+        return descriptor;
+    }
+
+    private String string(int stringIdx) throws IOException {
+        if (stringIdx < 0 || stringIdx >= strings.length) {
+            throw new IOException("Wrong string index " + stringIdx);
+        }
+        String value = strings[stringIdx];
+        if (value == null) {
+            position = readInt(readInt(STRING_IDS_OFF) + stringIdx * 4);
+            int length = readUleb128();
+            value = decodeMutf8(length);
+            strings[stringIdx] = value;
+        }
+        return value;
+    }
+
+    private String decodeMutf8(int length) throws IOException {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            int a = data[position++] & 0xff;
+            if (a < 0x80) {
+                chars[i] = (char) a;
+            } else if ((a & 0xe0) == 0xc0) {
+                int b = data[position++] & 0x3f;
+                chars[i] = (char) (((a & 0x1f) << 6) | b);
+            } else if ((a & 0xf0) == 0xe0) {
+                int b = data[position++] & 0x3f;
+                int c = data[position++] & 0x3f;
+                chars[i] = (char) (((a & 0x0f) << 12) | (b << 6) | c);
+            } else {
+                throw new IOException("Wrong MUTF-8 string at " + position);
+            }
+        }
+        return new String(chars);
+    }
+
+    private int readUleb128() {
+        int result = 0;
+        int shift = 0;
+        int current;
+        do {
+            current = data[position++] & 0xff;
+            result |= (current & 0x7f) << shift;
+            shift += 7;
+        } while ((current & 0x80) != 0 && shift < 35);
+        return result;
+    }
+
+    private int readInt(int offset) throws IOException {
+        if (offset < 0 || offset + 4 > data.length) {
+            throw new IOException("Wrong offset " + offset);
+        }
+        return (data[offset] & 0xff)
+                | (data[offset + 1] & 0xff) << 8
+                | (data[offset + 2] & 0xff) << 16
+                | (data[offset + 3] & 0xff) << 24;
+    }
+}
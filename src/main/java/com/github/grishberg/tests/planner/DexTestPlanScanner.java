@@ -0,0 +1,185 @@
+package com.github.grishberg.tests.planner;
+
+import com.github.grishberg.tests.common.RunnerLogger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Builds test plan from dex files of test apk without device.
+ * Test methods are methods with {@code org.junit.Test} annotation, including methods
+ * inherited from super classes. Annotations are the same as printed by on-device listener,
+ * feature and flags are not available offline.
+ */
+public class DexTestPlanScanner {
+    private static final String TAG = DexTestPlanScanner.class.getSimpleName();
+    private static final String TEST_ANNOTATION = "org.junit.Test";
+    private static final String TEST_ID = "AndroidJUnitRunner";
+    private static final Pattern DEX_ENTRY = Pattern.compile("classes\\d*\\.dex");
+    private static final String ARG_CLASS = "class";
+    private static final String ARG_NOT_CLASS = "notClass";
+    private static final String ARG_PACKAGE = "package";
+    private static final String ARG_NOT_PACKAGE = "notPackage";
+    private static final String ARG_ANNOTATION = "annotation";
+    private static final String ARG_NOT_ANNOTATION = "notAnnotation";
+    private final RunnerLogger logger;
+
+    public DexTestPlanScanner(RunnerLogger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * @param testApk test apk.
+     * @param args    instrumentation args, runner filters are applied to test plan.
+     * @return list of test methods.
+     */
+    public List<TestPlanElement> scan(File testApk, Map<String, String> args) throws IOException {
+        Map<String, DexClass> classes = new HashMap<>();
+        try (ZipFile zipFile = new ZipFile(testApk)) {
+            List<? extends ZipEntry> entries = Collections.list(zipFile.entries());
+            for (ZipEntry entry : entries) {
+                if (!DEX_ENTRY.matcher(entry.getName()).matches()) {
+                    continue;
+                }
+                try (InputStream is = zipFile.getInputStream(entry)) {
+                    for (DexClass dexClass : new DexReader(readFully(is)).readClasses()) {
+                        classes.put(dexClass.getName(), dexClass);
+                    }
+                }
+            }
+        }
+        List<TestPlanElement> plan = filter(buildPlan(classes), classes, args);
+        logger.i(TAG, "scan: found {} tests in {} classes of {}", plan.size(), classes.size(),
+                testApk.getName());
+        return plan;
+    }
+
+    List<TestPlanElement> buildPlan(Map<String, DexClass> classes) {
+        ArrayList<String> classNames = new ArrayList<>(classes.keySet());
+        Collections.sort(classNames);
+        ArrayList<TestPlanElement> plan = new ArrayList<>();
+        TestPlanStore store = new TestPlanStore();
+        for (String className : classNames) {
+            DexClass dexClass = classes.get(className);
+            if (dexClass.isAbstract()) {
+                continue;
+            }
+            Set<String> processedMethods = new HashSet<>();
+            DexClass current = dexClass;
+            while (current != null) {
+                for (Map.Entry<String, List<String>> method : current.getMethodAnnotations().entrySet()) {
+                    if (!processedMethods.add(method.getKey())
+                            || !method.getValue().contains(TEST_ANNOTATION)) {
+                        continue;
+                    }
+                    TestPlanElement element = new TestPlanElement(TEST_ID, method.getKey(), className);
+                    element.addAnnotations(store.intern(method.getValue()));
+                    plan.add(element);
+                }
+                String superClassName = current.getSuperClassName();
+                current = superClassName != null ? classes.get(superClassName) : null;
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Annotation filters match annotations of test method or of its test class,
+     * as in AndroidJUnitRunner.
+     */
+    private List<TestPlanElement> filter(List<TestPlanElement> plan, Map<String, DexClass> classes,
+                                         Map<String, String> args) {
+        List<String> includedClasses = splitArg(args.get(ARG_CLASS));
+        List<String> excludedClasses = splitArg(args.get(ARG_NOT_CLASS));
+        List<String> includedPackages = splitArg(args.get(ARG_PACKAGE));
+        List<String> excludedPackages = splitArg(args.get(ARG_NOT_PACKAGE));
+        List<String> includedAnnotations = splitArg(args.get(ARG_ANNOTATION));
+        List<String> excludedAnnotations = splitArg(args.get(ARG_NOT_ANNOTATION));
+
+        ArrayList<TestPlanElement> result = new ArrayList<>();
+        for (TestPlanElement element : plan) {
+            if (!includedClasses.isEmpty() && !matchesClass(element, includedClasses)) {
+                continue;
+            }
+            if (matchesClass(element, excludedClasses)) {
+                continue;
+            }
+            if (!includedPackages.isEmpty() && !matchesPackage(element, includedPackages)) {
+                continue;
+            }
+            if (matchesPackage(element, excludedPackages)) {
+                continue;
+            }
+            List<String> annotations = element.getAnnotations();
+            List<String> classAnnotations = classes.get(element.getClassName()).getClassAnnotations();
+            if (!includedAnnotations.isEmpty() && !containsAny(annotations, includedAnnotations)
+                    && !containsAny(classAnnotations, includedAnnotations)) {
+                continue;
+            }
+            if (containsAny(annotations, excludedAnnotations)
+                    || containsAny(classAnnotations, excludedAnnotations)) {
+                continue;
+            }
+            result.add(element);
+        }
+        return result;
+    }
+
+    private static boolean matchesClass(TestPlanElement element, List<String> classes) {
+        String fullMethodName = element.getClassName() + "#" + element.getMethodName();
+        for (String value : classes) {
+            if (value.equals(element.getClassName()) || value.equals(fullMethodName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchesPackage(TestPlanElement element, List<String> packages) {
+        for (String packageName : packages) {
+            if (element.getClassName().startsWith(packageName + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsAny(List<String> annotations, List<String> expected) {
+        for (String annotation : expected) {
+            if (annotations.contains(annotation)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<String> splitArg(String value) {
+        if (value == null || value.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(value.split(","));
+    }
+
+    private static byte[] readFully(InputStream is) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = is.read(buffer)) > 0) {
+            os.write(buffer, 0, read);
+        }
+        return os.toByteArray();
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.grishberg.tests.planner;
+
+import com.android.ddmlib.IShellOutputReceiver;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * Receives raw am instrument -e log true output from adb and generates test plan.
+ * Output is split by {@link InstrumentOutputTokenizer} without decoding each line to string,
+ * key/value pairs are passed to {@link InstrumentTestLogParser}.
+ */
+public class InstrumentOutputReceiver implements IShellOutputReceiver {
+    private final InstrumentTestLogParser parser;
+    private final InstrumentOutputTokenizer tokenizer;
+
+    public InstrumentOutputReceiver() {
+        this(new InstrumentTestLogParser());
+    }
+
+    InstrumentOutputReceiver(InstrumentTestLogParser parser) {
+        this.parser = parser;
+        tokenizer = new InstrumentOutputTokenizer(new InstrumentOutputTokenizer.Callback() {
+            @Override
+            public void onStatus(String key, String value) {
+                parser.processStatus(key, value);
+            }
+
+            @Override
+            public void onResult(@Nullable String key, @Nullable String value) {
+                parser.processResult(key, value);
+            }
+
+            @Override
+            public void onCode(String code) {
+                parser.processCode(code);
+            }
+        });
+    }
+
+    /**
+     * @param logger receives each line of output, lines are decoded only when logger is set.
+     */
+    public void setLogger(@Nullable InstrumentTestLogParser.ParserLogger logger) {
+        tokenizer.setLogger(logger);
+    }
+
+    /**
+     * @param testPlanListener receives each test as soon as its status block is parsed.
+     */
+    public void setTestPlanListener(@Nullable TestPlanListener testPlanListener) {
+        parser.setTestPlanListener(testPlanListener);
+    }
+
+    @Override
+    public void addOutput(byte[] data, int offset, int length) {
+        tokenizer.addOutput(data, offset, length);
+    }
+
+    @Override
+    public void flush() {
+        tokenizer.flush();
+        parser.done();
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    /**
+     * Called when am instrument output is finished, can be called several times.
+     */
+    public void done() {
+        parser.done();
+    }
+
+    public List<TestPlanElement> getTestInstances() {
+        return parser.getTestInstances();
+    }
+}
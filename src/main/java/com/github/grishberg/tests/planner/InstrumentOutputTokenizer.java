@@ -0,0 +1,212 @@
+package com.github.grishberg.tests.planner;
+
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splits raw am instrument output to lines and key/value pairs.
+ * Line buffer is reused, strings are created only for values of known keys,
+ * value equal to previous value of the same key is not decoded again.
+ */
+class InstrumentOutputTokenizer {
+    static final String ID = "id";
+    static final String TEST = "test";
+    static final String CLASS = "class";
+    static final String ANNOTATIONS = "annotations";
+    static final String FEATURE = "feature";
+    static final String FLAGS = "flags";
+    static final String SHORT_MSG = "shortMsg";
+    static final String LONG_MSG = "longMsg";
+    private static final byte[] INSTRUMENTATION_STATUS = bytes("INSTRUMENTATION_STATUS: ");
+    private static final byte[] INSTRUMENTATION_RESULT = bytes("INSTRUMENTATION_RESULT: ");
+    private static final byte[] INSTRUMENTATION_CODE = bytes("INSTRUMENTATION_CODE: ");
+    private static final String[] STATUS_KEYS = {ID, TEST, CLASS, ANNOTATIONS, FEATURE, FLAGS};
+    private static final String[] RESULT_KEYS = {SHORT_MSG, LONG_MSG};
+    private static final byte[][] STATUS_KEY_BYTES = bytes(STATUS_KEYS);
+    private static final byte[][] RESULT_KEY_BYTES = bytes(RESULT_KEYS);
+    private final Callback callback;
+    private final ValueCache[] statusValues = new ValueCache[STATUS_KEYS.length];
+    @Nullable
+    private InstrumentTestLogParser.ParserLogger logger;
+    private byte[] line = new byte[1024];
+    private int lineLength;
+
+    InstrumentOutputTokenizer(Callback callback) {
+        this.callback = callback;
+        for (int i = 0; i < statusValues.length; i++) {
+            if (!TEST.equals(STATUS_KEYS[i])) {
+                statusValues[i] = new ValueCache();
+            }
+        }
+    }
+
+    void setLogger(@Nullable InstrumentTestLogParser.ParserLogger logger) {
+        this.logger = logger;
+    }
+
+    void addOutput(byte[] data, int offset, int length) {
+        int end = offset + length;
+        int start = offset;
+        for (int i = offset; i < end; i++) {
+            if (data[i] == '\n') {
+                appendToLine(data, start, i - start);
+                processLine();
+                start = i + 1;
+            }
+        }
+        appendToLine(data, start, end - start);
+    }
+
+    /**
+     * Processes last line without line break.
+     */
+    void flush() {
+        if (lineLength > 0) {
+            processLine();
+        }
+    }
+
+    private void appendToLine(byte[] data, int offset, int length) {
+        if (lineLength + length > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+        }
+        System.arraycopy(data, offset, line, lineLength, length);
+        lineLength += length;
+    }
+
+    private void processLine() {
+        int length = lineLength;
+        lineLength = 0;
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        if (logger != null) {
+            logger.logLine(new String(line, 0, length, StandardCharsets.UTF_8));
+        }
+        if (startsWith(length, INSTRUMENTATION_STATUS)) {
+            processStatus(INSTRUMENTATION_STATUS.length, length);
+        } else if (startsWith(length, INSTRUMENTATION_RESULT)) {
+            processResult(INSTRUMENTATION_RESULT.length, length);
+        } else if (startsWith(length, INSTRUMENTATION_CODE)) {
+            int start = INSTRUMENTATION_CODE.length;
+            callback.onCode(new String(line, start, length - start, StandardCharsets.UTF_8));
+        }
+    }
+
+    private void processStatus(int start, int end) {
+        int separator = indexOf('=', start, end);
+        if (separator < 0) {
+            return;
+        }
+        int keyIndex = findKey(STATUS_KEY_BYTES, start, separator);
+        if (keyIndex < 0) {
+            return;
+        }
+        int valueLength = end - separator - 1;
+        ValueCache valueCache = statusValues[keyIndex];
+        String value = valueCache != null ? valueCache.decode(line, separator + 1, valueLength) :
+                new String(line, separator + 1, valueLength, StandardCharsets.UTF_8);
+        callback.onStatus(STATUS_KEYS[keyIndex], value);
+    }
+
+    private void processResult(int start, int end) {
+        int separator = indexOf('=', start, end);
+        int keyIndex = separator < 0 ? -1 : findKey(RESULT_KEY_BYTES, start, separator);
+        if (keyIndex < 0) {
+            callback.onResult(null, null);
+            return;
+        }
+        callback.onResult(RESULT_KEYS[keyIndex],
+                new String(line, separator + 1, end - separator - 1, StandardCharsets.UTF_8));
+    }
+
+    private boolean startsWith(int length, byte[] prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (line[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int indexOf(char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (line[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int findKey(byte[][] keys, int start, int end) {
+        int length = end - start;
+        for (int keyIndex = 0; keyIndex < keys.length; keyIndex++) {
+            byte[] key = keys[keyIndex];
+            if (key.length != length) {
+                continue;
+            }
+            int i = 0;
+            while (i < length && line[start + i] == key[i]) {
+                i++;
+            }
+            if (i == length) {
+                return keyIndex;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[][] bytes(String[] values) {
+        byte[][] result = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = bytes(values[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Keeps last decoded value, tests of one class have the same class name, id and often
+     * the same annotations. Test method names are always different and are not cached.
+     */
+    private static class ValueCache {
+        private byte[] bytes = new byte[0];
+        private String value = "";
+
+        String decode(byte[] data, int offset, int length) {
+            if (length == bytes.length && rangeEquals(data, offset, length)) {
+                return value;
+            }
+            bytes = Arrays.copyOfRange(data, offset, offset + length);
+            value = new String(bytes, StandardCharsets.UTF_8);
+            return value;
+        }
+
+        private boolean rangeEquals(byte[] data, int offset, int length) {
+            for (int i = 0; i < length; i++) {
+                if (data[offset + i] != bytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    interface Callback {
+        void onStatus(String key, String value);
+
+        /**
+         * @param key is null for unknown key, result line means that process is crashed.
+         */
+        void onResult(@Nullable String key, @Nullable String value);
+
+        void onCode(String code);
+    }
+}
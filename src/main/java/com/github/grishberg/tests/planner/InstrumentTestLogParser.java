@@ -5,34 +5,49 @@ import com.github.grishberg.tests.exceptions.ProcessCrashedException;
 import org.jetbrains.annotations.NotNull;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 /**
- * Parses am instrument -e log true output and generates.
+ * Parses am instrument -e log true output and generates test plan.
+ * Raw shell output is received by {@link InstrumentOutputReceiver}, which passes
+ * tokenized key/value pairs to this parser.
  */
 public class InstrumentTestLogParser extends MultiLineReceiver {
     private static final String INSTRUMENTATION_STATUS = "INSTRUMENTATION_STATUS: ";
     private static final String INSTRUMENTATION_RESULT = "INSTRUMENTATION_RESULT: ";
     private static final String INSTRUMENTATION_CODE = "INSTRUMENTATION_CODE: ";
-    private static final String ID = "id";
-    private static final String TEST = "test";
-    private static final String CLASS = "class";
-    private static final String ANNOTATIONS = "annotations";
-    private static final String FEATURE = "feature";
-    private static final String FLAGS = "flags";
-    private static final String SHORT_MSG = "shortMsg";
-    private static final String LONG_MSG = "longMsg";
+    private static final String ID = InstrumentOutputTokenizer.ID;
+    private static final String TEST = InstrumentOutputTokenizer.TEST;
+    private static final String CLASS = InstrumentOutputTokenizer.CLASS;
+    private static final String ANNOTATIONS = InstrumentOutputTokenizer.ANNOTATIONS;
+    private static final String FEATURE = InstrumentOutputTokenizer.FEATURE;
+    private static final String FLAGS = InstrumentOutputTokenizer.FLAGS;
+    private static final String SHORT_MSG = InstrumentOutputTokenizer.SHORT_MSG;
+    private static final String LONG_MSG = InstrumentOutputTokenizer.LONG_MSG;
     private static final String PROCESS_CRASHED = "Process crashed.";
     private ParserLogger logger;
-    private final ArrayList<TestPlanElement> testPlanList = new ArrayList<>();
+    @Nullable
+    private TestPlanListener testPlanListener;
+    private final TestPlanStore testPlanStore = new TestPlanStore();
     private State state = new StartNewObject();
+    @Nullable
+    private TestPlanElement pendingElement;
+    private boolean finished;
 
     public void setLogger(ParserLogger logger) {
         this.logger = logger;
     }
 
+    /**
+     * @param testPlanListener receives each test as soon as its status block is parsed.
+     */
+    public void setTestPlanListener(@Nullable TestPlanListener testPlanListener) {
+        this.testPlanListener = testPlanListener;
+    }
+
     @Override
     public void processNewLines(String[] lines) {
         for (String word : lines) {
@@ -47,13 +62,14 @@ public class InstrumentTestLogParser extends MultiLineReceiver {
         }
         int startPos = word.indexOf(INSTRUMENTATION_RESULT);
         if (startPos >= 0) {
-            parseInstrumentationResult(word.substring(startPos + INSTRUMENTATION_STATUS.length()));
+            String[] words = getSplitArray(word.substring(startPos + INSTRUMENTATION_RESULT.length()));
+            processResult(words[0], words.length == 2 ? words[1] : null);
             return;
         }
 
         startPos = word.indexOf(INSTRUMENTATION_CODE);
         if (startPos >= 0) {
-            state.setCode(word.substring(startPos + INSTRUMENTATION_CODE.length()));
+            processCode(word.substring(startPos + INSTRUMENTATION_CODE.length()));
             return;
         }
 
@@ -68,54 +84,63 @@ public class InstrumentTestLogParser extends MultiLineReceiver {
         if (words.length != 2) {
             return;
         }
+        processStatus(words[0], words[1]);
+    }
 
-        if (ID.equals(words[0])) {
+    void processStatus(String key, String value) {
+        if (ID.equals(key)) {
             state.storeValuesIfNeeded();
-            state.setTestId(words[1]);
+            state.setTestId(testPlanStore.intern(value));
             return;
         }
 
-        if (TEST.equals(words[0])) {
-            state.setTestMethod(words[1]);
+        if (TEST.equals(key)) {
+            state.setTestMethod(value);
             return;
         }
 
-        if (CLASS.equals(words[0])) {
-            state.setClassName(words[1]);
+        if (CLASS.equals(key)) {
+            state.setClassName(testPlanStore.intern(value));
             return;
         }
 
-        if (FEATURE.equals(words[0])) {
-            state.setFeature(words[1]);
+        if (FEATURE.equals(key)) {
+            state.setFeature(value);
             return;
         }
 
-        if (FLAGS.equals(words[0])) {
-            List<String> flags = parseFlags(words[1]);
+        if (FLAGS.equals(key)) {
+            List<String> flags = testPlanStore.intern(parseFlags(value));
             state.setFlags(flags);
         }
 
-        if (ANNOTATIONS.equals(words[0])) {
-            List<String> annotations = parseAnnotations(words[1]);
+        if (ANNOTATIONS.equals(key)) {
+            List<String> annotations = testPlanStore.intern(parseAnnotations(value));
             state.setAnnotations(annotations);
         }
     }
 
-    private void parseInstrumentationResult(String payload) {
+    void processResult(@Nullable String key, @Nullable String value) {
         if (state instanceof StartNewObject) {
             state = new ProcessCrashedState();
         }
-        String[] words = getSplitArray(payload);
+        if (value == null) {
+            return;
+        }
 
-        if (SHORT_MSG.equals(words[0])) {
-            state.setShortMessage(words[1]);
+        if (SHORT_MSG.equals(key)) {
+            state.setShortMessage(value);
         }
 
-        if (LONG_MSG.equals(words[0])) {
-            state.setLongMessage(words[1]);
+        if (LONG_MSG.equals(key)) {
+            state.setLongMessage(value);
         }
     }
 
+    void processCode(String code) {
+        state.setCode(code);
+    }
+
     private List<String> parseFlags(@Nonnull String flags) {
         ArrayList<String> result = new ArrayList<>();
         if (flags.indexOf(',') < 0) {
@@ -139,13 +164,40 @@ public class InstrumentTestLogParser extends MultiLineReceiver {
         return Arrays.asList(annotations.split(","));
     }
 
+    /**
+     * Called when am instrument output is finished, can be called several times.
+     */
+    @Override
+    public void done() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        state.storeValuesIfNeeded();
+        publishPendingElement();
+        if (testPlanListener != null) {
+            testPlanListener.onDiscoveryFinished();
+        }
+    }
+
+    /**
+     * Element is published when next status block is started, because annotations, feature
+     * and flags are received after test name.
+     */
+    private void publishPendingElement() {
+        if (pendingElement != null && testPlanListener != null) {
+            testPlanListener.onTestDiscovered(pendingElement);
+        }
+        pendingElement = null;
+    }
+
     @Override
     public boolean isCancelled() {
         return false;
     }
 
     public List<TestPlanElement> getTestInstances() {
-        return testPlanList;
+        return testPlanStore.getElements();
     }
 
     private interface State {
@@ -256,20 +308,23 @@ public class InstrumentTestLogParser extends MultiLineReceiver {
         @Override
         public void setTestId(String testId) {
             storeValuesIfNeeded();
+            publishPendingElement();
             state = new StartNewObject();
             state.setTestId(testId);
         }
 
         @Override
         public void storeValuesIfNeeded() {
+            if (testPlan != null) {
+                return;
+            }
             testPlan = new TestPlanElement(testId, testMethodName, testClassName);
 
-            if (!testPlanList.contains(testPlan)) {
-                testPlanList.add(testPlan);
-
+            if (testPlanStore.add(testPlan)) {
                 testPlan.addAnnotations(annotations);
                 testPlan.setFeature(feature);
                 testPlan.setFlags(flags);
+                pendingElement = testPlan;
             }
         }
 
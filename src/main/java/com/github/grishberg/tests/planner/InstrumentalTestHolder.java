@@ -1,27 +1,77 @@
 package com.github.grishberg.tests.planner;
 
+import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * Holder for instrumental test.
+ * When holder is backed by {@link CompactTestPlan}, package tree is not built from
+ * {@link TestPlanElement} objects, elements are views created on demand.
+ * Compact plan can be shared between holders, excluded nodes are stored in holder.
  */
 public class InstrumentalTestHolder {
     private List<TestPlanElement> planList;
+    @Nullable
+    private final CompactTestPlan compactPlan;
+    /**
+     * Excluded node ids of compact plan.
+     */
+    private final BitSet excludedNodes = new BitSet();
     private final PackageTreeGenerator packageTreeGenerator;
+    private final boolean planContainsAllTests;
+    private final boolean testFileEnabled;
+    private final int argumentBudget;
+    private final TestSelectionEncoder selectionEncoder = new TestSelectionEncoder();
     private ArrayList<TestPlanElement> prevRoots = new ArrayList<>();
 
     InstrumentalTestHolder(List<TestPlanElement> planList, PackageTreeGenerator packageTreeGenerator) {
-        this.planList = planList;
+        this(planList, packageTreeGenerator, false, false, TestPlanSplitter.STRING_LIMIT);
+    }
+
+    /**
+     * @param planContainsAllTests true when plan was discovered with the same arguments as
+     *                             tests are executed, so tests can be selected by exclusions.
+     * @param testFileEnabled      true when class argument is pushed to device in test file.
+     * @param argumentBudget       max length of selection arguments in UTF-8 bytes.
+     */
+    InstrumentalTestHolder(List<TestPlanElement> planList, PackageTreeGenerator packageTreeGenerator,
+                           boolean planContainsAllTests, boolean testFileEnabled, int argumentBudget) {
+        this(planList, null, packageTreeGenerator, planContainsAllTests, testFileEnabled, argumentBudget);
+    }
 
+    /**
+     * Holder backed by compact plan, other parameters are the same as for list of tests.
+     * Plan is not changed by holder.
+     */
+    InstrumentalTestHolder(CompactTestPlan compactPlan, PackageTreeGenerator packageTreeGenerator,
+                           boolean planContainsAllTests, boolean testFileEnabled, int argumentBudget) {
+        this(null, compactPlan, packageTreeGenerator, planContainsAllTests, testFileEnabled, argumentBudget);
+    }
+
+    private InstrumentalTestHolder(@Nullable List<TestPlanElement> planList,
+                                   @Nullable CompactTestPlan compactPlan,
+                                   PackageTreeGenerator packageTreeGenerator,
+                                   boolean planContainsAllTests, boolean testFileEnabled, int argumentBudget) {
+        this.planList = planList;
+        this.compactPlan = compactPlan;
         this.packageTreeGenerator = packageTreeGenerator;
+        this.planContainsAllTests = planContainsAllTests;
+        this.testFileEnabled = testFileEnabled;
+        this.argumentBudget = argumentBudget;
     }
 
     /**
      * @return iterator with all test methods in project.
      */
     public Iterator<TestPlanElement> provideTestNodeElementsIterator() {
+        if (compactPlan != null) {
+            return new CompactIterator();
+        }
         prevRoots.clear();
         populateRootsElements();
         return new FlatIterator(prevRoots);
@@ -32,6 +82,9 @@ public class InstrumentalTestHolder {
     }
 
     public List<TestPlanElement> provideCompoundTestPlan() {
+        if (compactPlan != null) {
+            return compactPlan.getCompoundElements(excludedNodes);
+        }
         if (prevRoots.isEmpty()) {
             populateRootsElements();
         }
@@ -45,6 +98,103 @@ public class InstrumentalTestHolder {
         return compoundPlans;
     }
 
+    /**
+     * @return max length of selection arguments in UTF-8 bytes, computed from command limit
+     * probed on device.
+     */
+    public int getArgumentBudget() {
+        return argumentBudget;
+    }
+
+    /**
+     * Splits compound plan by argument budget of this holder, so each part fits into
+     * class argument of one am instrument command.
+     */
+    public List<List<TestPlanElement>> splitCompoundTestPlan() {
+        int classArgumentLength = TestSelection.argumentLength(TestSelection.CLASS,
+                Collections.singletonList(""));
+        return TestPlanSplitter.splitByArgumentLimit(provideCompoundTestPlan(),
+                argumentBudget - classArgumentLength);
+    }
+
+    /**
+     * Excludes tests which don't match filter, so they are not included to compound plan
+     * and test selections.
+     */
+    public void excludeNotMatched(TestFilter filter) {
+        excludeNotMatched(filter, new TestPlanIndex(compactPlan != null
+                ? compactPlan.testMethodViews() : planList));
+    }
+
+    /**
+     * Index is only read, so it can be shared with other holders: tests are excluded
+     * in this holder's own plan.
+     *
+     * @param index index of plan with the same order of tests as in this holder.
+     */
+    void excludeNotMatched(TestFilter filter, TestPlanIndex index) {
+        int testCount = compactPlan != null ? compactPlan.getTestCount() : planList.size();
+        if (index.size() != testCount) {
+            throw new IllegalArgumentException("index contains " + index.size()
+                    + " tests, but holder contains " + testCount);
+        }
+        BitSet matched = filter.select(index);
+        if (compactPlan != null) {
+            for (int i = matched.nextClearBit(0); i < index.size(); i = matched.nextClearBit(i + 1)) {
+                excludedNodes.set(compactPlan.getTestNode(i));
+            }
+            return;
+        }
+        if (prevRoots.isEmpty()) {
+            populateRootsElements();
+        }
+        for (int i = matched.nextClearBit(0); i < planList.size(); i = matched.nextClearBit(i + 1)) {
+            planList.get(i).exclude();
+        }
+    }
+
+    /**
+     * @return not excluded tests encoded with the shortest am instrument arguments,
+     * each selection is executed by one am instrument invocation.
+     */
+    public List<TestSelection> provideTestSelections() {
+        if (compactPlan != null) {
+            return selectionEncoder.encode(compactPlan, excludedNodes, planContainsAllTests,
+                    argumentBudget, testFileEnabled);
+        }
+        if (prevRoots.isEmpty()) {
+            populateRootsElements();
+        }
+        return selectionEncoder.encode(prevRoots, planContainsAllTests, argumentBudget, testFileEnabled);
+    }
+
+    /**
+     * Creates views of compact plan test methods on demand, excluded view excludes
+     * its node in holder.
+     */
+    private class CompactIterator implements Iterator<TestPlanElement> {
+        private int position;
+
+        @Override
+        public boolean hasNext() {
+            return position < compactPlan.getTestCount();
+        }
+
+        @Override
+        public TestPlanElement next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int node = compactPlan.getTestNode(position++);
+            TestPlanElement element = compactPlan.getElement(node);
+            if (excludedNodes.get(node)) {
+                element.exclude();
+            }
+            element.setExcludeListener(() -> excludedNodes.set(node));
+            return element;
+        }
+    }
+
     /**
      * Returns tree-items in flat list.
      */
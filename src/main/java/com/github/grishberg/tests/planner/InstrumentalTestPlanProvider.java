@@ -6,44 +6,274 @@ import com.github.grishberg.tests.commands.ExecuteCommandException;
 import com.github.grishberg.tests.common.RunnerLogger;
 import org.gradle.api.Project;
 
+import javax.annotation.Nullable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Provides set of {@link TestPlanElement} for instrumental tests.
  */
 public class InstrumentalTestPlanProvider {
     private static final String TAG = InstrumentalTestPlanProvider.class.getSimpleName();
+    private static final String CACHE_DIR = "intermediates/instrumentalTests/testPlans";
+    private static final String OFFLINE_FINGERPRINT = "offline";
+    private static final String TEST_FILTER_PROPERTY = "testFilter";
+    private static final String AM_INSTRUMENT = "am instrument -w -r";
+    /**
+     * Coverage, test file and other arguments added to command by runner.
+     */
+    private static final int COMMAND_RESERVE = 256;
+    /**
+     * Guard for devices with very short command limit, enough for one test method argument.
+     */
+    private static final int MIN_SELECTION_BUDGET = 512;
     private final InstrumentalPluginExtension instrumentationInfo;
     private final Project project;
     private final PackageTreeGenerator packageTreeGenerator;
+    private final TestPlanCache testPlanCache;
+    private final DexTestPlanScanner dexScanner;
+    private final ArgumentLimitProbe argumentLimitProbe;
+    private final ConcurrentHashMap<String, CompletableFuture<DiscoveredPlan>> discoveredPlans =
+            new ConcurrentHashMap<>();
+    private final AtomicBoolean offlineFilterWarned = new AtomicBoolean();
     private RunnerLogger logger;
+    @Nullable
+    private TestFilter testFilter;
+
+    public InstrumentalTestPlanProvider(Project project,
+                                        InstrumentalPluginExtension instrumentationInfo,
+                                        PackageTreeGenerator packageTreeGenerator,
+                                        RunnerLogger logger) {
+        this(project, instrumentationInfo, packageTreeGenerator,
+                new TestPlanCache(new File(project.getBuildDir(), CACHE_DIR), logger), logger);
+    }
 
     public InstrumentalTestPlanProvider(Project project,
                                         InstrumentalPluginExtension instrumentationInfo,
                                         PackageTreeGenerator packageTreeGenerator,
+                                        TestPlanCache testPlanCache,
                                         RunnerLogger logger) {
         this.project = project;
         this.instrumentationInfo = instrumentationInfo;
         this.packageTreeGenerator = packageTreeGenerator;
+        this.testPlanCache = testPlanCache;
         this.logger = logger;
+        dexScanner = new DexTestPlanScanner(logger);
+        argumentLimitProbe = new ArgumentLimitProbe(logger);
     }
 
+    /**
+     * Discovers test plan once for all devices with the same fingerprint,
+     * other devices are waiting for discovery result. When discovery fails, waiting devices
+     * discover plan by themselves. Each call returns own copies of elements.
+     * Tests which don't match testFilter project property are skipped.
+     */
     public List<TestPlanElement> provideTestPlan(ConnectedDeviceWrapper device,
                                                  Map<String, String> instrumentalArgs) throws ExecuteCommandException {
+        return provideTestPlan(device, instrumentalArgs, null);
+    }
+
+    /**
+     * Same as {@link #provideTestPlan(ConnectedDeviceWrapper, Map)}, but also passes elements
+     * to listener. When plan is discovered on this device, elements are passed while
+     * am instrument output is parsed, otherwise when plan is ready.
+     */
+    public List<TestPlanElement> provideTestPlan(ConnectedDeviceWrapper device,
+                                                 Map<String, String> instrumentalArgs,
+                                                 @Nullable TestPlanListener listener) throws ExecuteCommandException {
+        TestFilter filter = getFilterFromCli();
+        if (filter == null) {
+            return provideDiscoveredTestPlan(device, instrumentalArgs, listener).copyTestMethods();
+        }
+        TestPlanListener filteredListener = listener != null
+                ? new FilteredTestPlanListener(listener, filter) : null;
+        return provideDiscoveredTestPlan(device, instrumentalArgs, filteredListener)
+                .copyTestMethods(filter);
+    }
+
+    /**
+     * @return all discovered tests shared between devices, test filter is not applied.
+     */
+    private DiscoveredPlan provideDiscoveredTestPlan(ConnectedDeviceWrapper device,
+                                                     Map<String, String> instrumentalArgs,
+                                                     @Nullable TestPlanListener listener)
+            throws ExecuteCommandException {
+        HashMap<String, String> args = buildDiscoveryArgs(instrumentalArgs);
+        String command = buildLogOnlyCommand(args);
+        boolean offlineDiscovery = isOfflineDiscoveryEnabled();
+        String planKey = (offlineDiscovery ? OFFLINE_FINGERPRINT : device.getFingerprint())
+                + " " + command;
+
+        while (true) {
+            CompletableFuture<DiscoveredPlan> newPlan = new CompletableFuture<>();
+            CompletableFuture<DiscoveredPlan> plan = discoveredPlans.putIfAbsent(planKey, newPlan);
+            if (plan == null) {
+                boolean streamed = false;
+                if (offlineDiscovery) {
+                    scanTestApk(args, planKey, newPlan);
+                } else {
+                    streamed = discoverTestPlan(device, command, planKey, newPlan, listener);
+                }
+                DiscoveredPlan testPlan = waitForPlan(newPlan);
+                if (!streamed) {
+                    notifyListener(testPlan, listener);
+                }
+                return testPlan;
+            }
+            logger.i(TAG, "provideTestPlan for device {}: wait plan for fingerprint {}",
+                    device.getName(), device.getFingerprint());
+            try {
+                DiscoveredPlan testPlan = waitForPlan(plan);
+                notifyListener(testPlan, listener);
+                return testPlan;
+            } catch (ExecuteCommandException | RuntimeException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                logger.w(TAG, "discovery on other device failed, device {} discovers plan: {}",
+                        device.getName(), e.getMessage());
+            }
+        }
+    }
+
+    private static void notifyListener(DiscoveredPlan testPlan, @Nullable TestPlanListener listener) {
+        if (listener == null) {
+            return;
+        }
+        for (TestPlanElement element : testPlan.copyTestMethods()) {
+            listener.onTestDiscovered(element);
+        }
+        listener.onDiscoveryFinished();
+    }
+
+    /**
+     * Elements of discovered plan are shared between devices, so each device gets own copies
+     * which can be placed to its package tree and excluded.
+     */
+    private static List<TestPlanElement> copyOf(List<TestPlanElement> elements) {
+        ArrayList<TestPlanElement> result = new ArrayList<>(elements.size());
+        for (TestPlanElement element : elements) {
+            result.add(element.copy());
+        }
+        return result;
+    }
+
+    /**
+     * @return true if elements were passed to listener while parsing.
+     */
+    private boolean discoverTestPlan(ConnectedDeviceWrapper device,
+                                     String command,
+                                     String planKey,
+                                     CompletableFuture<DiscoveredPlan> plan,
+                                     @Nullable TestPlanListener listener) {
+        String cacheKey = testPlanCache.makeKey(getTestApk(), planKey);
+        if (cacheKey != null) {
+            List<TestPlanElement> cachedPlan = testPlanCache.read(cacheKey);
+            if (cachedPlan != null) {
+                logger.i(TAG, "provideTestPlan for device {}: use cached plan", device.getName());
+                plan.complete(newDiscoveredPlan(cachedPlan));
+                return false;
+            }
+        }
+
         logger.i(TAG, "provideTestPlan for device {}", device.getName());
+        InstrumentOutputReceiver receiver = new InstrumentOutputReceiver();
+        if (project.getLogger().isInfoEnabled()) {
+            receiver.setLogger(new TestLogParserLogger());
+        }
+        receiver.setTestPlanListener(listener != null ? new CopyingTestPlanListener(listener) : null);
+        try {
+            device.waitForPendingInstall();
+            device.executeShellCommand(command, receiver, 0, TimeUnit.SECONDS);
+            receiver.done();
+            List<TestPlanElement> testPlan = receiver.getTestInstances();
+            if (cacheKey != null) {
+                testPlanCache.write(cacheKey, testPlan);
+            }
+            plan.complete(newDiscoveredPlan(testPlan));
+            return true;
+        } catch (Exception e) {
+            discoveredPlans.remove(planKey);
+            plan.completeExceptionally(e);
+            return false;
+        }
+    }
+
+    /**
+     * Feature and flags are printed by on-device listener and are not available in dex files,
+     * so tests are discovered on device when test filter uses them.
+     */
+    private boolean isOfflineDiscoveryEnabled() {
+        File testApk = getTestApk();
+        if (!instrumentationInfo.isOfflineTestDiscovery() || testApk == null || !testApk.isFile()) {
+            return false;
+        }
+        TestFilter filter = getFilterFromCli();
+        if (filter != null && (filter.uses(TestFilter.Attribute.FEATURE)
+                || filter.uses(TestFilter.Attribute.FLAG))) {
+            if (offlineFilterWarned.compareAndSet(false, true)) {
+                logger.w(TAG, "{} uses feature or flag which are not available offline, "
+                        + "tests are discovered on device", filter);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private void scanTestApk(Map<String, String> args,
+                             String planKey,
+                             CompletableFuture<DiscoveredPlan> plan) {
+        File testApk = getTestApk();
+        logger.i(TAG, "provideTestPlan: scan test apk {}", testApk);
+        try {
+            plan.complete(newDiscoveredPlan(dexScanner.scan(testApk, args)));
+        } catch (Exception e) {
+            discoveredPlans.remove(planKey);
+            plan.completeExceptionally(e);
+        }
+    }
+
+    private DiscoveredPlan newDiscoveredPlan(List<TestPlanElement> testPlan) {
+        return new DiscoveredPlan(testPlan, instrumentationInfo.isCompactTestPlanEnabled());
+    }
+
+    private DiscoveredPlan waitForPlan(CompletableFuture<DiscoveredPlan> plan)
+            throws ExecuteCommandException {
+        try {
+            return plan.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExecuteCommandException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new ExecuteCommandException(cause);
+        }
+    }
+
+    private HashMap<String, String> buildDiscoveryArgs(Map<String, String> instrumentalArgs) {
         HashMap<String, String> args = new HashMap<>(instrumentalArgs);
         args.put("log", "true");
 
         args.putAll(getArgsFromCli());
 
-        InstrumentTestLogParser receiver = new InstrumentTestLogParser();
-        receiver.setLogger(new TestLogParserLogger());
-        StringBuilder command = new StringBuilder("am instrument -r -w");
-
         args.put("listener", instrumentationInfo.getInstrumentListener());
+        return args;
+    }
+
+    private String buildLogOnlyCommand(Map<String, String> args) {
+        StringBuilder command = new StringBuilder("am instrument -r -w");
 
         for (Map.Entry<String, String> arg : args.entrySet()) {
             command.append(" -e ");
@@ -55,14 +285,13 @@ public class InstrumentalTestPlanProvider {
         command.append(instrumentationInfo.getInstrumentalPackage());
         command.append("/");
         command.append(instrumentationInfo.getInstrumentalRunner());
+        return command.toString();
+    }
 
-        try {
-            device.executeShellCommand(command.toString(), receiver, 0, TimeUnit.SECONDS);
-        } catch (Exception e) {
-            throw new ExecuteCommandException(e);
-        }
-
-        return receiver.getTestInstances();
+    @Nullable
+    private File getTestApk() {
+        String testApkPath = instrumentationInfo.getTestApkPath();
+        return testApkPath != null ? new File(testApkPath) : null;
     }
 
     private Map<String, String> getArgsFromCli() {
@@ -80,7 +309,159 @@ public class InstrumentalTestPlanProvider {
     public InstrumentalTestHolder provideInstrumentalTests(ConnectedDeviceWrapper device,
                                                            Map<String, String> instrumentalArgs) throws ExecuteCommandException {
         // TODO: create fabric
-        return new InstrumentalTestHolder(provideTestPlan(device, instrumentalArgs), packageTreeGenerator);
+        boolean planContainsAllTests = !project.hasProperty("testClass")
+                && !instrumentalArgs.containsKey(TestSelection.CLASS)
+                && !instrumentalArgs.containsKey(TestSelection.PACKAGE);
+        DiscoveredPlan discoveredPlan = provideDiscoveredTestPlan(device, instrumentalArgs, null);
+        int selectionBudget = getSelectionBudget(device, instrumentalArgs);
+        InstrumentalTestHolder holder;
+        CompactTestPlan compactPlan = discoveredPlan.getCompactPlan();
+        if (compactPlan != null) {
+            holder = new InstrumentalTestHolder(compactPlan,
+                    packageTreeGenerator, planContainsAllTests, instrumentationInfo.isTestFileEnabled(),
+                    selectionBudget);
+        } else {
+            holder = new InstrumentalTestHolder(discoveredPlan.copyTestMethods(),
+                    packageTreeGenerator, planContainsAllTests, instrumentationInfo.isTestFileEnabled(),
+                    selectionBudget);
+        }
+        TestFilter filter = getFilterFromCli();
+        if (filter != null) {
+            holder.excludeNotMatched(filter, discoveredPlan.getIndex());
+        }
+        return holder;
+    }
+
+    /**
+     * @return filter from testFilter project property, compiled once.
+     */
+    @Nullable
+    private synchronized TestFilter getFilterFromCli() {
+        if (!project.hasProperty(TEST_FILTER_PROPERTY)) {
+            return null;
+        }
+        if (testFilter == null) {
+            testFilter = TestFilter.compile((String) project.getProperties().get(TEST_FILTER_PROPERTY));
+            logger.i(TAG, "use {}", testFilter);
+        }
+        return testFilter;
+    }
+
+    /**
+     * @return bytes left for selection arguments after other parts of am instrument command.
+     */
+    private int getSelectionBudget(ConnectedDeviceWrapper device, Map<String, String> instrumentalArgs) {
+        int commandLength = TestPlanSplitter.utf8Length(AM_INSTRUMENT + " "
+                + instrumentationInfo.getInstrumentalPackage() + "/"
+                + instrumentationInfo.getInstrumentalRunner()) + COMMAND_RESERVE;
+        for (Map.Entry<String, String> arg : instrumentalArgs.entrySet()) {
+            if (TestSelection.CLASS.equals(arg.getKey()) || TestSelection.PACKAGE.equals(arg.getKey())) {
+                continue;
+            }
+            commandLength += TestSelection.argumentLength(arg.getKey(),
+                    Collections.singletonList(String.valueOf(arg.getValue())));
+        }
+        int budget = argumentLimitProbe.getCommandLimit(device) - commandLength;
+        return Math.max(budget, MIN_SELECTION_BUDGET);
+    }
+
+    /**
+     * Discovered plan shared by devices with the same fingerprint, it is not changed after
+     * discovery. When compact test plan is enabled, only {@link CompactTestPlan} is kept
+     * and list of discovered elements is released.
+     * Index for test filter is built once on first request.
+     */
+    private static class DiscoveredPlan {
+        @Nullable
+        private final List<TestPlanElement> elements;
+        @Nullable
+        private final CompactTestPlan compactPlan;
+        @Nullable
+        private TestPlanIndex index;
+
+        private DiscoveredPlan(List<TestPlanElement> elements, boolean compact) {
+            if (compact) {
+                this.elements = null;
+                compactPlan = CompactTestPlan.of(elements);
+            } else {
+                this.elements = Collections.unmodifiableList(elements);
+                compactPlan = null;
+            }
+        }
+
+        @Nullable
+        CompactTestPlan getCompactPlan() {
+            return compactPlan;
+        }
+
+        /**
+         * @return own copies of all discovered tests for caller.
+         */
+        List<TestPlanElement> copyTestMethods() {
+            return compactPlan != null ? compactPlan.getTestMethods() : copyOf(elements);
+        }
+
+        /**
+         * @return own copies of discovered tests which match filter.
+         */
+        List<TestPlanElement> copyTestMethods(TestFilter filter) {
+            List<TestPlanElement> matched = filter.filter(getIndex());
+            // index of compact plan creates new views on each access
+            return compactPlan != null ? matched : copyOf(matched);
+        }
+
+        /**
+         * @return index with the same order of tests as in holders created from this plan.
+         */
+        synchronized TestPlanIndex getIndex() {
+            if (index == null) {
+                index = new TestPlanIndex(compactPlan != null ? compactPlan.testMethodViews() : elements);
+            }
+            return index;
+        }
+    }
+
+    private static class FilteredTestPlanListener implements TestPlanListener {
+        private final TestPlanListener listener;
+        private final TestFilter filter;
+
+        private FilteredTestPlanListener(TestPlanListener listener, TestFilter filter) {
+            this.listener = listener;
+            this.filter = filter;
+        }
+
+        @Override
+        public void onTestDiscovered(TestPlanElement element) {
+            if (filter.matches(element)) {
+                listener.onTestDiscovered(element);
+            }
+        }
+
+        @Override
+        public void onDiscoveryFinished() {
+            listener.onDiscoveryFinished();
+        }
+    }
+
+    /**
+     * Passes copies of parsed elements, parsed elements are cached and shared between devices.
+     */
+    private static class CopyingTestPlanListener implements TestPlanListener {
+        private final TestPlanListener listener;
+
+        private CopyingTestPlanListener(TestPlanListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onTestDiscovered(TestPlanElement element) {
+            listener.onTestDiscovered(element.copy());
+        }
+
+        @Override
+        public void onDiscoveryFinished() {
+            listener.onDiscoveryFinished();
+        }
     }
 
     private class TestLogParserLogger implements InstrumentTestLogParser.ParserLogger {
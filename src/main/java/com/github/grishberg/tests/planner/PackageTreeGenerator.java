@@ -15,49 +15,153 @@ public class PackageTreeGenerator {
      * @return root element of test classes tree.
      */
     List<TestPlanElement> makePackageTree(List<TestPlanElement> planList) {
-        HashMap<String, TestPlanElement> nodes = new HashMap<>();
-        ArrayList<TestPlanElement> roots = new ArrayList<>();
-
+        PackageTree tree = newPackageTree();
         for (TestPlanElement currentTestPlan : planList) {
+            tree.add(currentTestPlan);
+        }
+        return tree.getRoots();
+    }
+
+    /**
+     * @return empty tree, tests can be added while they are discovered.
+     */
+    PackageTree newPackageTree() {
+        return new PackageTree();
+    }
+
+    /**
+     * Trie of package segments, class name is walked once per test without splitting it
+     * and segment strings are created only for new nodes.
+     */
+    static class PackageTree {
+        private final TrieNode root = new TrieNode(null);
+        private final ArrayList<TestPlanElement> roots = new ArrayList<>();
+        private final HashMap<String, String> segments = new HashMap<>();
 
-            String[] leftPart = currentTestPlan.getClassName().split("\\.");
+        /**
+         * Adds test method to its class node, creates missing package and class nodes.
+         */
+        void add(TestPlanElement test) {
+            String className = test.getClassName();
+            int end = className.length();
+            while (end > 0 && className.charAt(end - 1) == '.') {
+                end--;
+            }
+            TrieNode node = root;
+            int start = 0;
+            while (true) {
+                int dot = className.indexOf('.', start);
+                boolean last = dot < 0 || dot >= end;
+                int segmentEnd = last ? end : dot;
+                node = findOrCreate(node, className, start, segmentEnd,
+                        last ? NodeType.CLASS : NodeType.PACKAGE);
+                if (last) {
+                    break;
+                }
+                start = dot + 1;
+            }
+            node.element.addChild(test);
+        }
 
-            // process packages and Class name
-            TestPlanElement parent = parsePackageElement(nodes, roots, leftPart);
+        /**
+         * @return root packages, list is updated when new tests are added.
+         */
+        List<TestPlanElement> getRoots() {
+            return roots;
+        }
 
-            // process method name
-            if (parent != null) {
-                parent.addChild(currentTestPlan);
+        private TrieNode findOrCreate(TrieNode parent, String className, int start, int end,
+                                     NodeType type) {
+            int hash = segmentHash(className, start, end);
+            TrieNode child = parent.find(className, start, end, hash);
+            if (child != null) {
+                return child;
+            }
+            String segment = internSegment(className.substring(start, end));
+            TestPlanElement element = new TestPlanElement(type, segment);
+            if (parent.element != null) {
+                parent.element.addChild(element);
+            } else {
+                roots.add(element);
             }
+            child = new TrieNode(element);
+            parent.put(child, hash);
+            return child;
+        }
+
+        private String internSegment(String segment) {
+            String interned = segments.putIfAbsent(segment, segment);
+            return interned != null ? interned : segment;
         }
 
-        return roots;
+        /**
+         * Same as {@link String#hashCode()} of substring.
+         */
+        private static int segmentHash(String s, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + s.charAt(i);
+            }
+            return hash;
+        }
     }
 
-    @Nullable
-    private TestPlanElement parsePackageElement(HashMap<String, TestPlanElement> nodes,
-                                                ArrayList<TestPlanElement> roots, String[] leftPart) {
-        StringBuilder sbPath = new StringBuilder();
-        TestPlanElement parent = null;
-        for (int pos = 0; pos < leftPart.length; pos++) {
-            if (sbPath.length() > 0) {
-                sbPath.append(".");
-            }
-            String pathElement = leftPart[pos];
-            sbPath.append(pathElement);
-            TestPlanElement currentElement = nodes.get(sbPath.toString());
-            NodeType nodeType = pos < leftPart.length - 1 ? NodeType.PACKAGE : NodeType.CLASS;
-            if (currentElement == null) {
-                currentElement = new TestPlanElement(nodeType, pathElement);
-                if (parent != null) {
-                    parent.addChild(currentElement);
-                } else {
-                    roots.add(currentElement);
+    /**
+     * Node with open addressing table of children.
+     */
+    private static class TrieNode {
+        private static final int INITIAL_CAPACITY = 4;
+        private final TestPlanElement element;
+        private TrieNode[] children;
+        private int childrenCount;
+
+        private TrieNode(TestPlanElement element) {
+            this.element = element;
+        }
+
+        @Nullable
+        private TrieNode find(String className, int start, int end, int hash) {
+            if (children == null) {
+                return null;
+            }
+            int mask = children.length - 1;
+            int len = end - start;
+            for (int i = slot(hash, mask); children[i] != null; i = (i + 1) & mask) {
+                String name = children[i].element.getClassName();
+                if (name.length() == len && className.regionMatches(start, name, 0, len)) {
+                    return children[i];
                 }
-                nodes.put(sbPath.toString(), currentElement);
             }
-            parent = currentElement;
+            return null;
+        }
+
+        private void put(TrieNode child, int hash) {
+            if (children == null) {
+                children = new TrieNode[INITIAL_CAPACITY];
+            } else if ((childrenCount + 1) * 2 > children.length) {
+                TrieNode[] old = children;
+                children = new TrieNode[old.length * 2];
+                for (TrieNode node : old) {
+                    if (node != null) {
+                        insert(node, node.element.getClassName().hashCode());
+                    }
+                }
+            }
+            insert(child, hash);
+            childrenCount++;
+        }
+
+        private void insert(TrieNode child, int hash) {
+            int mask = children.length - 1;
+            int i = slot(hash, mask);
+            while (children[i] != null) {
+                i = (i + 1) & mask;
+            }
+            children[i] = child;
+        }
+
+        private static int slot(int hash, int mask) {
+            return (hash ^ (hash >>> 16)) & mask;
         }
-        return parent;
     }
 }
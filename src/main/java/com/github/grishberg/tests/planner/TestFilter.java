@@ -0,0 +1,358 @@
+package com.github.grishberg.tests.planner;
+
+import com.github.grishberg.tests.exceptions.TestFilterSyntaxException;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Compiled filter expression over test annotations, flags, features and classes.
+ * Expression example: {@code annotation:Smoke && !flag:slow && feature~payments}.
+ * {@code key:value} matches whole value, annotation and class also by simple name and flag
+ * by name; {@code key~value} matches substring. Terms are combined with {@code !}, {@code &&},
+ * {@code ||} and parentheses.
+ */
+public class TestFilter {
+    private final String expression;
+    private final Node root;
+
+    enum Attribute {
+        ANNOTATION("annotation"),
+        FLAG("flag"),
+        FEATURE("feature"),
+        CLASS("class");
+
+        private final String key;
+
+        Attribute(String key) {
+            this.key = key;
+        }
+    }
+
+    private TestFilter(String expression, Node root) {
+        this.expression = expression;
+        this.root = root;
+    }
+
+    /**
+     * @throws TestFilterSyntaxException when expression is not valid.
+     */
+    public static TestFilter compile(String expression) {
+        Parser parser = new Parser(expression);
+        Node root = parser.parseExpression();
+        parser.skipSpaces();
+        if (!parser.isEnd()) {
+            throw parser.error("unexpected symbol");
+        }
+        return new TestFilter(expression, root);
+    }
+
+    /**
+     * @return tests from plan which match filter, order is kept.
+     */
+    public List<TestPlanElement> filter(List<TestPlanElement> plan) {
+        return filter(new TestPlanIndex(plan));
+    }
+
+    /**
+     * @return tests from indexed plan which match filter, order is kept.
+     */
+    List<TestPlanElement> filter(TestPlanIndex index) {
+        BitSet selected = select(index);
+        ArrayList<TestPlanElement> result = new ArrayList<>(selected.cardinality());
+        for (int i = selected.nextSetBit(0); i >= 0; i = selected.nextSetBit(i + 1)) {
+            result.add(index.get(i));
+        }
+        return result;
+    }
+
+    public boolean matches(TestPlanElement element) {
+        return root.matches(element);
+    }
+
+    /**
+     * @return bitset of matched tests positions.
+     */
+    BitSet select(TestPlanIndex index) {
+        return root.select(index);
+    }
+
+    /**
+     * @return true if expression contains term with attribute.
+     */
+    boolean uses(Attribute attribute) {
+        return root.uses(attribute);
+    }
+
+    @Override
+    public String toString() {
+        return "TestFilter{" + expression + '}';
+    }
+
+    private interface Node {
+        BitSet select(TestPlanIndex index);
+
+        boolean matches(TestPlanElement element);
+
+        boolean uses(Attribute attribute);
+    }
+
+    private static class Term implements Node {
+        private final Attribute attribute;
+        private final String value;
+        private final boolean substring;
+
+        private Term(Attribute attribute, String value, boolean substring) {
+            this.attribute = attribute;
+            this.value = value;
+            this.substring = substring;
+        }
+
+        @Override
+        public BitSet select(TestPlanIndex index) {
+            return index.find(attribute, value, substring);
+        }
+
+        @Override
+        public boolean matches(TestPlanElement element) {
+            switch (attribute) {
+                case ANNOTATION:
+                    for (String annotation : element.getAnnotations()) {
+                        if (matchesName(annotation)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                case FLAG:
+                    for (String flag : element.getFlags()) {
+                        if (matchesFlag(flag)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                case FEATURE:
+                    String feature = element.getFeature();
+                    return feature != null && !feature.isEmpty()
+                            && (substring ? feature.contains(value) : feature.equals(value));
+                default:
+                    return matchesName(element.getClassName());
+            }
+        }
+
+        @Override
+        public boolean uses(Attribute attribute) {
+            return this.attribute == attribute;
+        }
+
+        private boolean matchesName(String name) {
+            if (substring) {
+                return name.contains(value);
+            }
+            return name.equals(value) || TestPlanIndex.simpleName(name).equals(value);
+        }
+
+        private boolean matchesFlag(String flag) {
+            if (substring) {
+                return flag.contains(value);
+            }
+            int valueStart = flag.indexOf('=');
+            return flag.equals(value) || (valueStart >= 0 && flag.substring(0, valueStart).equals(value));
+        }
+    }
+
+    private static class Not implements Node {
+        private final Node node;
+
+        private Not(Node node) {
+            this.node = node;
+        }
+
+        @Override
+        public BitSet select(TestPlanIndex index) {
+            BitSet result = node.select(index);
+            result.flip(0, index.size());
+            return result;
+        }
+
+        @Override
+        public boolean matches(TestPlanElement element) {
+            return !node.matches(element);
+        }
+
+        @Override
+        public boolean uses(Attribute attribute) {
+            return node.uses(attribute);
+        }
+    }
+
+    private static class And implements Node {
+        private final Node left;
+        private final Node right;
+
+        private And(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public BitSet select(TestPlanIndex index) {
+            BitSet result = left.select(index);
+            result.and(right.select(index));
+            return result;
+        }
+
+        @Override
+        public boolean matches(TestPlanElement element) {
+            return left.matches(element) && right.matches(element);
+        }
+
+        @Override
+        public boolean uses(Attribute attribute) {
+            return left.uses(attribute) || right.uses(attribute);
+        }
+    }
+
+    private static class Or implements Node {
+        private final Node left;
+        private final Node right;
+
+        private Or(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public BitSet select(TestPlanIndex index) {
+            BitSet result = left.select(index);
+            result.or(right.select(index));
+            return result;
+        }
+
+        @Override
+        public boolean matches(TestPlanElement element) {
+            return left.matches(element) || right.matches(element);
+        }
+
+        @Override
+        public boolean uses(Attribute attribute) {
+            return left.uses(attribute) || right.uses(attribute);
+        }
+    }
+
+    /**
+     * Recursive descent parser, {@code ||} has lower priority than {@code &&}.
+     */
+    private static class Parser {
+        private final String expression;
+        private int pos;
+
+        private Parser(String expression) {
+            this.expression = expression;
+        }
+
+        private Node parseExpression() {
+            Node node = parseAnd();
+            while (consume("||")) {
+                node = new Or(node, parseAnd());
+            }
+            return node;
+        }
+
+        private Node parseAnd() {
+            Node node = parseUnary();
+            while (consume("&&")) {
+                node = new And(node, parseUnary());
+            }
+            return node;
+        }
+
+        private Node parseUnary() {
+            if (consume("!")) {
+                return new Not(parseUnary());
+            }
+            if (consume("(")) {
+                Node node = parseExpression();
+                if (!consume(")")) {
+                    throw error("expected ')'");
+                }
+                return node;
+            }
+            return parseTerm();
+        }
+
+        private Node parseTerm() {
+            skipSpaces();
+            int keyStart = pos;
+            while (!isEnd() && Character.isLetter(expression.charAt(pos))) {
+                pos++;
+            }
+            String key = expression.substring(keyStart, pos);
+            Attribute attribute = null;
+            for (Attribute candidate : Attribute.values()) {
+                if (candidate.key.equals(key)) {
+                    attribute = candidate;
+                }
+            }
+            if (attribute == null) {
+                pos = keyStart;
+                throw error("expected one of annotation, flag, feature, class");
+            }
+            if (isEnd() || (expression.charAt(pos) != ':' && expression.charAt(pos) != '~')) {
+                throw error("expected ':' or '~'");
+            }
+            boolean substring = expression.charAt(pos) == '~';
+            pos++;
+            return new Term(attribute, parseValue(), substring);
+        }
+
+        private String parseValue() {
+            if (!isEnd() && expression.charAt(pos) == '"') {
+                int end = expression.indexOf('"', pos + 1);
+                if (end < 0) {
+                    throw error("unterminated quote");
+                }
+                String value = expression.substring(pos + 1, end);
+                pos = end + 1;
+                return value;
+            }
+            int start = pos;
+            while (!isEnd() && isValueChar(expression.charAt(pos))) {
+                pos++;
+            }
+            if (start == pos) {
+                throw error("expected value");
+            }
+            return expression.substring(start, pos);
+        }
+
+        private static boolean isValueChar(char c) {
+            return !Character.isWhitespace(c) && c != '(' && c != ')' && c != '!'
+                    && c != '&' && c != '|';
+        }
+
+        private boolean consume(String token) {
+            skipSpaces();
+            if (expression.startsWith(token, pos)) {
+                pos += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        private void skipSpaces() {
+            while (!isEnd() && Character.isWhitespace(expression.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private boolean isEnd() {
+            return pos >= expression.length();
+        }
+
+        private TestFilterSyntaxException error(String message) {
+            return new TestFilterSyntaxException("Invalid test filter '" + expression + "' at "
+                    + pos + ": " + message);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.github.grishberg.tests.planner;
+
+import com.github.grishberg.tests.common.RunnerLogger;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.github.grishberg.tests.common.FileHelper.hashFile;
+import static com.github.grishberg.tests.common.FileHelper.toHex;
+
+/**
+ * Stores discovered test plans on disk. Key of plan contains hash of test apk content,
+ * so plan is reused until test apk is changed.
+ */
+public class TestPlanCache {
+    private static final String TAG = TestPlanCache.class.getSimpleName();
+    private static final int FORMAT_VERSION = 1;
+    private static final String PLAN_EXTENSION = ".plan";
+    private final File cacheDir;
+    private final RunnerLogger logger;
+    private final Map<String, String> apkHashes = new HashMap<>();
+
+    public TestPlanCache(File cacheDir, RunnerLogger logger) {
+        this.cacheDir = cacheDir;
+        this.logger = logger;
+    }
+
+    /**
+     * @param testApk   test apk file.
+     * @param planInfo  instrumentation command and device info which change test plan.
+     * @return cache key or null when test apk is absent.
+     */
+    @Nullable
+    public String makeKey(@Nullable File testApk, String planInfo) {
+        if (testApk == null || !testApk.isFile()) {
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(apkHash(testApk).getBytes(StandardCharsets.UTF_8));
+            digest.update(planInfo.getBytes(StandardCharsets.UTF_8));
+            return toHex(digest.digest());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            logger.e(TAG, "makeKey: can't calculate hash of " + testApk, e);
+            return null;
+        }
+    }
+
+    private synchronized String apkHash(File testApk) throws IOException, NoSuchAlgorithmException {
+        String fileKey = testApk.getAbsolutePath() + ":" + testApk.length() + ":" + testApk.lastModified();
+        String hash = apkHashes.get(fileKey);
+        if (hash != null) {
+            return hash;
+        }
+        hash = hashFile(testApk, "SHA-256");
+        apkHashes.put(fileKey, hash);
+        return hash;
+    }
+
+    /**
+     * @return stored plan or null if there is no plan for key.
+     */
+    @Nullable
+    public List<TestPlanElement> read(String key) {
+        File planFile = new File(cacheDir, key + PLAN_EXTENSION);
+        if (!planFile.isFile()) {
+            return null;
+        }
+        try (DataInputStream is = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(planFile)))) {
+            if (is.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            int count = is.readInt();
+            ArrayList<TestPlanElement> plan = new ArrayList<>(count);
+            TestPlanStore store = new TestPlanStore();
+            for (int i = 0; i < count; i++) {
+                String testId = store.intern(is.readUTF());
+                String methodName = is.readUTF();
+                TestPlanElement element = new TestPlanElement(testId, methodName, store.intern(is.readUTF()));
+                element.setFeature(is.readUTF());
+                element.addAnnotations(store.intern(readStrings(is)));
+                element.setFlags(store.intern(readStrings(is)));
+                plan.add(element);
+            }
+            logger.i(TAG, "read: {} tests from cache {}", count, planFile.getName());
+            return plan;
+        } catch (IOException e) {
+            logger.e(TAG, "read: can't read cached plan " + planFile, e);
+            return null;
+        }
+    }
+
+    public void write(String key, List<TestPlanElement> plan) {
+        if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+            logger.e(TAG, "write: can't make dir " + cacheDir);
+            return;
+        }
+        File planFile = new File(cacheDir, key + PLAN_EXTENSION);
+        File tmpFile = new File(cacheDir, key + ".tmp");
+        try (DataOutputStream os = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            os.writeInt(FORMAT_VERSION);
+            os.writeInt(plan.size());
+            for (TestPlanElement element : plan) {
+                os.writeUTF(element.getTestId());
+                os.writeUTF(element.getMethodName());
+                os.writeUTF(element.getClassName());
+                os.writeUTF(element.getFeature() != null ? element.getFeature() : "");
+                writeStrings(os, element.getAnnotations());
+                writeStrings(os, element.getFlags());
+            }
+            os.close();
+            Files.move(tmpFile.toPath(), planFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.e(TAG, "write: can't write plan " + planFile, e);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream is) throws IOException {
+        int count = is.readInt();
+        ArrayList<String> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(is.readUTF());
+        }
+        return result;
+    }
+
+    private static void writeStrings(DataOutputStream os, List<String> strings) throws IOException {
+        os.writeInt(strings.size());
+        for (String value : strings) {
+            os.writeUTF(value);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.github.grishberg.tests.planner;
 
 import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -13,13 +14,17 @@ public class TestPlanElement {
     private final String className;
     private List<String> annotations;
     private String feature;
-    private List<String> flags = new ArrayList<>();
+    private List<String> flags = Collections.emptyList();
     @Nullable
     private TestPlanElement parent;
     private final NodeType type;
     private final ArrayList<TestPlanElement> children = new ArrayList<>();
     private boolean excluded;
     private boolean hasExcluded;
+    @Nullable
+    private String amInstrumentCommand;
+    @Nullable
+    private Runnable excludeListener;
 
     public TestPlanElement(NodeType type, String packageName) {
         this.type = type;
@@ -32,16 +37,41 @@ public class TestPlanElement {
         this.testId = testId;
         this.methodName = methodName;
         this.className = fullClassName;
-        this.annotations = new ArrayList<>();
+        this.annotations = Collections.emptyList();
         type = (methodName == null || methodName.length() == 0) ?
                 NodeType.CLASS : NodeType.METHOD;
     }
 
+    /**
+     * List is not copied and can be shared between elements, so it must not be changed later.
+     */
     void addAnnotations(List<String> annotations) {
-        if (annotations == null) {
+        if (annotations == null || annotations.isEmpty()) {
+            return;
+        }
+        if (this.annotations.isEmpty()) {
+            this.annotations = annotations;
             return;
         }
-        this.annotations.addAll(annotations);
+        ArrayList<String> result = new ArrayList<>(this.annotations);
+        result.addAll(annotations);
+        this.annotations = Collections.unmodifiableList(result);
+    }
+
+    /**
+     * @return new element with the same test data, annotation and flag lists are shared.
+     * Copy has no parent and is not excluded, so it can be placed to another package tree.
+     */
+    TestPlanElement copy() {
+        TestPlanElement copy = new TestPlanElement(testId, methodName, className);
+        copy.annotations = annotations;
+        copy.feature = feature;
+        copy.flags = flags;
+        return copy;
+    }
+
+    public String getTestId() {
+        return testId;
     }
 
     public String getMethodName() {
@@ -52,8 +82,11 @@ public class TestPlanElement {
         return className;
     }
 
+    /**
+     * @return shared list of annotations, must not be changed.
+     */
     public List<String> getAnnotations() {
-        return new ArrayList<>(annotations);
+        return annotations;
     }
 
     @Override
@@ -81,7 +114,6 @@ public class TestPlanElement {
         int result = testId.hashCode();
         result = 31 * result + methodName.hashCode();
         result = 31 * result + className.hashCode();
-        result = 31 * result + annotations.hashCode();
         return result;
     }
 
@@ -101,26 +133,51 @@ public class TestPlanElement {
      * @return command for am instrument parameter class or package
      */
     public String getAmInstrumentCommand() {
+        String command = amInstrumentCommand;
+        if (command != null) {
+            return command;
+        }
         if (type == NodeType.METHOD) {
-            return className + "#" + methodName;
+            command = className + "#" + methodName;
+        } else if (parent != null) {
+            command = parent.getAmInstrumentCommand() + "." + className;
+        } else {
+            command = className;
         }
-        String prefix = "";
-        if (parent != null) {
-            prefix = parent.getAmInstrumentCommand() + ".";
+        amInstrumentCommand = command;
+        return command;
+    }
+
+    /**
+     * Cached command of package and class nodes depends on parents, so it is reset
+     * for whole subtree when node is moved to another parent.
+     */
+    private void invalidateAmInstrumentCommand() {
+        if (type == NodeType.METHOD || amInstrumentCommand == null) {
+            return;
+        }
+        amInstrumentCommand = null;
+        for (TestPlanElement child : children) {
+            child.invalidateAmInstrumentCommand();
         }
-        return prefix + className;
     }
 
+    /**
+     * @return shared list of flags, must not be changed.
+     */
     public List<String> getFlags() {
-        return new ArrayList<>(flags);
+        return flags;
     }
 
+    /**
+     * List is not copied and can be shared between elements, so it must not be changed later.
+     */
     void setFlags(List<String> flags) {
         if (flags == null) {
-            this.flags.clear();
+            this.flags = Collections.emptyList();
             return;
         }
-        this.flags = new ArrayList<>(flags);
+        this.flags = flags;
     }
 
     public void exclude() {
@@ -128,6 +185,21 @@ public class TestPlanElement {
         if (parent != null) {
             parent.setHasExcluded(true);
         }
+        if (excludeListener != null) {
+            excludeListener.run();
+        }
+    }
+
+    /**
+     * @param excludeListener is called when element is excluded, used by views of
+     *                        {@link CompactTestPlan} to store exclusion outside of element.
+     */
+    void setExcludeListener(@Nullable Runnable excludeListener) {
+        this.excludeListener = excludeListener;
+    }
+
+    boolean isExcluded() {
+        return excluded;
     }
 
     private void setHasExcluded(boolean hasExcluded) {
@@ -139,7 +211,14 @@ public class TestPlanElement {
 
     void addChild(TestPlanElement child) {
         children.add(child);
-        child.parent = this;
+        if (child.parent != this) {
+            child.parent = this;
+            child.invalidateAmInstrumentCommand();
+        }
+    }
+
+    List<TestPlanElement> getChildren() {
+        return children;
     }
 
     List<TestPlanElement> getAllTestMethods() {
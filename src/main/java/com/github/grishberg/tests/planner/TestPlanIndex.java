@@ -0,0 +1,83 @@
+package com.github.grishberg.tests.planner;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Test plan indexed by position, with bitsets of tests for each annotation, flag,
+ * feature and class. Annotations and classes are indexed by full and simple names,
+ * flags by full value and by name before '='.
+ */
+class TestPlanIndex {
+    private final List<TestPlanElement> elements;
+    private final Map<TestFilter.Attribute, Map<String, BitSet>> values = new HashMap<>();
+
+    TestPlanIndex(List<TestPlanElement> elements) {
+        this.elements = elements;
+        for (TestFilter.Attribute attribute : TestFilter.Attribute.values()) {
+            values.put(attribute, new HashMap<String, BitSet>());
+        }
+        for (int i = 0; i < elements.size(); i++) {
+            TestPlanElement element = elements.get(i);
+            for (String annotation : element.getAnnotations()) {
+                add(TestFilter.Attribute.ANNOTATION, annotation, i);
+                add(TestFilter.Attribute.ANNOTATION, simpleName(annotation), i);
+            }
+            for (String flag : element.getFlags()) {
+                add(TestFilter.Attribute.FLAG, flag, i);
+                int valueStart = flag.indexOf('=');
+                if (valueStart >= 0) {
+                    add(TestFilter.Attribute.FLAG, flag.substring(0, valueStart), i);
+                }
+            }
+            if (element.getFeature() != null && !element.getFeature().isEmpty()) {
+                add(TestFilter.Attribute.FEATURE, element.getFeature(), i);
+            }
+            add(TestFilter.Attribute.CLASS, element.getClassName(), i);
+            add(TestFilter.Attribute.CLASS, simpleName(element.getClassName()), i);
+        }
+    }
+
+    int size() {
+        return elements.size();
+    }
+
+    TestPlanElement get(int index) {
+        return elements.get(index);
+    }
+
+    /**
+     * @param substring true if value is matched as substring, otherwise as whole value.
+     * @return new bitset of tests with attribute value.
+     */
+    BitSet find(TestFilter.Attribute attribute, String value, boolean substring) {
+        Map<String, BitSet> attributeValues = values.get(attribute);
+        if (!substring) {
+            BitSet tests = attributeValues.get(value);
+            return tests != null ? (BitSet) tests.clone() : new BitSet(elements.size());
+        }
+        BitSet result = new BitSet(elements.size());
+        for (Map.Entry<String, BitSet> entry : attributeValues.entrySet()) {
+            if (entry.getKey().contains(value)) {
+                result.or(entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    private void add(TestFilter.Attribute attribute, String value, int index) {
+        Map<String, BitSet> attributeValues = values.get(attribute);
+        BitSet tests = attributeValues.get(value);
+        if (tests == null) {
+            tests = new BitSet(elements.size());
+            attributeValues.put(value, tests);
+        }
+        tests.set(index);
+    }
+
+    static String simpleName(String name) {
+        return name.substring(name.lastIndexOf('.') + 1);
+    }
+}
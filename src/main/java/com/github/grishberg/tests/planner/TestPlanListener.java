@@ -0,0 +1,16 @@
+package com.github.grishberg.tests.planner;
+
+/**
+ * Receives test plan elements while test plan is discovered.
+ */
+public interface TestPlanListener {
+    /**
+     * Called when all data of element is received.
+     */
+    void onTestDiscovered(TestPlanElement element);
+
+    /**
+     * Called when discovery is finished.
+     */
+    void onDiscoveryFinished();
+}
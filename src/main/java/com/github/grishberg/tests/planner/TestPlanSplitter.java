@@ -7,29 +7,42 @@ import java.util.List;
  * Split list of TestPlanElement items
  */
 public class TestPlanSplitter {
-    private static final int STRING_LIMIT = 3500;
+    static final int STRING_LIMIT = 3500;
 
     private TestPlanSplitter() {/* not used */}
 
+    /**
+     * Splits by default limit, which is not probed on device. Use
+     * {@link InstrumentalTestHolder#splitCompoundTestPlan()} to split compound plan with
+     * argument budget of device.
+     */
     public static List<List<TestPlanElement>> splitByArgumentLimit(List<TestPlanElement> src) {
+        return splitByArgumentLimit(src, STRING_LIMIT);
+    }
+
+    /**
+     * @param byteBudget max length of joined tests in UTF-8 bytes.
+     */
+    public static List<List<TestPlanElement>> splitByArgumentLimit(List<TestPlanElement> src,
+                                                                   int byteBudget) {
         ArrayList<List<TestPlanElement>> result = new ArrayList<>();
-        StringBuilder sb = new StringBuilder();
+        int argumentLength = 0;
         ArrayList<TestPlanElement> currentRange = new ArrayList<>();
 
         for (TestPlanElement testPlan : src) {
-            String testName = testPlan.getAmInstrumentCommand();
-            if (sb.length() + testName.length() + 1 > STRING_LIMIT) {
+            int testNameLength = utf8Length(testPlan.getAmInstrumentCommand());
+            if (argumentLength + testNameLength + 1 > byteBudget) {
                 // add current range to result
                 result.add(currentRange);
 
-                sb = new StringBuilder();
+                argumentLength = 0;
                 currentRange = new ArrayList<>();
             }
 
-            if (sb.length() > 0) {
-                sb.append(",");
+            if (argumentLength > 0) {
+                argumentLength++;
             }
-            sb.append(testPlan.getAmInstrumentCommand());
+            argumentLength += testNameLength;
             currentRange.add(testPlan);
         }
 
@@ -38,4 +51,28 @@ public class TestPlanSplitter {
         }
         return result;
     }
+
+    /**
+     * @return length of string in UTF-8 without encoding it.
+     */
+    static int utf8Length(String s) {
+        int length = s.length();
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                length++;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                // 4 bytes for 2 chars
+                length += 2;
+                i++;
+            } else {
+                length += 2;
+            }
+        }
+        return length;
+    }
 }
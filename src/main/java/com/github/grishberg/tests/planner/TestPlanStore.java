@@ -0,0 +1,67 @@
+package com.github.grishberg.tests.planner;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects discovered tests without duplicates.
+ * Tests are indexed by id, class and method; class names and annotation lists are shared
+ * between tests, because tests of one class have equal class names and usually equal annotations.
+ */
+class TestPlanStore {
+    private final ArrayList<TestPlanElement> elements = new ArrayList<>();
+    private final Map<String, Map<String, TestPlanElement>> elementsByClass = new HashMap<>();
+    private final Map<String, String> strings = new HashMap<>();
+    private final Map<List<String>, List<String>> stringLists = new HashMap<>();
+
+    /**
+     * @return true if element is added, false if plan already has the same test.
+     */
+    boolean add(TestPlanElement element) {
+        String key = element.getTestId() + '#' + element.getMethodName();
+        Map<String, TestPlanElement> classElements = elementsByClass
+                .computeIfAbsent(element.getClassName(), k -> new HashMap<>());
+        if (classElements.putIfAbsent(key, element) != null) {
+            return false;
+        }
+        elements.add(element);
+        return true;
+    }
+
+    /**
+     * @return shared instance of string.
+     */
+    String intern(String value) {
+        String shared = strings.putIfAbsent(value, value);
+        return shared != null ? shared : value;
+    }
+
+    /**
+     * @return shared unmodifiable list with the same strings.
+     */
+    @Nullable
+    List<String> intern(@Nullable List<String> values) {
+        if (values == null) {
+            return null;
+        }
+        List<String> shared = stringLists.get(values);
+        if (shared != null) {
+            return shared;
+        }
+        ArrayList<String> internedValues = new ArrayList<>(values.size());
+        for (String value : values) {
+            internedValues.add(intern(value));
+        }
+        shared = Collections.unmodifiableList(internedValues);
+        stringLists.put(shared, shared);
+        return shared;
+    }
+
+    List<TestPlanElement> getElements() {
+        return elements;
+    }
+}
@@ -0,0 +1,118 @@
+package com.github.grishberg.tests.planner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests selected for one am instrument invocation, expressed with package, notPackage,
+ * class and notClass arguments.
+ */
+public class TestSelection {
+    static final String PACKAGE = "package";
+    static final String NOT_PACKAGE = "notPackage";
+    static final String CLASS = "class";
+    static final String NOT_CLASS = "notClass";
+    private final List<String> packages;
+    private final List<String> notPackages;
+    private final List<String> classes;
+    private final List<String> notClasses;
+
+    TestSelection(List<String> packages, List<String> notPackages,
+                  List<String> classes, List<String> notClasses) {
+        this.packages = Collections.unmodifiableList(new ArrayList<>(packages));
+        this.notPackages = Collections.unmodifiableList(new ArrayList<>(notPackages));
+        this.classes = Collections.unmodifiableList(new ArrayList<>(classes));
+        this.notClasses = Collections.unmodifiableList(new ArrayList<>(notClasses));
+    }
+
+    /**
+     * @return selection of classes and methods from compound plan.
+     */
+    static TestSelection ofElements(List<TestPlanElement> elements) {
+        ArrayList<String> packages = new ArrayList<>();
+        ArrayList<String> classes = new ArrayList<>();
+        for (TestPlanElement element : elements) {
+            if (element.isPackage()) {
+                packages.add(element.getAmInstrumentCommand());
+            } else {
+                classes.add(element.getAmInstrumentCommand());
+            }
+        }
+        return new TestSelection(packages, Collections.<String>emptyList(),
+                classes, Collections.<String>emptyList());
+    }
+
+    public List<String> getPackages() {
+        return packages;
+    }
+
+    public List<String> getNotPackages() {
+        return notPackages;
+    }
+
+    public List<String> getClasses() {
+        return classes;
+    }
+
+    public List<String> getNotClasses() {
+        return notClasses;
+    }
+
+    /**
+     * @return arguments for am instrument, empty lists are not added.
+     */
+    public Map<String, String> getInstrumentationArgs() {
+        LinkedHashMap<String, String> args = new LinkedHashMap<>();
+        putIfNotEmpty(args, PACKAGE, packages);
+        putIfNotEmpty(args, NOT_PACKAGE, notPackages);
+        putIfNotEmpty(args, CLASS, classes);
+        putIfNotEmpty(args, NOT_CLASS, notClasses);
+        return args;
+    }
+
+    /**
+     * @return length of all arguments in am instrument command in UTF-8 bytes.
+     */
+    int getArgumentsLength() {
+        return argumentLength(PACKAGE, packages) + argumentLength(NOT_PACKAGE, notPackages)
+                + argumentLength(CLASS, classes) + argumentLength(NOT_CLASS, notClasses);
+    }
+
+    private static void putIfNotEmpty(Map<String, String> args, String key, List<String> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder(values.size() * 64);
+        for (String value : values) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(value);
+        }
+        args.put(key, sb.toString());
+    }
+
+    static int argumentLength(String key, List<String> values) {
+        if (values.isEmpty()) {
+            return 0;
+        }
+        // " -e key value"
+        return key.length() + joinedLength(values) + 5;
+    }
+
+    private static int joinedLength(List<String> values) {
+        int length = values.isEmpty() ? 0 : values.size() - 1;
+        for (String value : values) {
+            length += TestPlanSplitter.utf8Length(value);
+        }
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        return "TestSelection" + getInstrumentationArgs();
+    }
+}
@@ -0,0 +1,309 @@
+package com.github.grishberg.tests.planner;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Encodes not excluded tests of package tree with the shortest am instrument arguments.
+ * Fully included subtrees are collapsed to package or class, small exclusions are expressed
+ * with notPackage and notClass.
+ */
+class TestSelectionEncoder {
+    private static final int IMPOSSIBLE = Integer.MAX_VALUE / 2;
+
+    /**
+     * @param roots            roots of package tree.
+     * @param negativeAllowed  true when am instrument without class argument runs the same tests
+     *                         as package tree contains, only then package and not* arguments
+     *                         can be used.
+     * @param argumentBudget   max length of selection arguments in am instrument command
+     *                         in UTF-8 bytes.
+     * @param classesInFile    true when class argument is passed in pushed test file, so its
+     *                         length is not limited.
+     * @return selections for am instrument invocations, empty when all tests are excluded.
+     */
+    List<TestSelection> encode(List<TestPlanElement> roots, boolean negativeAllowed,
+                               int argumentBudget, boolean classesInFile) {
+        Node root = new Node();
+        for (TestPlanElement element : roots) {
+            root.addChild(count(element, false));
+        }
+        return encode(root, negativeAllowed, argumentBudget, classesInFile);
+    }
+
+    /**
+     * Same as {@link #encode(List, boolean, int, boolean)} for package tree of compact plan,
+     * tree is walked by node ids without creating elements.
+     *
+     * @param excluded ids of excluded nodes, excluded node excludes its subtree.
+     */
+    List<TestSelection> encode(CompactTestPlan plan, BitSet excluded, boolean negativeAllowed,
+                               int argumentBudget, boolean classesInFile) {
+        Node root = new Node();
+        for (int child = plan.getFirstChild(CompactTestPlan.ROOT); child != CompactTestPlan.NO_NODE;
+             child = plan.getNextSibling(child)) {
+            root.addChild(count(plan, child, excluded, false));
+        }
+        return encode(root, negativeAllowed, argumentBudget, classesInFile);
+    }
+
+    private static List<TestSelection> encode(Node root, boolean negativeAllowed,
+                                              int argumentBudget, boolean classesInFile) {
+        if (root.selected == 0) {
+            return Collections.emptyList();
+        }
+        ArrayList<String> classes = new ArrayList<>();
+        collectIncluded(root, classes);
+        TestSelection best = new TestSelection(Collections.<String>emptyList(),
+                Collections.<String>emptyList(), classes, Collections.<String>emptyList());
+
+        if (negativeAllowed) {
+            ArrayList<String> packages = new ArrayList<>();
+            ArrayList<String> notPackages = new ArrayList<>();
+            ArrayList<String> notClasses = new ArrayList<>();
+            packageCost(root);
+            collectPackages(root, packages, notPackages, notClasses);
+            TestSelection negative = new TestSelection(packages, notPackages,
+                    Collections.<String>emptyList(), notClasses);
+            if (negative.getArgumentsLength() <= argumentBudget && (classesInFile
+                    || negative.getArgumentsLength() < best.getArgumentsLength())) {
+                best = negative;
+            }
+        }
+
+        if (classesInFile || best.getArgumentsLength() <= argumentBudget) {
+            return Collections.singletonList(best);
+        }
+        return splitClasses(classes, argumentBudget);
+    }
+
+    private static Node count(TestPlanElement element, boolean parentExcluded) {
+        boolean excluded = parentExcluded || element.isExcluded();
+        Node node = new ElementNode(element);
+        List<TestPlanElement> children = element.getChildren();
+        if (children.isEmpty()) {
+            node.total = 1;
+            node.selected = excluded ? 0 : 1;
+            return node;
+        }
+        for (TestPlanElement child : children) {
+            node.addChild(count(child, excluded));
+        }
+        return node;
+    }
+
+    private static Node count(CompactTestPlan plan, int planNode, BitSet excludedNodes,
+                              boolean parentExcluded) {
+        boolean excluded = parentExcluded || excludedNodes.get(planNode);
+        Node node = new CompactNode(plan, planNode);
+        int child = plan.getFirstChild(planNode);
+        if (child == CompactTestPlan.NO_NODE) {
+            node.total = 1;
+            node.selected = excluded ? 0 : 1;
+            return node;
+        }
+        for (; child != CompactTestPlan.NO_NODE; child = plan.getNextSibling(child)) {
+            node.addChild(count(plan, child, excludedNodes, excluded));
+        }
+        return node;
+    }
+
+    /**
+     * Adds fully selected classes and selected methods of partially selected classes.
+     */
+    private static void collectIncluded(Node node, List<String> classes) {
+        if (node.selected == 0) {
+            return;
+        }
+        if (node.selected == node.total && !node.isRoot() && !node.isPackage()) {
+            classes.add(node.getAmInstrumentCommand());
+            return;
+        }
+        for (Node child : node.children) {
+            collectIncluded(child, classes);
+        }
+    }
+
+    /**
+     * @return length of arguments which exclude not selected tests from included node.
+     */
+    private static int excludedCost(Node node) {
+        if (node.excludedCost >= 0) {
+            return node.excludedCost;
+        }
+        int cost = 0;
+        if (node.selected == 0) {
+            cost = node.getAmInstrumentCommand().length() + 1;
+        } else if (node.selected < node.total) {
+            for (Node child : node.children) {
+                cost += excludedCost(child);
+            }
+        }
+        node.excludedCost = cost;
+        return cost;
+    }
+
+    /**
+     * Chooses for each package whether it is included as a whole with exclusions or
+     * its child packages are included separately. Root is a package without name, including it
+     * means running all tests except excluded.
+     *
+     * @return length of arguments for node with selected tests or {@link #IMPOSSIBLE}.
+     */
+    private static int packageCost(Node node) {
+        if (!node.isRoot() && !node.isPackage()) {
+            return IMPOSSIBLE;
+        }
+        int includeCost = excludedCost(node);
+        if (!node.isRoot()) {
+            includeCost += node.getAmInstrumentCommand().length() + 1;
+        }
+        int childrenCost = 0;
+        for (Node child : node.children) {
+            if (child.selected > 0) {
+                childrenCost = Math.min(IMPOSSIBLE, childrenCost + packageCost(child));
+            }
+        }
+        node.includeSelf = includeCost <= childrenCost;
+        return Math.min(includeCost, childrenCost);
+    }
+
+    private static void collectPackages(Node node, List<String> packages,
+                                        List<String> notPackages, List<String> notClasses) {
+        if (node.includeSelf) {
+            if (!node.isRoot()) {
+                packages.add(node.getAmInstrumentCommand());
+            }
+            collectExcluded(node, notPackages, notClasses);
+            return;
+        }
+        for (Node child : node.children) {
+            if (child.selected > 0) {
+                collectPackages(child, packages, notPackages, notClasses);
+            }
+        }
+    }
+
+    private static void collectExcluded(Node node, List<String> notPackages, List<String> notClasses) {
+        if (node.selected == node.total) {
+            return;
+        }
+        if (node.selected == 0) {
+            if (node.isPackage()) {
+                notPackages.add(node.getAmInstrumentCommand());
+            } else {
+                notClasses.add(node.getAmInstrumentCommand());
+            }
+            return;
+        }
+        for (Node child : node.children) {
+            collectExcluded(child, notPackages, notClasses);
+        }
+    }
+
+    private static List<TestSelection> splitClasses(List<String> classes, int argumentBudget) {
+        ArrayList<TestSelection> result = new ArrayList<>();
+        ArrayList<String> range = new ArrayList<>();
+        int budget = argumentBudget - TestSelection.argumentLength(TestSelection.CLASS,
+                Collections.singletonList(""));
+        int length = 0;
+        for (String target : classes) {
+            int targetLength = TestPlanSplitter.utf8Length(target);
+            if (!range.isEmpty() && length + targetLength + 1 > budget) {
+                result.add(new TestSelection(Collections.<String>emptyList(),
+                        Collections.<String>emptyList(), range, Collections.<String>emptyList()));
+                range.clear();
+                length = 0;
+            }
+            if (length > 0) {
+                length++;
+            }
+            length += targetLength;
+            range.add(target);
+        }
+        if (!range.isEmpty()) {
+            result.add(new TestSelection(Collections.<String>emptyList(),
+                    Collections.<String>emptyList(), range, Collections.<String>emptyList()));
+        }
+        return result;
+    }
+
+    /**
+     * Node of package tree with counts of tests, base node is root of tree.
+     */
+    private static class Node {
+        private final ArrayList<Node> children = new ArrayList<>();
+        private int selected;
+        private int total;
+        private int excludedCost = -1;
+        private boolean includeSelf;
+
+        private void addChild(Node child) {
+            children.add(child);
+            selected += child.selected;
+            total += child.total;
+        }
+
+        boolean isRoot() {
+            return true;
+        }
+
+        boolean isPackage() {
+            return true;
+        }
+
+        String getAmInstrumentCommand() {
+            return "";
+        }
+    }
+
+    private static class ElementNode extends Node {
+        private final TestPlanElement element;
+
+        private ElementNode(TestPlanElement element) {
+            this.element = element;
+        }
+
+        @Override
+        boolean isRoot() {
+            return false;
+        }
+
+        @Override
+        boolean isPackage() {
+            return element.isPackage();
+        }
+
+        @Override
+        String getAmInstrumentCommand() {
+            return element.getAmInstrumentCommand();
+        }
+    }
+
+    private static class CompactNode extends Node {
+        private final CompactTestPlan plan;
+        private final int planNode;
+
+        private CompactNode(CompactTestPlan plan, int planNode) {
+            this.plan = plan;
+            this.planNode = planNode;
+        }
+
+        @Override
+        boolean isRoot() {
+            return false;
+        }
+
+        @Override
+        boolean isPackage() {
+            return plan.getType(planNode) == NodeType.PACKAGE;
+        }
+
+        @Override
+        String getAmInstrumentCommand() {
+            return plan.getAmInstrumentCommand(planNode);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.github.grishberg.tests.sharding;
+
+import com.github.grishberg.tests.planner.TestPlanElement;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Orders batches by estimated duration, longest first.
+ * Devices take next batch from shared queue as soon as they become free, so together with
+ * this order it works as longest-processing-time scheduling.
+ */
+public class DurationBalancedPlanner {
+    private final TestDurationHistory history;
+
+    public DurationBalancedPlanner(TestDurationHistory history) {
+        this.history = history;
+    }
+
+    /**
+     * @return true if batches can be ordered by duration, otherwise order of test plan is kept.
+     */
+    public boolean hasHistory() {
+        return !history.isEmpty();
+    }
+
+    public List<TestBatch> orderByDuration(List<TestBatch> batches) {
+        if (history.isEmpty()) {
+            return batches;
+        }
+        Map<TestBatch, Long> durations = new HashMap<>();
+        for (TestBatch batch : batches) {
+            durations.put(batch, estimateDuration(batch));
+        }
+        ArrayList<TestBatch> result = new ArrayList<>(batches);
+        result.sort((l, r) -> Long.compare(durations.get(r), durations.get(l)));
+        return result;
+    }
+
+    public long estimateDuration(TestBatch batch) {
+        long duration = 0;
+        for (TestPlanElement test : batch.getTests()) {
+            duration += history.estimateDuration(test);
+        }
+        return duration;
+    }
+}
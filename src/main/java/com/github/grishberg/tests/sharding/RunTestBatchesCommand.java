@@ -0,0 +1,86 @@
+package com.github.grishberg.tests.sharding;
+
+import com.github.grishberg.tests.ConnectedDeviceWrapper;
+import com.github.grishberg.tests.TestRunnerContext;
+import com.github.grishberg.tests.commands.DeviceCommandResult;
+import com.github.grishberg.tests.commands.DeviceRunnerCommand;
+import com.github.grishberg.tests.commands.ExecuteCommandException;
+import com.github.grishberg.tests.common.RunnerLogger;
+import org.gradle.api.Project;
+
+import java.util.Map;
+
+/**
+ * Executes batches from shared queue on device while queue is not empty.
+ * When batch is failed because device is disconnected, batch is returned to queue
+ * for other devices, other failed batches are not executed again.
+ */
+public class RunTestBatchesCommand implements DeviceRunnerCommand {
+    private static final String TAG = RunTestBatchesCommand.class.getSimpleName();
+    private final Project project;
+    private final TestBatchQueue queue;
+    private final Map<String, String> instrumentationArgs;
+
+    public RunTestBatchesCommand(Project project,
+                                 TestBatchQueue queue,
+                                 Map<String, String> instrumentalArgs) {
+        this.project = project;
+        this.queue = queue;
+        this.instrumentationArgs = instrumentalArgs;
+    }
+
+    @Override
+    public DeviceCommandResult execute(ConnectedDeviceWrapper device, TestRunnerContext context)
+            throws ExecuteCommandException {
+        RunnerLogger logger = context.getLogger();
+        DeviceCommandResult result = new DeviceCommandResult();
+        String workerId = device.getSerialNumber();
+        int executedBatches = 0;
+
+        TestBatch batch;
+        while ((batch = takeBatch(workerId)) != null) {
+            logger.i(TAG, "device = {} takes {}, left in queue {}", device, batch, queue.size());
+            try {
+                executeBatch(device, context, batch, result);
+            } catch (ExecuteCommandException | RuntimeException e) {
+                if (device.isOnline()) {
+                    queue.finish(batch);
+                } else {
+                    logger.i(TAG, "device = {} disconnected on {}, return it to queue", device, batch);
+                    queue.returnBatch(batch);
+                }
+                throw e;
+            }
+            queue.finish(batch);
+            executedBatches++;
+        }
+        logger.i(TAG, "device = {} executed {} batches", device, executedBatches);
+        return result;
+    }
+
+    private void executeBatch(ConnectedDeviceWrapper device,
+                              TestRunnerContext context,
+                              TestBatch batch,
+                              DeviceCommandResult result) throws ExecuteCommandException {
+        for (DeviceRunnerCommand command : batch.provideCommands(project, instrumentationArgs)) {
+            DeviceCommandResult commandResult = command.execute(device, context);
+            if (commandResult.isFailed()) {
+                result.setFailed(true);
+            }
+        }
+    }
+
+    private TestBatch takeBatch(String workerId) throws ExecuteCommandException {
+        try {
+            return queue.take(workerId);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExecuteCommandException("Waiting for test batch was interrupted", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RunTestBatchesCommand{ " + instrumentationArgs + " }";
+    }
+}
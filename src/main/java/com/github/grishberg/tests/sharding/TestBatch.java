@@ -0,0 +1,58 @@
+package com.github.grishberg.tests.sharding;
+
+import com.github.grishberg.tests.commands.DeviceRunnerCommand;
+import com.github.grishberg.tests.commands.SingleInstrumentalTestCommand;
+import com.github.grishberg.tests.planner.TestPlanElement;
+import org.gradle.api.Project;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Group of tests executed in one am instrument invocation on any free device.
+ */
+public class TestBatch {
+    private final int index;
+    private final List<DeviceRunnerCommand> preCommands;
+    private final List<TestPlanElement> tests;
+
+    public TestBatch(int index, List<DeviceRunnerCommand> preCommands, List<TestPlanElement> tests) {
+        this.index = index;
+        this.preCommands = new ArrayList<>(preCommands);
+        this.tests = new ArrayList<>(tests);
+    }
+
+    public String getName() {
+        return String.format("test_%d", index);
+    }
+
+    public List<DeviceRunnerCommand> getPreCommands() {
+        return preCommands;
+    }
+
+    public List<TestPlanElement> getTests() {
+        return tests;
+    }
+
+    /**
+     * @param project            target project.
+     * @param instrumentalArgs   instrumentation args of device which executes batch.
+     * @return commands list for executing batch on device.
+     */
+    public List<DeviceRunnerCommand> provideCommands(Project project,
+                                                     Map<String, String> instrumentalArgs) {
+        List<DeviceRunnerCommand> commands = new ArrayList<>(preCommands);
+        commands.add(new SingleInstrumentalTestCommand(project, getName(), instrumentalArgs, tests));
+        return commands;
+    }
+
+    @Override
+    public String toString() {
+        return "TestBatch{" +
+                "name=" + getName() +
+                ", preCommands=" + preCommands.size() +
+                ", tests=" + tests.size() +
+                '}';
+    }
+}
@@ -0,0 +1,105 @@
+package com.github.grishberg.tests.sharding;
+
+import com.github.grishberg.tests.AnnotationCommandDispatcher;
+import com.github.grishberg.tests.CommandsForAnnotationProvider;
+import com.github.grishberg.tests.TestBatchReorderer;
+import com.github.grishberg.tests.commands.DeviceRunnerCommand;
+import com.github.grishberg.tests.planner.TestPlanElement;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Splits test plan into batches. Each test with commands for annotations starts new batch,
+ * other batches are limited by batch size.
+ */
+public class TestBatchBuilder {
+    private final CommandsForAnnotationProvider commandsForAnnotationProvider;
+    private final int batchSize;
+    @Nullable
+    private final TestBatchReorderer reorderer;
+
+    public TestBatchBuilder(CommandsForAnnotationProvider commandsForAnnotationProvider, int batchSize) {
+        this(commandsForAnnotationProvider, batchSize, null);
+    }
+
+    /**
+     * @param reorderer reorders whole plan in {@link #buildBatches(List)} to minimize count of
+     *                  batches, tests are kept in discovered order when null.
+     */
+    public TestBatchBuilder(CommandsForAnnotationProvider commandsForAnnotationProvider, int batchSize,
+                            @Nullable TestBatchReorderer reorderer) {
+        this.commandsForAnnotationProvider = commandsForAnnotationProvider;
+        this.batchSize = batchSize > 0 ? batchSize : 1;
+        this.reorderer = reorderer;
+    }
+
+    /**
+     * @return true when whole plan is reordered, so batches can't be built while tests
+     * are discovered.
+     */
+    public boolean isReorderingEnabled() {
+        return reorderer != null;
+    }
+
+    public List<TestBatch> buildBatches(List<TestPlanElement> plan) {
+        ArrayList<TestBatch> batches = new ArrayList<>();
+        BatchCollector collector = newCollector(batches::add);
+        List<TestPlanElement> orderedPlan = reorderer != null
+                ? reorderer.reorder(plan, collector.dispatcher, batchSize) : plan;
+        for (TestPlanElement currentPlan : orderedPlan) {
+            collector.add(currentPlan);
+        }
+        collector.finish();
+        return batches;
+    }
+
+    /**
+     * @param consumer receives each batch as soon as it is complete.
+     * @return collector for building batches from tests which are still being discovered.
+     */
+    public BatchCollector newCollector(Consumer<TestBatch> consumer) {
+        return new BatchCollector(consumer);
+    }
+
+    /**
+     * Builds batches from tests one by one.
+     */
+    public class BatchCollector {
+        private final Consumer<TestBatch> consumer;
+        private final ArrayList<TestPlanElement> tests = new ArrayList<>();
+        private final AnnotationCommandDispatcher dispatcher =
+                new AnnotationCommandDispatcher(commandsForAnnotationProvider);
+        private List<DeviceRunnerCommand> preCommands = Collections.emptyList();
+        private int batchIndex;
+
+        private BatchCollector(Consumer<TestBatch> consumer) {
+            this.consumer = consumer;
+        }
+
+        public void add(TestPlanElement test) {
+            List<DeviceRunnerCommand> commandsForAnnotations = dispatcher
+                    .provideCommand(test.getAnnotations());
+            if (!commandsForAnnotations.isEmpty() || tests.size() >= batchSize) {
+                publishBatch();
+                preCommands = commandsForAnnotations;
+            }
+            tests.add(test);
+        }
+
+        public void finish() {
+            publishBatch();
+        }
+
+        private void publishBatch() {
+            if (tests.isEmpty()) {
+                return;
+            }
+            consumer.accept(new TestBatch(batchIndex++, preCommands, tests));
+            tests.clear();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.github.grishberg.tests.sharding;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Work queue shared between devices.
+ * Device takes batches from own queue first, then from common backlog,
+ * and when backlog is empty steals batch from the device with the longest queue.
+ * Taken batch is in progress until device reports that it is finished or returns it back
+ * to queue, so other devices keep waiting for batches of disconnected device.
+ */
+public class TestBatchQueue {
+    private final Deque<TestBatch> backlog = new ArrayDeque<>();
+    private final Map<String, Deque<TestBatch>> workerQueues = new HashMap<>();
+    private boolean closed;
+    private int batchesInProgress;
+
+    /**
+     * Adds batches to common backlog.
+     */
+    public synchronized void addAll(Collection<TestBatch> batches) {
+        backlog.addAll(batches);
+        notifyAll();
+    }
+
+    /**
+     * Adds batches to queue of given device.
+     */
+    public synchronized void assign(String workerId, Collection<TestBatch> batches) {
+        workerQueue(workerId).addAll(batches);
+        notifyAll();
+    }
+
+    /**
+     * Marks that no more batches will be added.
+     */
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    /**
+     * Marks batch taken by device as executed.
+     */
+    public synchronized void finish(TestBatch batch) {
+        batchesInProgress--;
+        notifyAll();
+    }
+
+    /**
+     * Returns batch which was not executed, for example when device is disconnected,
+     * it will be taken by the next free device.
+     */
+    public synchronized void returnBatch(TestBatch batch) {
+        batchesInProgress--;
+        backlog.addFirst(batch);
+        notifyAll();
+    }
+
+    /**
+     * Waits for next batch while queue is not closed or some batches are in progress.
+     *
+     * @return next batch for device or null if queue is closed and there is no work left.
+     */
+    @Nullable
+    public synchronized TestBatch take(String workerId) throws InterruptedException {
+        while (true) {
+            TestBatch batch = poll(workerId);
+            if (batch != null || (closed && batchesInProgress == 0)) {
+                return batch;
+            }
+            wait();
+        }
+    }
+
+    /**
+     * @return next batch for device or null if there is no work left.
+     */
+    @Nullable
+    public synchronized TestBatch poll(String workerId) {
+        TestBatch batch = nextBatch(workerId);
+        if (batch != null) {
+            batchesInProgress++;
+        }
+        return batch;
+    }
+
+    @Nullable
+    private TestBatch nextBatch(String workerId) {
+        TestBatch batch = workerQueue(workerId).pollFirst();
+        if (batch != null) {
+            return batch;
+        }
+        batch = backlog.pollFirst();
+        if (batch != null) {
+            return batch;
+        }
+        return steal(workerId);
+    }
+
+    @Nullable
+    private TestBatch steal(String workerId) {
+        Deque<TestBatch> victim = null;
+        for (Map.Entry<String, Deque<TestBatch>> entry : workerQueues.entrySet()) {
+            if (entry.getKey().equals(workerId)) {
+                continue;
+            }
+            Deque<TestBatch> queue = entry.getValue();
+            if (victim == null || queue.size() > victim.size()) {
+                victim = queue;
+            }
+        }
+        return victim != null ? victim.pollLast() : null;
+    }
+
+    /**
+     * @return count of batches which are not taken by devices.
+     */
+    public synchronized int size() {
+        int size = backlog.size();
+        for (Deque<TestBatch> queue : workerQueues.values()) {
+            size += queue.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return true if some batches are not executed, for example when they were returned
+     * by disconnected device and there is no device left to take them.
+     */
+    public synchronized boolean hasUnfinishedBatches() {
+        return batchesInProgress > 0 || size() > 0;
+    }
+
+    private Deque<TestBatch> workerQueue(String workerId) {
+        return workerQueues.computeIfAbsent(workerId, k -> new ArrayDeque<>());
+    }
+}
@@ -0,0 +1,115 @@
+package com.github.grishberg.tests.sharding;
+
+import com.github.grishberg.tests.common.RunnerLogger;
+import com.github.grishberg.tests.planner.TestPlanElement;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Durations of tests from TEST-*.xml reports of previous run.
+ */
+public class TestDurationHistory {
+    private static final String TAG = TestDurationHistory.class.getSimpleName();
+    static final long DEFAULT_DURATION_MS = 1000;
+    private static final String TEST_CASE = "testcase";
+    private static final String CLASS_NAME = "classname";
+    private static final String NAME = "name";
+    private static final String TIME = "time";
+    private final Map<String, Duration> testDurations = new HashMap<>();
+    private final Map<String, Duration> classDurations = new HashMap<>();
+    private final Duration totalDuration = new Duration();
+
+    /**
+     * Reads durations from reports dir, must be called before reports dir is cleaned.
+     *
+     * @param resultsDir dir with xml reports of previous run.
+     * @param logger     logger.
+     * @return history, empty if there is no reports.
+     */
+    public static TestDurationHistory load(File resultsDir, RunnerLogger logger) {
+        TestDurationHistory history = new TestDurationHistory();
+        File[] reports = resultsDir.listFiles((dir, name) ->
+                name.startsWith("TEST-") && name.endsWith(".xml"));
+        if (reports == null) {
+            return history;
+        }
+        try {
+            DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            for (File report : reports) {
+                history.parseReport(builder, report, logger);
+            }
+        } catch (Exception e) {
+            logger.e(TAG, "load: can't create xml parser", e);
+        }
+        logger.i(TAG, "load: found durations for {} tests", history.testDurations.size());
+        return history;
+    }
+
+    private void parseReport(DocumentBuilder builder, File report, RunnerLogger logger) {
+        try {
+            Document document = builder.parse(report);
+            NodeList testCases = document.getElementsByTagName(TEST_CASE);
+            for (int i = 0; i < testCases.getLength(); i++) {
+                Element testCase = (Element) testCases.item(i);
+                long durationMs = (long) (Double.parseDouble(testCase.getAttribute(TIME)) * 1000);
+                addDuration(testCase.getAttribute(CLASS_NAME), testCase.getAttribute(NAME), durationMs);
+            }
+        } catch (Exception e) {
+            logger.e(TAG, "parseReport: can't parse " + report.getName(), e);
+        }
+    }
+
+    void addDuration(String className, String methodName, long durationMs) {
+        getOrCreate(testDurations, className + "#" + methodName).add(durationMs);
+        getOrCreate(classDurations, className).add(durationMs);
+        totalDuration.add(durationMs);
+    }
+
+    /**
+     * @return duration of test from history, average duration of test's class when test is new
+     * or default value when there is no history for class.
+     */
+    public long estimateDuration(TestPlanElement test) {
+        Duration duration = testDurations.get(test.getClassName() + "#" + test.getMethodName());
+        if (duration != null) {
+            return duration.average();
+        }
+        duration = classDurations.get(test.getClassName());
+        if (duration != null) {
+            return duration.average();
+        }
+        if (totalDuration.count > 0) {
+            return totalDuration.average();
+        }
+        return DEFAULT_DURATION_MS;
+    }
+
+    public boolean isEmpty() {
+        return testDurations.isEmpty();
+    }
+
+    private static Duration getOrCreate(Map<String, Duration> map, String key) {
+        return map.computeIfAbsent(key, k -> new Duration());
+    }
+
+    private static class Duration {
+        private long sum;
+        private int count;
+
+        void add(long durationMs) {
+            sum += durationMs;
+            count++;
+        }
+
+        long average() {
+            return sum / count;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.github.grishberg.tests;
+
+import com.github.grishberg.tests.commands.ClearCommand;
+import com.github.grishberg.tests.commands.DeviceRunnerCommand;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for {@link AnnotationCommandDispatcher}.
+ */
+@RunWith(JUnit4.class)
+public class AnnotationCommandDispatcherTest {
+    private final List<String> clearDataAnnotations = Arrays.asList("ClearData");
+    private final List<String> otherAnnotations = Arrays.asList("Other");
+    private int calls;
+    private final AnnotationCommandDispatcher dispatcher = new AnnotationCommandDispatcher(
+            annotations -> {
+                calls++;
+                return new DefaultCommandsForAnnotationProvider().provideCommand(annotations);
+            });
+
+    @Test
+    public void callProviderOnceForAnnotationsWithoutCommands() {
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(dispatcher.provideCommand(otherAnnotations).isEmpty());
+        }
+
+        Assert.assertEquals(1, calls);
+    }
+
+    @Test
+    public void provideNewCommandsForEachTest() {
+        List<DeviceRunnerCommand> first = dispatcher.provideCommand(clearDataAnnotations);
+        List<DeviceRunnerCommand> second = dispatcher.provideCommand(clearDataAnnotations);
+
+        Assert.assertEquals(2, calls);
+        Assert.assertTrue(first.get(0) instanceof ClearCommand);
+        Assert.assertNotSame(first.get(0), second.get(0));
+    }
+
+    @Test
+    public void distinguishEqualListsByIdentity() {
+        dispatcher.provideCommand(otherAnnotations);
+        dispatcher.provideCommand(new ArrayList<>(otherAnnotations));
+
+        Assert.assertEquals(2, calls);
+    }
+}
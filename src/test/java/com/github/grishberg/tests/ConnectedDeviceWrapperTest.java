@@ -5,6 +5,7 @@ import com.android.ddmlib.IDevice;
 import com.android.ddmlib.IShellOutputReceiver;
 import com.android.ddmlib.TimeoutException;
 import com.android.utils.ILogger;
+import com.github.grishberg.tests.adb.AdbShellSession;
 import com.github.grishberg.tests.commands.ExecuteCommandException;
 import org.junit.Assert;
 import org.junit.Before;
@@ -14,6 +15,7 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import java.io.File;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 import static org.mockito.ArgumentMatchers.any;
@@ -34,12 +36,14 @@ public class ConnectedDeviceWrapperTest {
     InstrumentalPluginExtension extension;
     @Mock
     ILogger logger;
+    @Mock
+    AdbShellSession shellSession;
     private ConnectedDeviceWrapper deviceWrapper;
     private File coverageFile = new File("coverage");
 
     @Before
     public void setUp() throws Exception {
-        when(device.getAvdName()).thenReturn("test_device");
+        when(device.getSerialNumber()).thenReturn("emulator-5554");
         when(extension.getApplicationId()).thenReturn("com.test.app");
         deviceWrapper = new ConnectedDeviceWrapper(device);
     }
@@ -57,9 +61,72 @@ public class ConnectedDeviceWrapperTest {
     }
 
     @Test
-    public void getName() throws Exception {
-        deviceWrapper.getName();
-        verify(device).getAvdName();
+    public void getNameFromAvdNameProperty() throws Exception {
+        returnGetpropOutput("[ro.kernel.qemu.avd_name]: [Pixel_API_26]\n");
+
+        Assert.assertEquals("Pixel_API_26", deviceWrapper.getName());
+        verify(device, never()).getAvdName();
+    }
+
+    @Test
+    public void getNameFromSerialNumberWhenNoAvdName() throws Exception {
+        returnGetpropOutput("[ro.build.version.sdk]: [28]\n");
+
+        Assert.assertEquals("emulator-5554", deviceWrapper.getName());
+    }
+
+    @Test
+    public void repeatGetpropWhenFailed() throws Exception {
+        byte[] output = "[ro.build.version.sdk]: [28]\n".getBytes();
+        doThrow(new TimeoutException()).doAnswer(invocation -> {
+            CollectingOutputReceiver receiver = invocation.getArgument(1);
+            receiver.addOutput(output, 0, output.length);
+            return null;
+        }).when(device).executeShellCommand(eq("getprop"), any(IShellOutputReceiver.class),
+                anyLong(), any(TimeUnit.class));
+
+        Assert.assertTrue(deviceWrapper.getProperties().isEmpty());
+        Assert.assertEquals("28", deviceWrapper.getProperties().get("ro.build.version.sdk"));
+        Assert.assertEquals("28", deviceWrapper.getProperties().get("ro.build.version.sdk"));
+        verify(device, times(2)).executeShellCommand(eq("getprop"), any(IShellOutputReceiver.class),
+                anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void getFingerprintFromApiLevelAndAbi() throws Exception {
+        when(device.getSystemProperty("ro.build.version.sdk"))
+                .thenReturn(CompletableFuture.completedFuture("26"));
+        when(device.getSystemProperty("ro.product.cpu.abi"))
+                .thenReturn(CompletableFuture.completedFuture("x86"));
+
+        Assert.assertEquals("26/x86", deviceWrapper.getFingerprint());
+    }
+
+    @Test
+    public void getFingerprintFromPropertiesSnapshot() throws Exception {
+        doAnswer(invocation -> {
+            CollectingOutputReceiver receiver = invocation.getArgument(1);
+            byte[] output = "[ro.build.version.sdk]: [28]\n[ro.product.cpu.abi]: [arm64-v8a]\n".getBytes();
+            receiver.addOutput(output, 0, output.length);
+            return null;
+        }).when(device).executeShellCommand(eq("getprop"), any(IShellOutputReceiver.class),
+                anyLong(), any(TimeUnit.class));
+
+        Assert.assertEquals("28/arm64-v8a", deviceWrapper.getFingerprint());
+        Assert.assertEquals("28", deviceWrapper.getSystemProperty("ro.build.version.sdk").get());
+        verify(device).executeShellCommand(eq("getprop"), any(IShellOutputReceiver.class),
+                anyLong(), any(TimeUnit.class));
+        verify(device, never()).getSystemProperty(anyString());
+    }
+
+    private void returnGetpropOutput(String getpropOutput) throws Exception {
+        doAnswer(invocation -> {
+            CollectingOutputReceiver receiver = invocation.getArgument(1);
+            byte[] output = getpropOutput.getBytes();
+            receiver.addOutput(output, 0, output.length);
+            return null;
+        }).when(device).executeShellCommand(eq("getprop"), any(IShellOutputReceiver.class),
+                anyLong(), any(TimeUnit.class));
     }
 
     @Test
@@ -115,6 +182,17 @@ public class ConnectedDeviceWrapperTest {
                 eq(5L), eq(TimeUnit.MINUTES));
     }
 
+    @Test
+    public void executeShellCommandWithoutSession() throws Exception {
+        deviceWrapper.setShellSession(shellSession);
+
+        deviceWrapper.executeShellCommandWithoutSession("cmd");
+
+        verify(device).executeShellCommand(eq("cmd"), any(CollectingOutputReceiver.class),
+                eq(5L), eq(TimeUnit.MINUTES));
+        verifyZeroInteractions(shellSession);
+    }
+
     @Test
     public void returnDeviceWhenAsked() {
         Assert.assertEquals(device, deviceWrapper.getDevice());
@@ -127,4 +205,20 @@ public class ConnectedDeviceWrapperTest {
 
         deviceWrapper.pullFile("coverageCopy", "path");
     }
-}
\ No newline at end of file
+
+    @Test(expected = ExecuteCommandException.class)
+    public void throwExceptionWhenPendingInstallFailed() throws Exception {
+        CompletableFuture<Void> install = new CompletableFuture<>();
+        install.completeExceptionally(new ExecuteCommandException("install failed", new Throwable()));
+        deviceWrapper.setPendingInstall(install);
+
+        deviceWrapper.waitForPendingInstall();
+    }
+
+    @Test
+    public void waitForPendingInstall() throws Exception {
+        deviceWrapper.setPendingInstall(CompletableFuture.completedFuture(null));
+
+        deviceWrapper.waitForPendingInstall();
+    }
+}
@@ -16,6 +16,8 @@ import org.mockito.junit.MockitoJUnitRunner;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -41,6 +43,10 @@ public class DeviceCommandsRunnerTest {
     DeviceCommandResult result;
     @Mock
     TestRunnerContext context;
+    @Mock
+    ConnectedDeviceWrapper secondDeviceWrapper;
+    @Mock
+    InstrumentalPluginExtension instrumentalInfo;
     private List<DeviceRunnerCommand> commands;
     private ConnectedDeviceWrapper[] devices;
     private DeviceCommandsRunner runner;
@@ -98,4 +104,71 @@ public class DeviceCommandsRunnerTest {
         runner.runCommands(devices, context);
         verify(logger).e("DCR", "Execute command exception:", exception);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void cancelOtherDevicesWhenCommandFailed() throws Exception {
+        CountDownLatch secondDeviceStarted = new CountDownLatch(1);
+        CountDownLatch secondDeviceInterrupted = new CountDownLatch(1);
+        DeviceRunnerCommand blockingCommand = (device, ctx) -> {
+            secondDeviceStarted.countDown();
+            try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException e) {
+                secondDeviceInterrupted.countDown();
+            }
+            return new DeviceCommandResult();
+        };
+        when(secondDeviceWrapper.getSerialNumber()).thenReturn("second");
+        List<DeviceRunnerCommand> secondDeviceCommands = new ArrayList<>();
+        secondDeviceCommands.add(blockingCommand);
+        when(commandProvider.provideCommandsForDevice(secondDeviceWrapper, planProvider, environment))
+                .thenReturn(secondDeviceCommands);
+        when(command.execute(deviceWrapper, context)).thenAnswer(invocation -> {
+            secondDeviceStarted.await();
+            throw new ExecuteCommandException("Exception", new Throwable());
+        });
+        when(context.getInstrumentalInfo()).thenReturn(instrumentalInfo);
+        when(instrumentalInfo.getApplicationId()).thenReturn("com.test.app");
+
+        try {
+            runner.runCommands(new ConnectedDeviceWrapper[]{deviceWrapper, secondDeviceWrapper}, context);
+            Assert.fail("ExecuteCommandException expected");
+        } catch (ExecuteCommandException e) {
+            Assert.assertTrue(secondDeviceInterrupted.await(1, TimeUnit.SECONDS));
+            verify(secondDeviceWrapper).executeShellCommand("am force-stop com.test.app");
+        }
+    }
+
+    @Test
+    public void continueRunWhenDeviceDisconnected() throws Exception {
+        when(commandProvider.isDynamicDevicesSupported()).thenReturn(true);
+        when(command.execute(deviceWrapper, context))
+                .thenThrow(new ExecuteCommandException("Exception", new Throwable()));
+        when(deviceWrapper.isOnline()).thenReturn(false);
+        when(commandProvider.hasUnfinishedWork()).thenReturn(true);
+
+        Assert.assertFalse(runner.runCommands(devices, context));
+    }
+
+    @Test
+    public void addDeviceDuringRun() throws Exception {
+        when(commandProvider.isDynamicDevicesSupported()).thenReturn(true);
+        when(secondDeviceWrapper.getSerialNumber()).thenReturn("second");
+        when(commandProvider.provideCommandsForDevice(secondDeviceWrapper, planProvider, environment))
+                .thenReturn(new ArrayList<>());
+        when(command.execute(deviceWrapper, context)).thenAnswer(invocation -> {
+            Assert.assertTrue(runner.addDevice(secondDeviceWrapper));
+            return result;
+        });
+
+        Assert.assertTrue(runner.runCommands(devices, context));
+        verify(commandProvider).provideCommandsForDevice(secondDeviceWrapper, planProvider, environment);
+    }
+
+    @Test
+    public void dontAddDeviceAfterRun() throws Exception {
+        runner.runCommands(devices, context);
+
+        Assert.assertFalse(runner.addDevice(secondDeviceWrapper));
+    }
+}
@@ -0,0 +1,39 @@
+package com.github.grishberg.tests;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link DeviceProperties}.
+ */
+@RunWith(JUnit4.class)
+public class DevicePropertiesTest {
+    @Test
+    public void parseGetpropOutput() {
+        DeviceProperties properties = DeviceProperties.parse("[ro.build.version.sdk]: [26]\r\n"
+                + "[ro.product.cpu.abi]: [x86]\r\n"
+                + "[persist.sys.empty]: []\r\n");
+
+        Assert.assertEquals("26", properties.get("ro.build.version.sdk"));
+        Assert.assertEquals("x86", properties.get("ro.product.cpu.abi"));
+        Assert.assertEquals("", properties.get("persist.sys.empty"));
+        Assert.assertEquals(3, properties.getAll().size());
+    }
+
+    @Test
+    public void skipNotPropertyLines() {
+        DeviceProperties properties = DeviceProperties.parse("getprop: not found\n\n[broken\n");
+
+        Assert.assertTrue(properties.isEmpty());
+        Assert.assertNull(properties.get("getprop"));
+    }
+
+    @Test
+    public void keepValueWithBrackets() {
+        DeviceProperties properties = DeviceProperties.parse("[ro.test]: [[a]: [b]]\n");
+
+        Assert.assertEquals("[a]: [b]", properties.get("ro.test"));
+    }
+}
@@ -16,6 +16,7 @@ import org.mockito.junit.MockitoJUnitRunner;
 import java.io.File;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -55,7 +56,7 @@ public class InstrumentationTestTaskTest {
     public void setUp() throws Exception {
         IDevice[] devices = new IDevice[]{device};
         when((adbWrapper.provideDevices())).thenReturn(devices);
-        when(deviceCommandsRunnerFabric.provideDeviceCommandRunner(any(DeviceRunnerCommandProvider.class))).thenReturn(runner);
+        when(deviceCommandsRunnerFabric.provideDeviceCommandRunner(any(DeviceRunnerCommandProvider.class), anyInt())).thenReturn(runner);
         when(runner.runCommands(any(ConnectedDeviceWrapper[].class), any(TestRunnerContext.class))).thenReturn(true);
         task.initAfterApply(adbWrapper, deviceCommandsRunnerFabric, logger);
     }
@@ -145,6 +146,6 @@ public class InstrumentationTestTaskTest {
 
         verify(adbWrapper).initWithAndroidSdk(ADB_PATH);
         verify(adbWrapper).waitForAdb();
-        verify(deviceCommandsRunnerFabric).provideDeviceCommandRunner(any(DeviceRunnerCommandProvider.class));
+        verify(deviceCommandsRunnerFabric).provideDeviceCommandRunner(any(DeviceRunnerCommandProvider.class), anyInt());
     }
 }
\ No newline at end of file
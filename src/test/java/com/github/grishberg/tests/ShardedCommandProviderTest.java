@@ -0,0 +1,132 @@
+package com.github.grishberg.tests;
+
+import com.github.grishberg.tests.commands.DeviceRunnerCommand;
+import com.github.grishberg.tests.commands.SetAnimationSpeedCommand;
+import com.github.grishberg.tests.common.RunnerLogger;
+import com.github.grishberg.tests.planner.InstrumentalTestPlanProvider;
+import com.github.grishberg.tests.planner.TestPlanElement;
+import com.github.grishberg.tests.planner.TestPlanListener;
+import com.github.grishberg.tests.sharding.DurationBalancedPlanner;
+import com.github.grishberg.tests.sharding.RunTestBatchesCommand;
+import com.github.grishberg.tests.sharding.TestBatchBuilder;
+import com.github.grishberg.tests.sharding.TestBatchQueue;
+import com.github.grishberg.tests.sharding.TestDurationHistory;
+import org.gradle.api.Project;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link ShardedCommandProvider}.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ShardedCommandProviderTest {
+    private static final HashMap<String, String> ARGS = new HashMap<>();
+    @Mock
+    Project project;
+    @Mock
+    InstrumentationArgsProvider argsProvider;
+    @Mock
+    CommandsForAnnotationProvider commandsForAnnotationProvider;
+    @Mock
+    RunnerLogger logger;
+    @Mock
+    ConnectedDeviceWrapper deviceWrapper;
+    @Mock
+    ConnectedDeviceWrapper secondDeviceWrapper;
+    @Mock
+    InstrumentalTestPlanProvider planProvider;
+    @Mock
+    Environment environment;
+    private ShardedCommandProvider provider;
+
+    @Before
+    public void setUp() throws Exception {
+        List<TestPlanElement> plan = Arrays.asList(
+                new TestPlanElement("", "test1", "com.pkg1.Test1"),
+                new TestPlanElement("", "test2", "com.pkg1.Test1"),
+                new TestPlanElement("", "test3", "com.pkg1.Test1"));
+        when(commandsForAnnotationProvider.provideCommand(new ArrayList<>()))
+                .thenReturn(new ArrayList<>());
+        when(argsProvider.provideInstrumentationArgs(deviceWrapper)).thenReturn(ARGS);
+        when(planProvider.provideTestPlan(eq(deviceWrapper), eq(ARGS), any(TestPlanListener.class)))
+                .thenAnswer(invocation -> {
+                    TestPlanListener listener = invocation.getArgument(2);
+                    for (TestPlanElement element : plan) {
+                        listener.onTestDiscovered(element);
+                    }
+                    listener.onDiscoveryFinished();
+                    return plan;
+                });
+        provider = new ShardedCommandProvider(project, argsProvider,
+                new TestBatchBuilder(commandsForAnnotationProvider, 2),
+                new DurationBalancedPlanner(new TestDurationHistory()), logger);
+    }
+
+    @Test
+    public void provideCommandsForDevice() throws Exception {
+        List<DeviceRunnerCommand> commandList = provider.provideCommandsForDevice(deviceWrapper,
+                planProvider, environment);
+
+        Assert.assertEquals(3, commandList.size());
+        Assert.assertTrue(commandList.get(0) instanceof SetAnimationSpeedCommand);
+        Assert.assertTrue(commandList.get(1) instanceof RunTestBatchesCommand);
+        Assert.assertTrue(commandList.get(2) instanceof SetAnimationSpeedCommand);
+        Assert.assertEquals(2, provider.getQueue().size());
+    }
+
+    @Test
+    public void requestTestPlanOnlyOnce() throws Exception {
+        when(argsProvider.provideInstrumentationArgs(secondDeviceWrapper)).thenReturn(ARGS);
+
+        provider.provideCommandsForDevice(deviceWrapper, planProvider, environment);
+        provider.provideCommandsForDevice(secondDeviceWrapper, planProvider, environment);
+
+        verify(planProvider, times(1)).provideTestPlan(eq(deviceWrapper), eq(ARGS),
+                any(TestPlanListener.class));
+        Assert.assertEquals(2, provider.getQueue().size());
+    }
+
+    @Test
+    public void reorderDiscoveredPlanWithoutHistory() throws Exception {
+        List<TestPlanElement> plan = Arrays.asList(
+                new TestPlanElement("", "test1", "com.pkg1.Test1"),
+                new TestPlanElement("", "test2", "com.pkg1.Test1"),
+                new TestPlanElement("", "test3", "com.pkg1.Test1"));
+        when(planProvider.provideTestPlan(deviceWrapper, ARGS)).thenReturn(plan);
+        provider = new ShardedCommandProvider(project, argsProvider,
+                new TestBatchBuilder(commandsForAnnotationProvider, 2, new TestBatchReorderer(logger)),
+                new DurationBalancedPlanner(new TestDurationHistory()), logger);
+
+        provider.provideCommandsForDevice(deviceWrapper, planProvider, environment);
+
+        verify(planProvider, never()).provideTestPlan(eq(deviceWrapper), eq(ARGS),
+                any(TestPlanListener.class));
+        Assert.assertEquals(2, provider.getQueue().size());
+    }
+
+    @Test
+    public void closeQueueWhenPlanIsDiscovered() throws Exception {
+        provider.provideCommandsForDevice(deviceWrapper, planProvider, environment);
+
+        TestBatchQueue queue = provider.getQueue();
+        queue.finish(queue.take("device1"));
+        queue.finish(queue.take("device1"));
+        Assert.assertNull(queue.take("device1"));
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.grishberg.tests;
+
+import com.github.grishberg.tests.commands.ExecuteCommandException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Tests for {@link ShellCommandBatch}.
+ */
+@RunWith(JUnit4.class)
+public class ShellCommandBatchTest {
+    private static final String SENTINEL = "END";
+    private final ShellCommandBatch batch = new ShellCommandBatch(SENTINEL)
+            .add("echo first")
+            .add("settings put global window_animation_scale 0")
+            .add("ls /missing");
+
+    @Test
+    public void buildCommandWithSentinels() {
+        Assert.assertEquals("{\necho first\n} ; r=$? ; echo ; echo END:0:$r"
+                + "\n{\nsettings put global window_animation_scale 0\n} ; r=$? ; echo ; echo END:1:$r"
+                + "\n{\nls /missing\n} ; r=$? ; echo ; echo END:2:$r", batch.buildCommand());
+    }
+
+    @Test
+    public void keepSentinelsAfterBackgroundCommandAndComment() throws Exception {
+        ShellCommandBatch commandBatch = new ShellCommandBatch(SENTINEL)
+                .add("sleep 0 &")
+                .add("echo second # comment");
+        Process process = new ProcessBuilder("sh", "-c", commandBatch.buildCommand())
+                .redirectErrorStream(true).start();
+        String output = new String(readFully(process.getInputStream()), StandardCharsets.UTF_8);
+        process.waitFor();
+
+        List<ShellCommandResult> results = commandBatch.parseOutput(output);
+
+        Assert.assertEquals(0, results.get(0).getExitCode());
+        Assert.assertEquals("second\n", results.get(1).getOutput());
+    }
+
+    @Test
+    public void splitOutputByCommands() throws Exception {
+        List<ShellCommandResult> results = batch.parseOutput("first\n\nEND:0:0\n\nEND:1:0\n"
+                + "ls: /missing: No such file or directory\n\nEND:2:1\n");
+
+        Assert.assertEquals(3, results.size());
+        Assert.assertEquals("first\n", results.get(0).getOutput());
+        Assert.assertTrue(results.get(0).isSuccessful());
+        Assert.assertEquals("", results.get(1).getOutput());
+        Assert.assertEquals("ls: /missing: No such file or directory\n", results.get(2).getOutput());
+        Assert.assertEquals(1, results.get(2).getExitCode());
+    }
+
+    @Test
+    public void splitOutputWithWindowsLineEndings() throws Exception {
+        List<ShellCommandResult> results = batch.parseOutput("first\r\n\r\nEND:0:0\r\n\r\nEND:1:0\r\n"
+                + "\r\nEND:2:2\r\n");
+
+        Assert.assertEquals("first\n", results.get(0).getOutput());
+        Assert.assertEquals(2, results.get(2).getExitCode());
+    }
+
+    @Test
+    public void ignoreSentinelInsideOfLine() throws Exception {
+        List<ShellCommandResult> results = batch.parseOutput("sh -c echo END:0:$r\n\nEND:0:0\n"
+                + "\nEND:1:0\n\nEND:2:0");
+
+        Assert.assertEquals("sh -c echo END:0:$r\n", results.get(0).getOutput());
+        Assert.assertEquals(0, results.get(2).getExitCode());
+    }
+
+    @Test(expected = ExecuteCommandException.class)
+    public void throwExceptionWhenCommandHasNoResult() throws Exception {
+        batch.parseOutput("first\n\nEND:0:0\n");
+    }
+
+    private static byte[] readFully(InputStream is) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = is.read(buffer)) > 0) {
+            os.write(buffer, 0, read);
+        }
+        return os.toByteArray();
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.grishberg.tests;
+
+import com.github.grishberg.tests.commands.ClearCommand;
+import com.github.grishberg.tests.commands.DeviceRunnerCommand;
+import com.github.grishberg.tests.common.RunnerLogger;
+import com.github.grishberg.tests.planner.TestPlanElement;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for {@link TestBatchReorderer}.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class TestBatchReordererTest {
+    private static final List<String> CLEAR_DATA = Arrays.asList("ClearData");
+    private static final List<String> CLEAR_CACHE = Arrays.asList("ClearCache");
+    private final AnnotationCommandDispatcher dispatcher = new AnnotationCommandDispatcher(
+            annotations -> annotations.isEmpty() ? Collections.<DeviceRunnerCommand>emptyList()
+                    : Collections.<DeviceRunnerCommand>singletonList(new ClearCommand()));
+    @Mock
+    RunnerLogger logger;
+    private TestBatchReorderer reorderer;
+
+    @Before
+    public void setUp() {
+        reorderer = new TestBatchReorderer(logger);
+    }
+
+    @Test
+    public void fillRunsStartedByTestsWithCommands() {
+        List<TestPlanElement> plan = Arrays.asList(test("a1", null), test("c1", CLEAR_DATA),
+                test("a2", null), test("c2", CLEAR_DATA), test("a3", null));
+
+        List<TestPlanElement> result = reorderer.reorder(plan, dispatcher, Integer.MAX_VALUE);
+
+        Assert.assertEquals(Arrays.asList("c1", "a1", "a2", "a3", "c2"), names(result));
+        Assert.assertEquals(3, TestBatchReorderer.countBatches(plan, dispatcher, Integer.MAX_VALUE));
+        Assert.assertEquals(2, TestBatchReorderer.countBatches(result, dispatcher, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void groupTestsWithEqualAnnotations() {
+        List<TestPlanElement> plan = Arrays.asList(test("c1", CLEAR_DATA), test("d1", CLEAR_CACHE),
+                test("c2", CLEAR_DATA));
+
+        List<TestPlanElement> result = reorderer.reorder(plan, dispatcher, Integer.MAX_VALUE);
+
+        Assert.assertEquals(Arrays.asList("c1", "c2", "d1"), names(result));
+    }
+
+    @Test
+    public void keepBatchSize() {
+        List<TestPlanElement> plan = Arrays.asList(test("a1", null), test("a2", null),
+                test("a3", null), test("c1", CLEAR_DATA), test("c2", CLEAR_DATA));
+
+        List<TestPlanElement> result = reorderer.reorder(plan, dispatcher, 2);
+
+        Assert.assertEquals(Arrays.asList("c1", "a1", "c2", "a2", "a3"), names(result));
+        Assert.assertEquals(4, TestBatchReorderer.countBatches(plan, dispatcher, 2));
+        Assert.assertEquals(3, TestBatchReorderer.countBatches(result, dispatcher, 2));
+    }
+
+    @Test
+    public void returnSamePlanWithoutCommands() {
+        List<TestPlanElement> plan = Arrays.asList(test("a1", null), test("a2", null));
+
+        Assert.assertSame(plan, reorderer.reorder(plan, dispatcher, Integer.MAX_VALUE));
+    }
+
+    private static TestPlanElement test(String name, List<String> annotations) {
+        return new TestPlanElement("", name, "com.test.Test") {
+            @Override
+            public List<String> getAnnotations() {
+                return annotations != null ? annotations : Collections.<String>emptyList();
+            }
+        };
+    }
+
+    private static List<String> names(List<TestPlanElement> tests) {
+        ArrayList<String> result = new ArrayList<>();
+        for (TestPlanElement test : tests) {
+            result.add(test.getMethodName());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,227 @@
+package com.github.grishberg.tests.adb;
+
+import com.github.grishberg.tests.ShellCommandResult;
+import com.github.grishberg.tests.commands.ExecuteCommandException;
+import com.github.grishberg.tests.common.RunnerLogger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for {@link AdbShellSession}. Fake adb server executes commands with local shell.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class AdbShellSessionTest {
+    private static final String SERIAL = "emulator-5554";
+    @Mock
+    RunnerLogger logger;
+    private FakeAdbServer server;
+    private AdbShellSession session;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeAdbServer(true);
+        session = new AdbShellSession(SERIAL, server.getAddress(), logger);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        session.close();
+        server.close();
+    }
+
+    @Test
+    public void executeCommandsInOneConnection() throws Exception {
+        ShellCommandResult first = session.execute("echo first", 10, TimeUnit.SECONDS);
+        ShellCommandResult second = session.execute("echo second; exit 3", 10, TimeUnit.SECONDS);
+
+        Assert.assertEquals("first\n", first.getOutput());
+        Assert.assertEquals(0, first.getExitCode());
+        Assert.assertEquals("second\n", second.getOutput());
+        Assert.assertEquals(3, second.getExitCode());
+        Assert.assertEquals(1, server.getConnectionsCount());
+        Assert.assertEquals("host:transport:" + SERIAL, server.getTransportRequest());
+    }
+
+    @Test
+    public void keepSentinelAfterBackgroundCommandAndComment() throws Exception {
+        ShellCommandResult background = session.execute("sleep 0 &", 10, TimeUnit.SECONDS);
+        ShellCommandResult commented = session.execute("echo second # comment", 10, TimeUnit.SECONDS);
+
+        Assert.assertEquals(0, background.getExitCode());
+        Assert.assertEquals("second\n", commented.getOutput());
+    }
+
+    @Test
+    public void reconnectWhenSessionIsClosed() throws Exception {
+        session.execute("echo first", 10, TimeUnit.SECONDS);
+        server.closeConnections();
+
+        ShellCommandResult result = session.execute("echo second", 10, TimeUnit.SECONDS);
+
+        Assert.assertEquals("second\n", result.getOutput());
+        Assert.assertEquals(2, server.getConnectionsCount());
+    }
+
+    @Test
+    public void reopenSessionAfterTimeout() throws Exception {
+        try {
+            session.execute("sleep 5", 200, TimeUnit.MILLISECONDS);
+            Assert.fail();
+        } catch (ExecuteCommandException e) {
+            // expected
+        }
+
+        ShellCommandResult result = session.execute("echo next", 10, TimeUnit.SECONDS);
+
+        Assert.assertEquals("next\n", result.getOutput());
+        Assert.assertEquals(2, server.getConnectionsCount());
+    }
+
+    @Test
+    public void notSupportedWhenShellServiceIsRefused() throws Exception {
+        server.close();
+        server = new FakeAdbServer(false);
+        session = new AdbShellSession(SERIAL, server.getAddress(), logger);
+
+        try {
+            session.execute("echo first", 10, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecuteCommandException e) {
+            // expected
+        }
+
+        Assert.assertFalse(session.isSupported());
+    }
+
+    /**
+     * Accepts adb requests and connects shell service to local sh process.
+     */
+    private static class FakeAdbServer {
+        private final ServerSocket serverSocket;
+        private final boolean shellSupported;
+        private final AtomicInteger connectionsCount = new AtomicInteger();
+        private volatile String transportRequest;
+        private volatile Socket lastConnection;
+        private volatile Process lastProcess;
+
+        FakeAdbServer(boolean shellSupported) throws IOException {
+            this.shellSupported = shellSupported;
+            serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+            Thread thread = new Thread(this::acceptConnections);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        InetSocketAddress getAddress() {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+        }
+
+        int getConnectionsCount() {
+            return connectionsCount.get();
+        }
+
+        String getTransportRequest() {
+            return transportRequest;
+        }
+
+        void closeConnections() throws IOException {
+            lastProcess.destroy();
+            lastConnection.close();
+        }
+
+        void close() throws IOException {
+            serverSocket.close();
+            if (lastProcess != null) {
+                lastProcess.destroy();
+            }
+        }
+
+        private void acceptConnections() {
+            try {
+                while (true) {
+                    Socket socket = serverSocket.accept();
+                    connectionsCount.incrementAndGet();
+                    lastConnection = socket;
+                    serve(socket);
+                }
+            } catch (IOException e) {
+                // server is closed
+            }
+        }
+
+        private void serve(Socket socket) throws IOException {
+            InputStream in = socket.getInputStream();
+            OutputStream out = socket.getOutputStream();
+            transportRequest = readRequest(in);
+            out.write("OKAY".getBytes(StandardCharsets.US_ASCII));
+            readRequest(in);
+            if (!shellSupported) {
+                out.write("FAIL0007closed.".getBytes(StandardCharsets.US_ASCII));
+                socket.close();
+                return;
+            }
+            out.write("OKAY".getBytes(StandardCharsets.US_ASCII));
+            Process process = new ProcessBuilder("sh").redirectErrorStream(true).start();
+            lastProcess = process;
+            pipe(in, process.getOutputStream());
+            pipe(process.getInputStream(), out);
+        }
+
+        private static String readRequest(InputStream in) throws IOException {
+            int length = Integer.parseInt(new String(readBytes(in, 4), StandardCharsets.US_ASCII), 16);
+            return new String(readBytes(in, length), StandardCharsets.UTF_8);
+        }
+
+        private static byte[] readBytes(InputStream in, int length) throws IOException {
+            byte[] bytes = new byte[length];
+            int offset = 0;
+            while (offset < length) {
+                int read = in.read(bytes, offset, length - offset);
+                if (read < 0) {
+                    throw new IOException("closed");
+                }
+                offset += read;
+            }
+            return bytes;
+        }
+
+        private static void pipe(InputStream in, OutputStream out) {
+            Thread thread = new Thread(() -> {
+                byte[] buffer = new byte[1024];
+                try {
+                    int read;
+                    while ((read = in.read(buffer)) >= 0) {
+                        out.write(buffer, 0, read);
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    // connection is closed
+                } finally {
+                    try {
+                        out.close();
+                    } catch (IOException e) {
+                        // already closed
+                    }
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+}
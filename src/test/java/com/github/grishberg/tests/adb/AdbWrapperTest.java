@@ -0,0 +1,81 @@
+package com.github.grishberg.tests.adb;
+
+import com.android.ddmlib.IDevice;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link AdbWrapper}.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class AdbWrapperTest {
+    @Mock
+    IDevice device;
+    @Mock
+    OnlineDeviceListener listener;
+    private final AdbWrapper adbWrapper = new AdbWrapper();
+
+    @Before
+    public void setUp() {
+        adbWrapper.setOnlineDeviceListener(listener);
+    }
+
+    @Test
+    public void notifyWhenDeviceConnectedOnline() {
+        when(device.getSerialNumber()).thenReturn("serial");
+        when(device.isOnline()).thenReturn(true);
+
+        adbWrapper.deviceConnected(device);
+
+        verify(listener).onDeviceOnline(device);
+    }
+
+    @Test
+    public void notifyWhenDeviceBecameOnline() {
+        when(device.getSerialNumber()).thenReturn("serial");
+        when(device.isOnline()).thenReturn(false, true);
+
+        adbWrapper.deviceConnected(device);
+        adbWrapper.deviceChanged(device, IDevice.CHANGE_STATE);
+
+        verify(listener).onDeviceOnline(device);
+    }
+
+    @Test
+    public void dontNotifyTwiceForSameDevice() {
+        when(device.getSerialNumber()).thenReturn("serial");
+        when(device.isOnline()).thenReturn(true);
+
+        adbWrapper.deviceConnected(device);
+        adbWrapper.deviceChanged(device, IDevice.CHANGE_STATE);
+
+        verify(listener, times(1)).onDeviceOnline(device);
+    }
+
+    @Test
+    public void notifyWhenDeviceReconnected() {
+        when(device.getSerialNumber()).thenReturn("serial");
+        when(device.isOnline()).thenReturn(true);
+
+        adbWrapper.deviceConnected(device);
+        adbWrapper.deviceDisconnected(device);
+        adbWrapper.deviceConnected(device);
+
+        verify(listener, times(2)).onDeviceOnline(device);
+    }
+
+    @Test
+    public void ignoreOtherChanges() {
+        adbWrapper.deviceChanged(device, IDevice.CHANGE_CLIENT_LIST);
+
+        verify(listener, never()).onDeviceOnline(device);
+    }
+}
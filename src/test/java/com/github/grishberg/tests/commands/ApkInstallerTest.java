@@ -0,0 +1,77 @@
+package com.github.grishberg.tests.commands;
+
+import com.github.grishberg.tests.ConnectedDeviceWrapper;
+import com.github.grishberg.tests.TestRunnerContext;
+import com.github.grishberg.tests.common.RunnerLogger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link ApkInstaller}.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ApkInstallerTest {
+    @Mock
+    RunnerLogger logger;
+    @Mock
+    ConnectedDeviceWrapper deviceWrapper;
+    @Mock
+    TestRunnerContext context;
+    private final File appApk = new File("/app.apk");
+    private final File testApk = new File("/test.apk");
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private ApkInstaller installer;
+
+    @Before
+    public void setUp() {
+        when(context.getLogger()).thenReturn(logger);
+        installer = new ApkInstaller(Arrays.asList(new InstallApkCommand(appApk),
+                new InstallApkCommand(testApk)), executor);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void installAllApkFiles() throws Exception {
+        installer.install(deviceWrapper, context).get(1, TimeUnit.SECONDS);
+
+        verify(deviceWrapper).installPackage(appApk.getAbsolutePath(), true, "");
+        verify(deviceWrapper).installPackage(testApk.getAbsolutePath(), true, "");
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void failWhenApkIsNotInstalled() throws Exception {
+        doThrow(new RuntimeException("install failed"))
+                .when(deviceWrapper).installPackage(anyString(), anyBoolean(), anyString());
+
+        installer.install(deviceWrapper, context).get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void stopExecutorOnShutdown() {
+        installer.shutdown();
+
+        Assert.assertTrue(executor.isShutdown());
+    }
+}
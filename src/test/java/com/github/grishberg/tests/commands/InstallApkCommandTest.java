@@ -1,7 +1,9 @@
 package com.github.grishberg.tests.commands;
 
+import com.android.ddmlib.InstallException;
 import com.github.grishberg.tests.ConnectedDeviceWrapper;
 import com.github.grishberg.tests.TestRunnerContext;
+import com.github.grishberg.tests.common.FileHelper;
 import com.github.grishberg.tests.common.RunnerLogger;
 import org.junit.Before;
 import org.junit.Test;
@@ -10,7 +12,15 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -19,6 +29,8 @@ import static org.mockito.Mockito.when;
  */
 @RunWith(MockitoJUnitRunner.class)
 public class InstallApkCommandTest {
+    private static final String PACKAGE = "com.test.app";
+    private static final String DEVICE_APK_PATH = "/data/app/com.test.app-1/base.apk";
     @Mock
     RunnerLogger logger;
     @Mock
@@ -42,4 +54,47 @@ public class InstallApkCommandTest {
                 "InstallApkCommand: install file {}", apkFile.getName());
         verify(deviceWrapper).installPackage(apkFile.getAbsolutePath(), true, "");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void retryInstallWhenFailed() throws Exception {
+        doThrow(new InstallException("install failed")).doNothing()
+                .when(deviceWrapper).installPackage(apkFile.getAbsolutePath(), true, "");
+
+        command.execute(deviceWrapper, context);
+
+        verify(deviceWrapper, times(2)).installPackage(apkFile.getAbsolutePath(), true, "");
+    }
+
+    @Test
+    public void skipInstallWhenDeviceHasSameApk() throws Exception {
+        File installedApk = createApk();
+        when(deviceWrapper.executeShellCommandAndReturnOutput("pm path " + PACKAGE))
+                .thenReturn("package:" + DEVICE_APK_PATH + "\n");
+        when(deviceWrapper.executeShellCommandAndReturnOutput("md5sum " + DEVICE_APK_PATH))
+                .thenReturn(FileHelper.hashFile(installedApk, "MD5") + "  " + DEVICE_APK_PATH + "\n");
+
+        new InstallApkCommand(installedApk, PACKAGE).execute(deviceWrapper, context);
+
+        verify(deviceWrapper, never()).installPackage(anyString(), anyBoolean(), anyString());
+    }
+
+    @Test
+    public void installWhenDeviceHasOtherApk() throws Exception {
+        File installedApk = createApk();
+        when(deviceWrapper.executeShellCommandAndReturnOutput("pm path " + PACKAGE))
+                .thenReturn("package:" + DEVICE_APK_PATH + "\n");
+        when(deviceWrapper.executeShellCommandAndReturnOutput("md5sum " + DEVICE_APK_PATH))
+                .thenReturn("d41d8cd98f00b204e9800998ecf8427e  " + DEVICE_APK_PATH + "\n");
+
+        new InstallApkCommand(installedApk, PACKAGE).execute(deviceWrapper, context);
+
+        verify(deviceWrapper).installPackage(installedApk.getAbsolutePath(), true, "");
+    }
+
+    private File createApk() throws IOException {
+        File apk = Files.createTempFile("app", ".apk").toFile();
+        apk.deleteOnExit();
+        Files.write(apk.toPath(), "apk content".getBytes(StandardCharsets.UTF_8));
+        return apk;
+    }
+}
@@ -1,12 +1,17 @@
 package com.github.grishberg.tests.commands;
 
 import com.github.grishberg.tests.ConnectedDeviceWrapper;
+import com.github.grishberg.tests.ShellCommandBatch;
 import com.github.grishberg.tests.TestRunnerContext;
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.util.Arrays;
+
 import static org.mockito.Mockito.verify;
 
 /**
@@ -25,8 +30,10 @@ public class SetAnimationSpeedCommandTest {
 
         command.execute(deviceWrapper, context);
 
-        verify(deviceWrapper).executeShellCommand("settings put global window_animation_scale 0");
-        verify(deviceWrapper).executeShellCommand("settings put global transition_animation_scale 1");
-        verify(deviceWrapper).executeShellCommand("settings put global animator_duration_scale 2");
+        ArgumentCaptor<ShellCommandBatch> batch = ArgumentCaptor.forClass(ShellCommandBatch.class);
+        verify(deviceWrapper).executeShellCommands(batch.capture());
+        Assert.assertEquals(Arrays.asList("settings put global window_animation_scale 0",
+                "settings put global transition_animation_scale 1",
+                "settings put global animator_duration_scale 2"), batch.getValue().getCommands());
     }
 }
\ No newline at end of file
@@ -33,6 +33,8 @@ import static org.mockito.Mockito.when;
 @RunWith(MockitoJUnitRunner.class)
 public class SingleInstrumentalTestCommandTest {
     private static final String TEST_COMMAND = "am instrument -w -r   -e class com.test.TestClass#test1 null/android.test.InstrumentationTestRunner";
+    private static final String TEST_FILE = "/data/local/tmp/null_test_prefix.txt";
+    private static final String TEST_FILE_COMMAND = "am instrument -w -r   -e testFile " + TEST_FILE + " null/android.test.InstrumentationTestRunner";
     private static final String TEST_COVERAGE_COMMAND = "am instrument -w -r   -e coverageFile /data/data/null/coverage.ec -e class com.test.TestClass#test1 -e coverage true null/android.test.InstrumentationTestRunner";
     @Mock
     ConnectedDeviceWrapper deviceWrapper;
@@ -84,6 +86,20 @@ public class SingleInstrumentalTestCommandTest {
         verifyExecuteDeviceCommand(TEST_COVERAGE_COMMAND);
     }
 
+    @Test
+    public void pushTestFileWhenEnabled() throws Exception {
+        ext.setTestFileEnabled(true);
+        testElements.add(new TestPlanElement("", "test1", "com.test.TestClass"));
+        SingleInstrumentalTestCommand cmd = new SingleInstrumentalTestCommand(project,
+                "test_prefix", args, testElements);
+
+        cmd.execute(deviceWrapper, context);
+
+        verify(deviceWrapper).pushFile(anyString(), eq(TEST_FILE));
+        verifyExecuteDeviceCommand(TEST_FILE_COMMAND);
+        verify(deviceWrapper).executeShellCommand("rm -f " + TEST_FILE);
+    }
+
     @Test
     public void pullCoverageFileWhenEnabledCoverage() throws Exception {
         ext.setCoverageEnabled(true);
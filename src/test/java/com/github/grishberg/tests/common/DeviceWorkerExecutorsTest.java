@@ -0,0 +1,28 @@
+package com.github.grishberg.tests.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link DeviceWorkerExecutors}.
+ */
+@RunWith(JUnit4.class)
+public class DeviceWorkerExecutorsTest {
+    @Test
+    public void executeTaskInWorkerThread() throws Exception {
+        ExecutorService executor = DeviceWorkerExecutors.newExecutor(2);
+        try {
+            Future<String> threadName = executor.submit(() -> Thread.currentThread().getName());
+
+            Assert.assertTrue(threadName.get(1, TimeUnit.SECONDS).startsWith("device-worker-"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.grishberg.tests.planner;
+
+import com.github.grishberg.tests.ConnectedDeviceWrapper;
+import com.github.grishberg.tests.commands.ExecuteCommandException;
+import com.github.grishberg.tests.common.RunnerLogger;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.IOException;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link ArgumentLimitProbe}.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ArgumentLimitProbeTest {
+    private static final int DEVICE_LIMIT = 20000;
+    @Mock
+    RunnerLogger logger;
+    @Mock
+    ConnectedDeviceWrapper device;
+    private ArgumentLimitProbe probe;
+
+    @Before
+    public void setUp() throws Exception {
+        when(device.getFingerprint()).thenReturn("fingerprint");
+        probe = new ArgumentLimitProbe(logger);
+    }
+
+    @Test
+    public void findLimitOfDevice() throws Exception {
+        when(device.executeShellCommandWithoutSession(anyString())).thenAnswer(invocation -> {
+            String command = invocation.getArgument(0);
+            if (command.length() > DEVICE_LIMIT) {
+                throw new ExecuteCommandException("command is too long", new IOException());
+            }
+            return "ok\n";
+        });
+
+        int limit = probe.getCommandLimit(device);
+
+        Assert.assertTrue(limit <= DEVICE_LIMIT);
+        Assert.assertTrue(limit > DEVICE_LIMIT - 1024);
+    }
+
+    @Test
+    public void cacheLimitByFingerprint() throws Exception {
+        when(device.executeShellCommandWithoutSession(anyString())).thenReturn("ok");
+
+        probe.getCommandLimit(device);
+        int limit = probe.getCommandLimit(device);
+
+        Assert.assertEquals(ArgumentLimitProbe.MAX_COMMAND_LENGTH, limit);
+        verify(device, times(1)).executeShellCommandWithoutSession(anyString());
+    }
+
+    @Test
+    public void returnDefaultLimitWhenProbeFailed() throws Exception {
+        when(device.executeShellCommandWithoutSession(anyString())).thenReturn("/system/bin/sh: error");
+
+        Assert.assertEquals(TestPlanSplitter.STRING_LIMIT, probe.getCommandLimit(device));
+    }
+
+    @Test
+    public void cacheDefaultLimitWhenProbeFailed() throws Exception {
+        when(device.executeShellCommandWithoutSession(anyString())).thenReturn("/system/bin/sh: error");
+
+        probe.getCommandLimit(device);
+        int limit = probe.getCommandLimit(device);
+
+        Assert.assertEquals(TestPlanSplitter.STRING_LIMIT, limit);
+        verify(device, times(2)).executeShellCommandWithoutSession(anyString());
+    }
+}
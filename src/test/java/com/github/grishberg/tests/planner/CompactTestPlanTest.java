@@ -0,0 +1,116 @@
+package com.github.grishberg.tests.planner;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Tests for {@link CompactTestPlan}.
+ */
+@RunWith(JUnit4.class)
+public class CompactTestPlanTest {
+    private static final String TEST_ID = "AndroidJUnitRunner";
+
+    @Test
+    public void buildTreeForTests() {
+        CompactTestPlan plan = CompactTestPlan.of(provideTests());
+
+        Assert.assertEquals(4, plan.getTestCount());
+        int method = plan.getTestNode(0);
+        int classNode = plan.getParent(method);
+        Assert.assertEquals(NodeType.METHOD, plan.getType(method));
+        Assert.assertEquals(NodeType.CLASS, plan.getType(classNode));
+        Assert.assertEquals("Test1", plan.getName(classNode));
+        Assert.assertEquals(NodeType.PACKAGE, plan.getType(plan.getParent(classNode)));
+        Assert.assertEquals("com.test.Test1#test1", plan.getAmInstrumentCommand(method));
+        Assert.assertEquals("com.test", plan.getAmInstrumentCommand(plan.getParent(classNode)));
+    }
+
+    @Test
+    public void shareClassNodeForMethodsOfSameClass() {
+        CompactTestPlan plan = CompactTestPlan.of(provideTests());
+
+        Assert.assertEquals(plan.getParent(plan.getTestNode(0)), plan.getParent(plan.getTestNode(1)));
+    }
+
+    @Test
+    public void restoreTestMethods() {
+        List<TestPlanElement> tests = provideTests();
+        CompactTestPlan plan = CompactTestPlan.of(tests);
+
+        List<TestPlanElement> restored = plan.getTestMethods();
+
+        Assert.assertEquals(tests, restored);
+        Assert.assertEquals(Arrays.asList("flag=1"), restored.get(0).getFlags());
+        Assert.assertEquals("feature", restored.get(0).getFeature());
+        Assert.assertEquals(Arrays.asList("com.test.Smoke"), restored.get(0).getAnnotations());
+    }
+
+    @Test
+    public void createNewViewOnEachAccess() {
+        List<TestPlanElement> tests = provideTests();
+        List<TestPlanElement> views = CompactTestPlan.of(tests).testMethodViews();
+
+        Assert.assertEquals(tests, views);
+        Assert.assertNotSame(views.get(0), views.get(0));
+    }
+
+    @Test
+    public void compoundElementsWithoutExclusionsAreRootClasses() {
+        CompactTestPlan plan = CompactTestPlan.of(provideTests());
+
+        List<TestPlanElement> compound = plan.getCompoundElements(new BitSet());
+
+        Assert.assertEquals(Arrays.asList("com.test.Test1", "com.test.Test2", "com.other.Test3"),
+                commands(compound));
+    }
+
+    @Test
+    public void compoundElementsWithExcludedMethod() {
+        CompactTestPlan plan = CompactTestPlan.of(provideTests());
+        BitSet excluded = new BitSet();
+        excluded.set(plan.getTestNode(0));
+
+        List<TestPlanElement> compound = plan.getCompoundElements(excluded);
+
+        Assert.assertEquals(Arrays.asList("com.test.Test1#test2", "com.test.Test2", "com.other.Test3"),
+                commands(compound));
+        Assert.assertEquals(3, plan.getCompoundElements(new BitSet()).size());
+    }
+
+    @Test
+    public void excludedClassExcludesItsMethods() {
+        CompactTestPlan plan = CompactTestPlan.of(provideTests());
+        BitSet excluded = new BitSet();
+        excluded.set(plan.getParent(plan.getTestNode(0)));
+
+        List<TestPlanElement> compound = plan.getCompoundElements(excluded);
+
+        Assert.assertEquals(Arrays.asList("com.test.Test2", "com.other.Test3"), commands(compound));
+    }
+
+    private static List<String> commands(List<TestPlanElement> elements) {
+        ArrayList<String> result = new ArrayList<>();
+        for (TestPlanElement element : elements) {
+            result.add(element.getAmInstrumentCommand());
+        }
+        return result;
+    }
+
+    private static List<TestPlanElement> provideTests() {
+        TestPlanElement first = new TestPlanElement(TEST_ID, "test1", "com.test.Test1");
+        first.addAnnotations(Arrays.asList("com.test.Smoke"));
+        first.setFlags(Arrays.asList("flag=1"));
+        first.setFeature("feature");
+        return new ArrayList<>(Arrays.asList(first,
+                new TestPlanElement(TEST_ID, "test2", "com.test.Test1"),
+                new TestPlanElement(TEST_ID, "test1", "com.test.Test2"),
+                new TestPlanElement(TEST_ID, "test1", "com.other.Test3")));
+    }
+}
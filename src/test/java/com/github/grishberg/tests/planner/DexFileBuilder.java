@@ -0,0 +1,198 @@
+package com.github.grishberg.tests.planner;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds minimal dex file with annotated classes and methods for tests.
+ */
+class DexFileBuilder {
+    static final int ACC_PUBLIC = 0x1;
+    static final int ACC_ABSTRACT = 0x400;
+    private static final int HEADER_SIZE = 0x70;
+    private final Map<String, Integer> strings = new LinkedHashMap<>();
+    private final Map<String, Integer> types = new LinkedHashMap<>();
+    private final List<int[]> methods = new ArrayList<>();
+    private final List<ClassDef> classes = new ArrayList<>();
+
+    DexFileBuilder addClass(String name, String superName, int accessFlags) {
+        classes.add(new ClassDef(type(name), superName != null ? type(superName) : -1, accessFlags));
+        return this;
+    }
+
+    /**
+     * Adds runtime visible annotations to last added class.
+     */
+    DexFileBuilder addClassAnnotations(String... annotations) {
+        ClassDef classDef = classes.get(classes.size() - 1);
+        classDef.classAnnotations = new int[annotations.length];
+        for (int i = 0; i < annotations.length; i++) {
+            classDef.classAnnotations[i] = type(annotations[i]);
+        }
+        return this;
+    }
+
+    /**
+     * Adds method with runtime visible annotations to last added class.
+     */
+    DexFileBuilder addMethod(String methodName, String... annotations) {
+        ClassDef classDef = classes.get(classes.size() - 1);
+        methods.add(new int[]{classDef.typeIdx, string(methodName)});
+        int[] annotationTypes = new int[annotations.length];
+        for (int i = 0; i < annotations.length; i++) {
+            annotationTypes[i] = type(annotations[i]);
+        }
+        classDef.methods.add(new int[]{methods.size() - 1});
+        classDef.annotations.add(annotationTypes);
+        return this;
+    }
+
+    byte[] build() {
+        int stringIdsOff = HEADER_SIZE;
+        int typeIdsOff = stringIdsOff + strings.size() * 4;
+        int methodIdsOff = typeIdsOff + types.size() * 4;
+        int classDefsOff = methodIdsOff + methods.size() * 8;
+        int dataOff = classDefsOff + classes.size() * 32;
+
+        ByteBuffer data = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        data.position(dataOff);
+        int[] stringDataOffsets = new int[strings.size()];
+        int index = 0;
+        for (String value : strings.keySet()) {
+            stringDataOffsets[index++] = data.position();
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeUleb128(data, value.length());
+            data.put(bytes);
+            data.put((byte) 0);
+        }
+        int[] directoryOffsets = new int[classes.size()];
+        for (int i = 0; i < classes.size(); i++) {
+            directoryOffsets[i] = writeAnnotationsDirectory(data, classes.get(i));
+        }
+        int fileSize = data.position();
+
+        data.position(0);
+        data.put("dex\n035\0".getBytes(StandardCharsets.US_ASCII));
+        data.putInt(0x20, fileSize);
+        data.putInt(0x24, HEADER_SIZE);
+        data.putInt(0x28, 0x12345678);
+        data.putInt(0x38, strings.size());
+        data.putInt(0x3C, stringIdsOff);
+        data.putInt(0x40, types.size());
+        data.putInt(0x44, typeIdsOff);
+        data.putInt(0x58, methods.size());
+        data.putInt(0x5C, methodIdsOff);
+        data.putInt(0x60, classes.size());
+        data.putInt(0x64, classDefsOff);
+        for (int i = 0; i < stringDataOffsets.length; i++) {
+            data.putInt(stringIdsOff + i * 4, stringDataOffsets[i]);
+        }
+        index = 0;
+        for (int stringIdx : types.values()) {
+            data.putInt(typeIdsOff + index++ * 4, stringIdx);
+        }
+        for (int i = 0; i < methods.size(); i++) {
+            data.putShort(methodIdsOff + i * 8, (short) methods.get(i)[0]);
+            data.putInt(methodIdsOff + i * 8 + 4, methods.get(i)[1]);
+        }
+        for (int i = 0; i < classes.size(); i++) {
+            ClassDef classDef = classes.get(i);
+            int off = classDefsOff + i * 32;
+            data.putInt(off, classDef.typeIdx);
+            data.putInt(off + 4, classDef.accessFlags);
+            data.putInt(off + 8, classDef.superTypeIdx);
+            data.putInt(off + 20, directoryOffsets[i]);
+        }
+        byte[] result = new byte[fileSize];
+        System.arraycopy(data.array(), 0, result, 0, fileSize);
+        return result;
+    }
+
+    private int writeAnnotationsDirectory(ByteBuffer data, ClassDef classDef) {
+        if (classDef.methods.isEmpty() && classDef.classAnnotations.length == 0) {
+            return 0;
+        }
+        int classSetOffset = classDef.classAnnotations.length > 0
+                ? writeAnnotationSet(data, classDef.classAnnotations) : 0;
+        int[] setOffsets = new int[classDef.methods.size()];
+        for (int i = 0; i < classDef.methods.size(); i++) {
+            setOffsets[i] = writeAnnotationSet(data, classDef.annotations.get(i));
+        }
+        int directoryOff = data.position();
+        data.putInt(classSetOffset);
+        data.putInt(0);
+        data.putInt(classDef.methods.size());
+        data.putInt(0);
+        for (int i = 0; i < classDef.methods.size(); i++) {
+            data.putInt(classDef.methods.get(i)[0]);
+            data.putInt(setOffsets[i]);
+        }
+        return directoryOff;
+    }
+
+    private static int writeAnnotationSet(ByteBuffer data, int[] annotationTypes) {
+        int[] itemOffsets = new int[annotationTypes.length];
+        for (int j = 0; j < annotationTypes.length; j++) {
+            itemOffsets[j] = data.position();
+            data.put((byte) 1);
+            writeUleb128(data, annotationTypes[j]);
+            writeUleb128(data, 0);
+        }
+        align(data);
+        int setOffset = data.position();
+        data.putInt(itemOffsets.length);
+        for (int itemOffset : itemOffsets) {
+            data.putInt(itemOffset);
+        }
+        return setOffset;
+    }
+
+    private int string(String value) {
+        return strings.computeIfAbsent(value, k -> strings.size());
+    }
+
+    private int type(String className) {
+        int stringIdx = string("L" + className.replace('.', '/') + ";");
+        Integer typeIdx = types.get(className);
+        if (typeIdx == null) {
+            typeIdx = types.size();
+            types.put(className, stringIdx);
+            return typeIdx;
+        }
+        return new ArrayList<>(types.keySet()).indexOf(className);
+    }
+
+    private static void align(ByteBuffer data) {
+        while (data.position() % 4 != 0) {
+            data.put((byte) 0);
+        }
+    }
+
+    private static void writeUleb128(ByteBuffer data, int value) {
+        while ((value & ~0x7f) != 0) {
+            data.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        data.put((byte) value);
+    }
+
+    private static class ClassDef {
+        final int typeIdx;
+        final int superTypeIdx;
+        final int accessFlags;
+        final List<int[]> methods = new ArrayList<>();
+        final List<int[]> annotations = new ArrayList<>();
+        int[] classAnnotations = new int[0];
+
+        ClassDef(int typeIdx, int superTypeIdx, int accessFlags) {
+            this.typeIdx = typeIdx;
+            this.superTypeIdx = superTypeIdx;
+            this.accessFlags = accessFlags;
+        }
+    }
+}
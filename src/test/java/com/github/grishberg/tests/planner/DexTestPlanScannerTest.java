@@ -0,0 +1,120 @@
+package com.github.grishberg.tests.planner;
+
+import com.github.grishberg.tests.common.RunnerLogger;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Tests for {@link DexTestPlanScanner}.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class DexTestPlanScannerTest {
+    private static final String TEST = "org.junit.Test";
+    private static final String CLEAR_DATA = "com.github.grishberg.tests.annotations.ClearData";
+    private static final String LARGE_TEST = "android.support.test.filters.LargeTest";
+    private static final String BASE_TEST = "com.pkg1.BaseTest";
+    private static final String TEST_1 = "com.pkg1.Test1";
+    private static final String TEST_2 = "com.pkg2.Test2";
+    @Mock
+    RunnerLogger logger;
+    private File testApk;
+    private DexTestPlanScanner scanner;
+
+    @Before
+    public void setUp() throws Exception {
+        byte[] firstDex = new DexFileBuilder()
+                .addClass(BASE_TEST, "java.lang.Object", DexFileBuilder.ACC_PUBLIC | DexFileBuilder.ACC_ABSTRACT)
+                .addMethod("baseTest", TEST)
+                .addClass(TEST_1, BASE_TEST, DexFileBuilder.ACC_PUBLIC)
+                .addMethod("test1", TEST, CLEAR_DATA)
+                .addMethod("helper", CLEAR_DATA)
+                .build();
+        byte[] secondDex = new DexFileBuilder()
+                .addClass(TEST_2, "java.lang.Object", DexFileBuilder.ACC_PUBLIC)
+                .addClassAnnotations(LARGE_TEST)
+                .addMethod("test2", TEST)
+                .build();
+        testApk = new File(Files.createTempDirectory("apk").toFile(), "test.apk");
+        testApk.deleteOnExit();
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(testApk))) {
+            zip.putNextEntry(new ZipEntry("classes.dex"));
+            zip.write(firstDex);
+            zip.closeEntry();
+            zip.putNextEntry(new ZipEntry("classes2.dex"));
+            zip.write(secondDex);
+            zip.closeEntry();
+        }
+        scanner = new DexTestPlanScanner(logger);
+    }
+
+    @Test
+    public void findTestMethodsInAllDexFiles() throws Exception {
+        List<TestPlanElement> plan = scanner.scan(testApk, new HashMap<>());
+
+        Assert.assertEquals(3, plan.size());
+        Assert.assertEquals(new TestPlanElement("AndroidJUnitRunner", "test1", TEST_1), plan.get(0));
+        Assert.assertEquals(Arrays.asList(TEST, CLEAR_DATA), plan.get(0).getAnnotations());
+        Assert.assertEquals(new TestPlanElement("AndroidJUnitRunner", "baseTest", TEST_1), plan.get(1));
+        Assert.assertEquals(new TestPlanElement("AndroidJUnitRunner", "test2", TEST_2), plan.get(2));
+    }
+
+    @Test
+    public void applyClassFilter() throws Exception {
+        HashMap<String, String> args = new HashMap<>();
+        args.put("class", TEST_1 + "#test1," + TEST_2);
+
+        List<TestPlanElement> plan = scanner.scan(testApk, args);
+
+        Assert.assertEquals(2, plan.size());
+        Assert.assertEquals("test1", plan.get(0).getMethodName());
+        Assert.assertEquals("test2", plan.get(1).getMethodName());
+    }
+
+    @Test
+    public void applyPackageAndAnnotationFilters() throws Exception {
+        HashMap<String, String> args = new HashMap<>();
+        args.put("package", "com.pkg1");
+        args.put("notAnnotation", CLEAR_DATA);
+
+        List<TestPlanElement> plan = scanner.scan(testApk, args);
+
+        Assert.assertEquals(1, plan.size());
+        Assert.assertEquals("baseTest", plan.get(0).getMethodName());
+    }
+
+    @Test
+    public void applyAnnotationFilterToClassAnnotations() throws Exception {
+        HashMap<String, String> args = new HashMap<>();
+        args.put("annotation", LARGE_TEST);
+
+        List<TestPlanElement> plan = scanner.scan(testApk, args);
+
+        Assert.assertEquals(1, plan.size());
+        Assert.assertEquals("test2", plan.get(0).getMethodName());
+    }
+
+    @Test
+    public void applyNotAnnotationFilterToClassAnnotations() throws Exception {
+        HashMap<String, String> args = new HashMap<>();
+        args.put("notAnnotation", LARGE_TEST);
+
+        List<TestPlanElement> plan = scanner.scan(testApk, args);
+
+        Assert.assertEquals(2, plan.size());
+        Assert.assertEquals(TEST_1, plan.get(0).getClassName());
+        Assert.assertEquals(TEST_1, plan.get(1).getClassName());
+    }
+}
@@ -0,0 +1,65 @@
+package com.github.grishberg.tests.planner;
+
+import com.github.grishberg.tests.exceptions.ProcessCrashedException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for {@link InstrumentOutputReceiver}.
+ */
+@RunWith(JUnit4.class)
+public class InstrumentOutputReceiverTest {
+    private final InstrumentOutputReceiver receiver = new InstrumentOutputReceiver();
+
+    @Test
+    public void parseRawOutputSplitIntoChunks() {
+        byte[] output = String.join("\r\n", getLinesForTest()).getBytes(StandardCharsets.UTF_8);
+
+        for (int offset = 0; offset < output.length; offset += 7) {
+            receiver.addOutput(output, offset, Math.min(7, output.length - offset));
+        }
+        receiver.flush();
+
+        List<TestPlanElement> elements = receiver.getTestInstances();
+        Assert.assertEquals(1, elements.size());
+        Assert.assertEquals("com.github.grishberg.annotaions.Feature", elements.get(0).getAnnotations().get(0));
+        Assert.assertEquals("flag1=value1", elements.get(0).getFlags().get(0));
+    }
+
+    @Test
+    public void logLinesWhenLoggerIsSet() {
+        ArrayList<String> loggedLines = new ArrayList<>();
+        receiver.setLogger(loggedLines::add);
+        byte[] output = "INSTRUMENTATION_STATUS: numtests=6\n".getBytes(StandardCharsets.UTF_8);
+
+        receiver.addOutput(output, 0, output.length);
+
+        Assert.assertEquals(1, loggedLines.size());
+        Assert.assertEquals("INSTRUMENTATION_STATUS: numtests=6", loggedLines.get(0));
+    }
+
+    @Test(expected = ProcessCrashedException.class)
+    public void parseAppCrashFromRawOutput() {
+        byte[] output = ("INSTRUMENTATION_RESULT: shortMsg=Process crashed.\n" +
+                "INSTRUMENTATION_CODE: 0\n").getBytes(StandardCharsets.UTF_8);
+
+        receiver.addOutput(output, 0, output.length);
+    }
+
+    private static String[] getLinesForTest() {
+        return new String[]{"INSTRUMENTATION_STATUS: id=AndroidJUnitRunner",
+                "INSTRUMENTATION_STATUS: class=com.github.grishberg.instrumentaltestwithtestgroupsordering.ExampleEspressoTest",
+                "INSTRUMENTATION_STATUS: numtests=6",
+                "INSTRUMENTATION_STATUS: test=espressoTest1",
+                "INSTRUMENTATION_STATUS_CODE: 1",
+                "INSTRUMENTATION_STATUS: flags=flag1=value1",
+                "INSTRUMENTATION_STATUS: annotations=com.github.grishberg.annotaions.Feature"
+        };
+    }
+}
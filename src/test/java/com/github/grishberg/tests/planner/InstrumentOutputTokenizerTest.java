@@ -0,0 +1,89 @@
+package com.github.grishberg.tests.planner;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for {@link InstrumentOutputTokenizer}.
+ */
+@RunWith(JUnit4.class)
+public class InstrumentOutputTokenizerTest {
+    private final List<String> events = new ArrayList<>();
+    private final List<String> values = new ArrayList<>();
+    private final InstrumentOutputTokenizer tokenizer = new InstrumentOutputTokenizer(
+            new InstrumentOutputTokenizer.Callback() {
+                @Override
+                public void onStatus(String key, String value) {
+                    events.add(key + "=" + value);
+                    values.add(value);
+                }
+
+                @Override
+                public void onResult(String key, String value) {
+                    events.add("result " + key + "=" + value);
+                }
+
+                @Override
+                public void onCode(String code) {
+                    events.add("code " + code);
+                }
+            });
+
+    @Test
+    public void skipUnknownKeysAndLines() {
+        addOutput("INSTRUMENTATION_STATUS: numtests=6\nINSTRUMENTATION_STATUS: stream=\ntext\n" +
+                "INSTRUMENTATION_STATUS: class=com.Test\n");
+
+        Assert.assertEquals(1, events.size());
+        Assert.assertEquals("class=com.Test", events.get(0));
+    }
+
+    @Test
+    public void joinLineSplitBetweenChunks() {
+        addOutput("INSTRUMENTATION_STATUS: te");
+        addOutput("st=method1\r");
+        addOutput("\nINSTRUMENTATION_CODE: -1");
+        tokenizer.flush();
+
+        Assert.assertEquals(2, events.size());
+        Assert.assertEquals("test=method1", events.get(0));
+        Assert.assertEquals("code -1", events.get(1));
+    }
+
+    @Test
+    public void reuseEqualValues() {
+        addOutput("INSTRUMENTATION_STATUS: class=com.Test\nINSTRUMENTATION_STATUS: class=com.Test\n");
+
+        Assert.assertSame(values.get(0), values.get(1));
+    }
+
+    @Test
+    public void passResultLines() {
+        addOutput("INSTRUMENTATION_RESULT: shortMsg=Process crashed.\nINSTRUMENTATION_RESULT: stream=\n");
+
+        Assert.assertEquals("result shortMsg=Process crashed.", events.get(0));
+        Assert.assertEquals("result null=null", events.get(1));
+    }
+
+    @Test
+    public void growLineBuffer() {
+        StringBuilder annotations = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            annotations.append("com.test.Annotation").append(i).append(',');
+        }
+        addOutput("INSTRUMENTATION_STATUS: annotations=" + annotations + "\n");
+
+        Assert.assertEquals("annotations=" + annotations, events.get(0));
+    }
+
+    private void addOutput(String output) {
+        byte[] bytes = output.getBytes(StandardCharsets.UTF_8);
+        tokenizer.addOutput(bytes, 0, bytes.length);
+    }
+}
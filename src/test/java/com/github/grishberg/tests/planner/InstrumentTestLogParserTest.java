@@ -74,6 +74,20 @@ public class InstrumentTestLogParserTest {
         Assert.assertEquals("flag1=value1", flags.get(0));
     }
 
+    @Test
+    public void notifyListenerAboutDiscoveredTests() {
+        TestPlanListener listener = mock(TestPlanListener.class);
+        parser.setTestPlanListener(listener);
+
+        parser.processNewLines(getLinesForTest());
+        parser.done();
+        parser.done();
+
+        List<TestPlanElement> elements = parser.getTestInstances();
+        verify(listener).onTestDiscovered(elements.get(0));
+        verify(listener).onDiscoveryFinished();
+    }
+
     @Test(expected = ProcessCrashedException.class)
     public void parserAppCrash() {
         String[] lines = new String[]{"INSTRUMENTATION_RESULT: shortMsg=Process crashed.",
@@ -7,6 +7,7 @@ import org.junit.runner.RunWith;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
@@ -42,4 +43,126 @@ public class InstrumentalTestHolderTest {
         List<TestPlanElement> elements = holder.provideCompoundTestPlan();
         Assert.assertEquals(3, elements.size());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void provideTestSelectionsWithExclusions() throws Exception {
+        holder = new InstrumentalTestHolder(list, generator, true, false, TestPlanSplitter.STRING_LIMIT);
+        holder.provideTestNodeElementsIterator().next().exclude();
+
+        List<TestSelection> selections = holder.provideTestSelections();
+
+        Assert.assertEquals(1, selections.size());
+        Assert.assertEquals(Collections.singletonList(PlannerCommon.TEST_NAME_1 + "#test1"),
+                selections.get(0).getNotClasses());
+    }
+
+    @Test
+    public void splitCompoundTestPlanByArgumentBudget() throws Exception {
+        int budget = TestSelection.argumentLength(TestSelection.CLASS,
+                Collections.singletonList(PlannerCommon.TEST_NAME_1 + "," + PlannerCommon.TEST_NAME_2));
+        holder = new InstrumentalTestHolder(list, generator, true, false, budget);
+
+        List<List<TestPlanElement>> parts = holder.splitCompoundTestPlan();
+
+        Assert.assertEquals(budget, holder.getArgumentBudget());
+        Assert.assertEquals(2, parts.size());
+        Assert.assertEquals(2, parts.get(0).size());
+        Assert.assertEquals(PlannerCommon.TEST_NAME_3, parts.get(1).get(0).getAmInstrumentCommand());
+    }
+
+    @Test
+    public void excludeTestsNotMatchedByFilter() throws Exception {
+        holder.excludeNotMatched(TestFilter.compile("class:Test2 || class:Test3"));
+
+        List<TestPlanElement> elements = holder.provideCompoundTestPlan();
+        Assert.assertEquals(2, elements.size());
+        Assert.assertEquals(PlannerCommon.TEST_NAME_2, elements.get(0).getAmInstrumentCommand());
+        Assert.assertEquals(PlannerCommon.TEST_NAME_3, elements.get(1).getAmInstrumentCommand());
+    }
+
+    @Test
+    public void excludeTestsNotMatchedBySharedIndexOnlyInOwnHolder() throws Exception {
+        TestPlanIndex sharedIndex = new TestPlanIndex(list);
+        InstrumentalTestHolder otherHolder = new InstrumentalTestHolder(copyOf(list), generator);
+        holder = new InstrumentalTestHolder(copyOf(list), generator);
+        otherHolder.provideTestNodeElementsIterator();
+
+        holder.excludeNotMatched(TestFilter.compile("class:Test2"), sharedIndex);
+
+        Assert.assertEquals(1, holder.provideCompoundTestPlan().size());
+        Assert.assertEquals(3, otherHolder.provideCompoundTestPlan().size());
+        for (TestPlanElement element : list) {
+            Assert.assertFalse(element.isExcluded());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectIndexOfOtherPlan() throws Exception {
+        holder.excludeNotMatched(TestFilter.compile("class:Test2"),
+                new TestPlanIndex(list.subList(0, 1)));
+    }
+
+    @Test
+    public void provideCompoundTestPlanFromCompactPlan() throws Exception {
+        holder = newCompactHolder();
+
+        List<TestPlanElement> elements = holder.provideCompoundTestPlan();
+
+        Assert.assertEquals(3, elements.size());
+        Assert.assertEquals(PlannerCommon.TEST_NAME_1, elements.get(0).getAmInstrumentCommand());
+    }
+
+    @Test
+    public void provideTestSelectionsWithExclusionsFromCompactPlan() throws Exception {
+        holder = newCompactHolder();
+        holder.provideTestNodeElementsIterator().next().exclude();
+
+        List<TestSelection> selections = holder.provideTestSelections();
+
+        Assert.assertEquals(1, selections.size());
+        Assert.assertEquals(Collections.singletonList(PlannerCommon.TEST_NAME_1 + "#test1"),
+                selections.get(0).getNotClasses());
+        Assert.assertEquals(4, holder.provideCompoundTestPlan().size());
+    }
+
+    @Test
+    public void excludeTestsNotMatchedByFilterFromCompactPlan() throws Exception {
+        holder = newCompactHolder();
+        holder.excludeNotMatched(TestFilter.compile("class:Test2 || class:Test3"));
+
+        List<TestPlanElement> elements = holder.provideCompoundTestPlan();
+        Assert.assertEquals(2, elements.size());
+        Assert.assertEquals(PlannerCommon.TEST_NAME_2, elements.get(0).getAmInstrumentCommand());
+        Assert.assertEquals(PlannerCommon.TEST_NAME_3, elements.get(1).getAmInstrumentCommand());
+    }
+
+    private static List<TestPlanElement> copyOf(List<TestPlanElement> elements) {
+        List<TestPlanElement> copies = new ArrayList<>(elements.size());
+        for (TestPlanElement element : elements) {
+            copies.add(element.copy());
+        }
+        return copies;
+    }
+
+    @Test
+    public void excludeTestsOnlyInOwnHolderOfSharedCompactPlan() throws Exception {
+        CompactTestPlan plan = CompactTestPlan.of(list);
+        holder = newCompactHolder(plan);
+        InstrumentalTestHolder otherHolder = newCompactHolder(plan);
+
+        holder.provideTestNodeElementsIterator().next().exclude();
+
+        Assert.assertEquals(4, holder.provideCompoundTestPlan().size());
+        Assert.assertEquals(3, otherHolder.provideCompoundTestPlan().size());
+        Assert.assertTrue(holder.provideTestNodeElementsIterator().next().isExcluded());
+        Assert.assertFalse(otherHolder.provideTestNodeElementsIterator().next().isExcluded());
+    }
+
+    private InstrumentalTestHolder newCompactHolder() {
+        return newCompactHolder(CompactTestPlan.of(list));
+    }
+
+    private InstrumentalTestHolder newCompactHolder(CompactTestPlan plan) {
+        return new InstrumentalTestHolder(plan, generator, true, false, TestPlanSplitter.STRING_LIMIT);
+    }
+}
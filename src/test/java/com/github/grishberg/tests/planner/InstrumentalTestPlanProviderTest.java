@@ -1,17 +1,28 @@
 package com.github.grishberg.tests.planner;
 
+import com.android.ddmlib.IShellOutputReceiver;
 import com.github.grishberg.tests.ConnectedDeviceWrapper;
 import com.github.grishberg.tests.InstrumentalPluginExtension;
 import com.github.grishberg.tests.common.RunnerLogger;
+import com.github.grishberg.tests.commands.ExecuteCommandException;
 import org.gradle.api.Project;
+import org.gradle.api.logging.Logger;
+import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.mockito.Mockito.*;
 
@@ -22,19 +33,35 @@ import static org.mockito.Mockito.*;
 public class InstrumentalTestPlanProviderTest {
     private static final String RUN_LOG_COMMAND = "am instrument -r -w -e log true -e listener test_listener TestAppPackage/TestRunner";
     private static final String RUN_LOG_COMMAND_WITH_ARG = "am instrument -r -w -e log true -e listener test_listener -e class com.test.SpecialTest TestAppPackage/TestRunner";
+    private static final String DISCOVERY_OUTPUT = "INSTRUMENTATION_STATUS: id=AndroidJUnitRunner\n" +
+            "INSTRUMENTATION_STATUS: class=com.test.Test1\n" +
+            "INSTRUMENTATION_STATUS: test=test1\n" +
+            "INSTRUMENTATION_STATUS_CODE: 1\n" +
+            "INSTRUMENTATION_STATUS: id=AndroidJUnitRunner\n" +
+            "INSTRUMENTATION_STATUS: class=com.test.Test1\n" +
+            "INSTRUMENTATION_STATUS: test=test2\n" +
+            "INSTRUMENTATION_STATUS_CODE: 1\n" +
+            "INSTRUMENTATION_CODE: -1\n";
     private InstrumentalTestPlanProvider provider;
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
     @Mock
     ConnectedDeviceWrapper deviceWrapper;
     @Mock
+    ConnectedDeviceWrapper secondDeviceWrapper;
+    @Mock
     Project project;
     InstrumentalPluginExtension extension = new InstrumentalPluginExtension();
     @Mock
     PackageTreeGenerator treeGenerator;
     @Mock
     RunnerLogger logger;
+    @Mock
+    Logger gradleLogger;
 
     @Before
     public void setUp() throws Exception {
+        when(project.getLogger()).thenReturn(gradleLogger);
         extension.setInstrumentListener("test_listener");
         extension.setInstrumentalRunner("TestRunner");
         extension.setInstrumentalPackage("TestAppPackage");
@@ -47,7 +74,7 @@ public class InstrumentalTestPlanProviderTest {
 
         provider.provideTestPlan(deviceWrapper, args);
 
-        verify(deviceWrapper).executeShellCommand(eq(RUN_LOG_COMMAND), any(InstrumentTestLogParser.class),
+        verify(deviceWrapper).executeShellCommand(eq(RUN_LOG_COMMAND), any(InstrumentOutputReceiver.class),
                 eq(0L), eq(TimeUnit.SECONDS));
     }
 
@@ -61,7 +88,118 @@ public class InstrumentalTestPlanProviderTest {
 
         provider.provideTestPlan(deviceWrapper, args);
 
-        verify(deviceWrapper).executeShellCommand(eq(RUN_LOG_COMMAND_WITH_ARG), any(InstrumentTestLogParser.class),
+        verify(deviceWrapper).executeShellCommand(eq(RUN_LOG_COMMAND_WITH_ARG), any(InstrumentOutputReceiver.class),
+                eq(0L), eq(TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void discoverTestPlanOnceForSameFingerprint() throws Exception {
+        when(deviceWrapper.getFingerprint()).thenReturn("26/x86");
+        when(secondDeviceWrapper.getFingerprint()).thenReturn("26/x86");
+        HashMap<String, String> args = new HashMap<>();
+
+        provider.provideTestPlan(deviceWrapper, args);
+        provider.provideTestPlan(secondDeviceWrapper, args);
+
+        verify(deviceWrapper).executeShellCommand(eq(RUN_LOG_COMMAND), any(InstrumentOutputReceiver.class),
+                eq(0L), eq(TimeUnit.SECONDS));
+        verify(secondDeviceWrapper, never()).executeShellCommand(anyString(),
+                any(InstrumentOutputReceiver.class), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void discoverTestPlanForEachFingerprint() throws Exception {
+        when(deviceWrapper.getFingerprint()).thenReturn("26/x86");
+        when(secondDeviceWrapper.getFingerprint()).thenReturn("19/armeabi-v7a");
+        HashMap<String, String> args = new HashMap<>();
+
+        provider.provideTestPlan(deviceWrapper, args);
+        provider.provideTestPlan(secondDeviceWrapper, args);
+
+        verify(deviceWrapper).executeShellCommand(eq(RUN_LOG_COMMAND), any(InstrumentOutputReceiver.class),
+                eq(0L), eq(TimeUnit.SECONDS));
+        verify(secondDeviceWrapper).executeShellCommand(eq(RUN_LOG_COMMAND), any(InstrumentOutputReceiver.class),
+                eq(0L), eq(TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void discoverOnDeviceWhenOfflineFilterUsesFeature() throws Exception {
+        extension.setOfflineTestDiscovery(true);
+        extension.setTestApkPath(temporaryFolder.newFile("test.apk").getAbsolutePath());
+        when(project.hasProperty("testFilter")).thenReturn(true);
+        HashMap properties = new HashMap<String, Object>();
+        properties.put("testFilter", "feature~payments");
+        when(project.getProperties()).thenReturn(properties);
+        provider = new InstrumentalTestPlanProvider(project, extension, treeGenerator,
+                new TestPlanCache(temporaryFolder.newFolder("cache"), logger), logger);
+
+        provider.provideTestPlan(deviceWrapper, new HashMap<>());
+
+        verify(deviceWrapper).executeShellCommand(eq(RUN_LOG_COMMAND), any(InstrumentOutputReceiver.class),
+                eq(0L), eq(TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void excludeTestOnlyInOwnHolder() throws Exception {
+        provider = new InstrumentalTestPlanProvider(project, extension, new PackageTreeGenerator(), logger);
+        when(deviceWrapper.getFingerprint()).thenReturn("26/x86");
+        when(secondDeviceWrapper.getFingerprint()).thenReturn("26/x86");
+        doAnswer(invocation -> {
+            IShellOutputReceiver receiver = invocation.getArgument(1);
+            byte[] output = DISCOVERY_OUTPUT.getBytes(StandardCharsets.UTF_8);
+            receiver.addOutput(output, 0, output.length);
+            receiver.flush();
+            return null;
+        }).when(deviceWrapper).executeShellCommand(eq(RUN_LOG_COMMAND), any(IShellOutputReceiver.class),
+                anyLong(), any(TimeUnit.class));
+        HashMap<String, String> args = new HashMap<>();
+
+        InstrumentalTestHolder firstHolder = provider.provideInstrumentalTests(deviceWrapper, args);
+        InstrumentalTestHolder secondHolder = provider.provideInstrumentalTests(secondDeviceWrapper, args);
+        Iterator<TestPlanElement> firstIterator = firstHolder.provideTestNodeElementsIterator();
+        secondHolder.provideTestNodeElementsIterator();
+        firstIterator.next().exclude();
+
+        List<TestPlanElement> firstPlan = firstHolder.provideCompoundTestPlan();
+        List<TestPlanElement> secondPlan = secondHolder.provideCompoundTestPlan();
+        Assert.assertEquals(1, firstPlan.size());
+        Assert.assertEquals("com.test.Test1#test2", firstPlan.get(0).getAmInstrumentCommand());
+        Assert.assertEquals(1, secondPlan.size());
+        Assert.assertEquals("com.test.Test1", secondPlan.get(0).getAmInstrumentCommand());
+    }
+
+    @Test
+    public void discoverOnWaitingDeviceWhenDiscoveryFailed() throws Exception {
+        when(deviceWrapper.getFingerprint()).thenReturn("26/x86");
+        when(secondDeviceWrapper.getFingerprint()).thenReturn("26/x86");
+        HashMap<String, String> args = new HashMap<>();
+        AtomicReference<Throwable> secondDeviceError = new AtomicReference<>();
+        Thread secondDevice = new Thread(() -> {
+            try {
+                provider.provideTestPlan(secondDeviceWrapper, args);
+            } catch (Throwable e) {
+                secondDeviceError.set(e);
+            }
+        });
+        doAnswer(invocation -> {
+            secondDevice.start();
+            while (secondDevice.getState() != Thread.State.WAITING) {
+                Thread.sleep(10);
+            }
+            throw new IOException("device is disconnected");
+        }).when(deviceWrapper).executeShellCommand(eq(RUN_LOG_COMMAND), any(IShellOutputReceiver.class),
+                anyLong(), any(TimeUnit.class));
+
+        try {
+            provider.provideTestPlan(deviceWrapper, args);
+            Assert.fail("discovery failure should be reported to discovering device");
+        } catch (ExecuteCommandException e) {
+            // expected
+        }
+        secondDevice.join(5000);
+
+        Assert.assertNull(secondDeviceError.get());
+        verify(secondDeviceWrapper).executeShellCommand(eq(RUN_LOG_COMMAND), any(InstrumentOutputReceiver.class),
                 eq(0L), eq(TimeUnit.SECONDS));
     }
-}
\ No newline at end of file
+}
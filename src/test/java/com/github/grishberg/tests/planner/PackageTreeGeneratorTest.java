@@ -52,4 +52,45 @@ public class PackageTreeGeneratorTest {
         Assert.assertEquals(TEST_NAME_2, testPlanElement2.getAmInstrumentCommand());
         Assert.assertEquals(TEST_NAME_3, testPlanElement3.getAmInstrumentCommand());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void addTestsIncrementally() {
+        PackageTreeGenerator.PackageTree tree = generator.newPackageTree();
+        tree.add(new TestPlanElement("", "test1", TEST_NAME_1));
+        List<TestPlanElement> roots = tree.getRoots();
+        Assert.assertEquals(1, roots.size());
+        Assert.assertEquals(1, roots.get(0).getAllTestMethods().size());
+
+        tree.add(new TestPlanElement("", "test2", TEST_NAME_1));
+        tree.add(new TestPlanElement("", "test3", TEST_NAME_3));
+        tree.add(new TestPlanElement("", "test4", "org.Test4"));
+
+        Assert.assertEquals(2, roots.size());
+        List<TestPlanElement> compoundElements = roots.get(0).getCompoundElements();
+        Assert.assertEquals(2, compoundElements.size());
+        Assert.assertEquals(TEST_NAME_1, compoundElements.get(0).getAmInstrumentCommand());
+        Assert.assertEquals(TEST_NAME_3, compoundElements.get(1).getAmInstrumentCommand());
+        Assert.assertEquals(3, roots.get(0).getAllTestMethods().size());
+        Assert.assertEquals("org.Test4", roots.get(1).getCompoundElements().get(0).getAmInstrumentCommand());
+    }
+
+    @Test
+    public void makeTreeForPackageWithManyClasses() {
+        ArrayList<TestPlanElement> list = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            list.add(new TestPlanElement("", "test", "com.pkg.Test" + i));
+            list.add(new TestPlanElement("", "test", "com.pkg.sub" + (i % 10) + ".Test" + i));
+        }
+
+        List<TestPlanElement> result = generator.makePackageTree(list);
+
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals(200, result.get(0).getAllTestMethods().size());
+        List<TestPlanElement> compoundElements = result.get(0).getCompoundElements();
+        Assert.assertEquals(200, compoundElements.size());
+        Assert.assertEquals("com.pkg.Test0", compoundElements.get(0).getAmInstrumentCommand());
+        Assert.assertEquals("com.pkg.sub0.Test0", compoundElements.get(1).getAmInstrumentCommand());
+        Assert.assertEquals("com.pkg.sub0.Test10", compoundElements.get(2).getAmInstrumentCommand());
+        Assert.assertEquals("com.pkg.Test99", compoundElements.get(199).getAmInstrumentCommand());
+    }
+}
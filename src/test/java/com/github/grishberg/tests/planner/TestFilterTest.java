@@ -0,0 +1,135 @@
+package com.github.grishberg.tests.planner;
+
+import com.github.grishberg.tests.exceptions.TestFilterSyntaxException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for {@link TestFilter}.
+ */
+@RunWith(JUnit4.class)
+public class TestFilterTest {
+    private final List<TestPlanElement> plan = providePlan();
+
+    @Test
+    public void matchAnnotationBySimpleName() {
+        assertSelected("annotation:Smoke", "smoke", "smokeSlow");
+    }
+
+    @Test
+    public void matchAnnotationByFullName() {
+        assertSelected("annotation:com.test.Smoke", "smoke", "smokeSlow");
+    }
+
+    @Test
+    public void combineTerms() {
+        assertSelected("annotation:Smoke && !flag:slow", "smoke");
+        assertSelected("annotation:Smoke && !flag:slow || feature~payments", "smoke", "payments");
+        assertSelected("annotation:Smoke && (!flag:slow || feature~payments)", "smoke");
+    }
+
+    @Test
+    public void findAttributesUsedInExpression() {
+        TestFilter filter = TestFilter.compile("annotation:Smoke && !(class:Test || feature~payments)");
+
+        Assert.assertTrue(filter.uses(TestFilter.Attribute.ANNOTATION));
+        Assert.assertTrue(filter.uses(TestFilter.Attribute.CLASS));
+        Assert.assertTrue(filter.uses(TestFilter.Attribute.FEATURE));
+        Assert.assertFalse(filter.uses(TestFilter.Attribute.FLAG));
+    }
+
+    @Test
+    public void matchFlagByFullValue() {
+        assertSelected("flag:slow=true", "smokeSlow");
+        assertSelected("flag:slow=false");
+    }
+
+    @Test
+    public void matchClassAndFeatureSubstring() {
+        assertSelected("class:PaymentsTest", "payments");
+        assertSelected("class~com.test.pay", "payments");
+        assertSelected("feature:\"+payments?mode=new\"", "payments");
+    }
+
+    @Test
+    public void selectAllWithNegationOfMissingValue() {
+        assertSelected("!annotation:Missing", "smoke", "smokeSlow", "payments", "other");
+    }
+
+    @Test
+    public void reuseIndexForSeveralFilters() {
+        TestPlanIndex index = new TestPlanIndex(plan);
+
+        Assert.assertEquals(Arrays.asList(plan.get(2), plan.get(3)),
+                TestFilter.compile("!annotation:Smoke").filter(index));
+        Assert.assertEquals(Arrays.asList(plan.get(0), plan.get(1)),
+                TestFilter.compile("annotation:Smoke").filter(index));
+    }
+
+    @Test
+    public void filterKeepsOrder() {
+        List<TestPlanElement> result = TestFilter.compile("!class:OtherTest").filter(plan);
+
+        Assert.assertEquals(Arrays.asList(plan.get(0), plan.get(1), plan.get(2)), result);
+    }
+
+    @Test(expected = TestFilterSyntaxException.class)
+    public void throwExceptionForUnknownKey() {
+        TestFilter.compile("owner:me");
+    }
+
+    @Test(expected = TestFilterSyntaxException.class)
+    public void throwExceptionForNotClosedParenthesis() {
+        TestFilter.compile("(annotation:Smoke");
+    }
+
+    @Test(expected = TestFilterSyntaxException.class)
+    public void throwExceptionForMissingValue() {
+        TestFilter.compile("annotation: && flag:slow");
+    }
+
+    /**
+     * Checks that bitset selection and single element matching give the same result.
+     */
+    private void assertSelected(String expression, String... methods) {
+        TestFilter filter = TestFilter.compile(expression);
+        List<String> selected = new ArrayList<>();
+        for (TestPlanElement element : filter.filter(plan)) {
+            selected.add(element.getMethodName());
+        }
+        List<String> matched = new ArrayList<>();
+        for (TestPlanElement element : plan) {
+            if (filter.matches(element)) {
+                matched.add(element.getMethodName());
+            }
+        }
+        Assert.assertEquals(Arrays.asList(methods), selected);
+        Assert.assertEquals(Arrays.asList(methods), matched);
+    }
+
+    private static List<TestPlanElement> providePlan() {
+        ArrayList<TestPlanElement> plan = new ArrayList<>();
+        TestPlanElement smoke = new TestPlanElement("", "smoke", "com.test.SmokeTest");
+        smoke.addAnnotations(Arrays.asList("com.test.Smoke", "org.junit.Test"));
+        plan.add(smoke);
+
+        TestPlanElement smokeSlow = new TestPlanElement("", "smokeSlow", "com.test.SmokeTest");
+        smokeSlow.addAnnotations(Arrays.asList("com.test.Smoke", "org.junit.Test"));
+        smokeSlow.setFlags(Arrays.asList("slow=true"));
+        plan.add(smokeSlow);
+
+        TestPlanElement payments = new TestPlanElement("", "payments", "com.test.payments.PaymentsTest");
+        payments.addAnnotations(Arrays.asList("org.junit.Test"));
+        payments.setFeature("+payments?mode=new");
+        plan.add(payments);
+
+        plan.add(new TestPlanElement("", "other", "com.test.OtherTest"));
+        return plan;
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.grishberg.tests.planner;
+
+import com.github.grishberg.tests.common.RunnerLogger;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for {@link TestPlanCache}.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class TestPlanCacheTest {
+    private static final String PLAN_INFO = "26/x86 am instrument -r -w -e log true";
+    @Mock
+    RunnerLogger logger;
+    private File testApk;
+    private TestPlanCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        File dir = Files.createTempDirectory("plan_cache").toFile();
+        dir.deleteOnExit();
+        testApk = new File(dir, "test.apk");
+        writeApk("apk content");
+        cache = new TestPlanCache(new File(dir, "cache"), logger);
+    }
+
+    @Test
+    public void returnNullKeyWhenApkAbsent() {
+        Assert.assertNull(cache.makeKey(new File("absent.apk"), PLAN_INFO));
+        Assert.assertNull(cache.makeKey(null, PLAN_INFO));
+    }
+
+    @Test
+    public void changeKeyWhenPlanInfoChanged() {
+        Assert.assertNotEquals(cache.makeKey(testApk, PLAN_INFO),
+                cache.makeKey(testApk, "19/x86 am instrument -r -w -e log true"));
+    }
+
+    @Test
+    public void changeKeyWhenApkChanged() throws Exception {
+        String key = cache.makeKey(testApk, PLAN_INFO);
+        writeApk("new apk content");
+
+        Assert.assertNotEquals(key, cache.makeKey(testApk, PLAN_INFO));
+    }
+
+    @Test
+    public void returnNullWhenPlanNotStored() {
+        Assert.assertNull(cache.read(cache.makeKey(testApk, PLAN_INFO)));
+    }
+
+    @Test
+    public void readStoredPlan() {
+        TestPlanElement element = new TestPlanElement("1", "test1", "com.pkg1.Test1");
+        element.addAnnotations(Arrays.asList("ClearData", "Test"));
+        element.setFeature("payments");
+        element.setFlags(Arrays.asList("slow"));
+        List<TestPlanElement> plan = new ArrayList<>();
+        plan.add(element);
+        String key = cache.makeKey(testApk, PLAN_INFO);
+
+        cache.write(key, plan);
+        List<TestPlanElement> cachedPlan = cache.read(key);
+
+        Assert.assertEquals(plan, cachedPlan);
+        TestPlanElement cachedElement = cachedPlan.get(0);
+        Assert.assertEquals(element.getAnnotations(), cachedElement.getAnnotations());
+        Assert.assertEquals("payments", cachedElement.getFeature());
+        Assert.assertEquals(element.getFlags(), cachedElement.getFlags());
+    }
+
+    private void writeApk(String content) throws Exception {
+        try (FileWriter writer = new FileWriter(testApk)) {
+            writer.write(content);
+        }
+    }
+}
@@ -51,4 +51,20 @@ public class TestPlanElementTest {
         Assert.assertFalse(new TestPlanElement("id1", "test1", "com.test.TestClass1")
                 .equals(new TestPlanElement("id2", "test1", "com.test.TestClass1")));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void updateAmInstrumentCommandWhenParentChanged() {
+        TestPlanElement oldPackage = new TestPlanElement(NodeType.PACKAGE, "old");
+        TestPlanElement newPackage = new TestPlanElement(NodeType.PACKAGE, "new");
+        TestPlanElement subPackage = new TestPlanElement(NodeType.PACKAGE, "sub");
+        TestPlanElement testClass = new TestPlanElement(NodeType.CLASS, "TestClass");
+        oldPackage.addChild(subPackage);
+        subPackage.addChild(testClass);
+        Assert.assertEquals("old.sub.TestClass", testClass.getAmInstrumentCommand());
+
+        newPackage.addChild(subPackage);
+
+        Assert.assertEquals("new.sub", subPackage.getAmInstrumentCommand());
+        Assert.assertEquals("new.sub.TestClass", testClass.getAmInstrumentCommand());
+    }
+}
@@ -0,0 +1,61 @@
+package com.github.grishberg.tests.planner;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Tests for {@link TestPlanIndex}.
+ */
+@RunWith(JUnit4.class)
+public class TestPlanIndexTest {
+    private final TestPlanIndex index = provideIndex();
+
+    @Test
+    public void findFlagByName() {
+        BitSet tests = index.find(TestFilter.Attribute.FLAG, "size", false);
+
+        Assert.assertEquals(bits(0, 1), tests);
+    }
+
+    @Test
+    public void findAnnotationBySubstring() {
+        BitSet tests = index.find(TestFilter.Attribute.ANNOTATION, "Large", true);
+
+        Assert.assertEquals(bits(1), tests);
+    }
+
+    @Test
+    public void returnCopyOfIndexedBitset() {
+        index.find(TestFilter.Attribute.CLASS, "Test1", false).clear();
+
+        Assert.assertEquals(bits(0, 1), index.find(TestFilter.Attribute.CLASS, "Test1", false));
+    }
+
+    @Test
+    public void returnEmptyBitsetForUnknownValue() {
+        Assert.assertTrue(index.find(TestFilter.Attribute.FEATURE, "unknown", false).isEmpty());
+    }
+
+    private static BitSet bits(int... positions) {
+        BitSet result = new BitSet();
+        for (int position : positions) {
+            result.set(position);
+        }
+        return result;
+    }
+
+    private static TestPlanIndex provideIndex() {
+        TestPlanElement small = new TestPlanElement("", "test1", "com.test.Test1");
+        small.setFlags(Arrays.asList("size=small"));
+        TestPlanElement large = new TestPlanElement("", "test2", "com.test.Test1");
+        large.setFlags(Arrays.asList("size=large"));
+        large.addAnnotations(Arrays.asList("android.support.test.filters.LargeTest"));
+        TestPlanElement other = new TestPlanElement("", "test3", "com.test.Test2");
+        return new TestPlanIndex(Arrays.asList(small, large, other));
+    }
+}
@@ -23,6 +23,27 @@ public class TestPlanSplitterTest {
         Assert.assertTrue(res.size() == 1);
     }
 
+    @Test
+    public void splitByByteBudget() {
+        List<TestPlanElement> list = provideTestPlanElements();
+        int testLength = list.get(0).getAmInstrumentCommand().length();
+
+        List<List<TestPlanElement>> res = TestPlanSplitter.splitByArgumentLimit(list, testLength * 3 + 2);
+
+        Assert.assertEquals(3, res.size());
+        Assert.assertEquals(3, res.get(0).size());
+        Assert.assertEquals(3, res.get(1).size());
+        Assert.assertEquals(1, res.get(2).size());
+    }
+
+    @Test
+    public void countUtf8Bytes() {
+        Assert.assertEquals(4, TestPlanSplitter.utf8Length("Test"));
+        Assert.assertEquals(6, TestPlanSplitter.utf8Length("\u0422\u0435\u0441"));
+        Assert.assertEquals(3, TestPlanSplitter.utf8Length("\u20ac"));
+        Assert.assertEquals(4, TestPlanSplitter.utf8Length("\ud83d\ude00"));
+    }
+
     @NotNull
     private ArrayList<TestPlanElement> provideTestPlanElements() {
         ArrayList<TestPlanElement> list = new ArrayList<>();
@@ -0,0 +1,56 @@
+package com.github.grishberg.tests.planner;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for {@link TestPlanStore}.
+ */
+@RunWith(JUnit4.class)
+public class TestPlanStoreTest {
+    private static final String TEST_ID = "AndroidJUnitRunner";
+    private static final String TEST_CLASS = "com.test.TestClass";
+    private final TestPlanStore store = new TestPlanStore();
+
+    @Test
+    public void skipDuplicatedTest() {
+        Assert.assertTrue(store.add(new TestPlanElement(TEST_ID, "test1", TEST_CLASS)));
+        Assert.assertTrue(store.add(new TestPlanElement(TEST_ID, "test2", TEST_CLASS)));
+        Assert.assertFalse(store.add(new TestPlanElement(TEST_ID, "test1", TEST_CLASS)));
+
+        Assert.assertEquals(2, store.getElements().size());
+    }
+
+    @Test
+    public void addSameMethodOfOtherClass() {
+        store.add(new TestPlanElement(TEST_ID, "test1", TEST_CLASS));
+
+        Assert.assertTrue(store.add(new TestPlanElement(TEST_ID, "test1", "com.test.OtherClass")));
+    }
+
+    @Test
+    public void shareEqualStrings() {
+        String className = store.intern(new String(TEST_CLASS));
+
+        Assert.assertSame(className, store.intern(new String(TEST_CLASS)));
+    }
+
+    @Test
+    public void shareEqualLists() {
+        List<String> annotations = store.intern(new ArrayList<>(Arrays.asList("a.Test", "a.Feature")));
+
+        Assert.assertSame(annotations, store.intern(Arrays.asList("a.Test", "a.Feature")));
+        Assert.assertNotSame(annotations, store.intern(Arrays.asList("a.Test")));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void sharedListIsUnmodifiable() {
+        store.intern(Arrays.asList("a.Test")).add("a.Feature");
+    }
+}
@@ -0,0 +1,147 @@
+package com.github.grishberg.tests.planner;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static com.github.grishberg.tests.planner.PlannerCommon.*;
+
+/**
+ * Tests for {@link TestSelectionEncoder}.
+ */
+@RunWith(JUnit4.class)
+public class TestSelectionEncoderTest {
+    private static final int LIMIT = 3500;
+    private final TestSelectionEncoder encoder = new TestSelectionEncoder();
+    private final List<TestPlanElement> roots = new PackageTreeGenerator()
+            .makePackageTree(provideTestPlanElements());
+    private final TestPlanElement rootPackage = roots.get(0);
+
+    @Test
+    public void runAllTestsWithoutArgumentsWhenNothingExcluded() {
+        List<TestSelection> selections = encoder.encode(roots, true, LIMIT, false);
+
+        Assert.assertEquals(1, selections.size());
+        Assert.assertTrue(selections.get(0).getInstrumentationArgs().isEmpty());
+    }
+
+    @Test
+    public void listClassesWhenNegativeSelectionNotAllowed() {
+        List<TestSelection> selections = encoder.encode(roots, false, LIMIT, false);
+
+        Assert.assertEquals(1, selections.size());
+        Assert.assertEquals(Arrays.asList(TEST_NAME_1, TEST_NAME_2, TEST_NAME_3),
+                selections.get(0).getClasses());
+    }
+
+    @Test
+    public void excludeSingleMethodWithNotClass() {
+        rootPackage.getAllTestMethods().get(0).exclude();
+
+        List<TestSelection> selections = encoder.encode(roots, true, LIMIT, false);
+
+        Assert.assertEquals(1, selections.size());
+        Map<String, String> args = selections.get(0).getInstrumentationArgs();
+        Assert.assertEquals(Collections.singletonMap("notClass", TEST_NAME_1 + "#test1"), args);
+    }
+
+    @Test
+    public void listMethodsOfPartialClassWhenNegativeSelectionNotAllowed() {
+        rootPackage.getAllTestMethods().get(0).exclude();
+
+        List<TestSelection> selections = encoder.encode(roots, false, LIMIT, false);
+
+        Assert.assertEquals(Arrays.asList(TEST_NAME_1 + "#test2", TEST_NAME_1 + "#" + TEST__METHOD_NAME_3,
+                TEST_NAME_2, TEST_NAME_3), selections.get(0).getClasses());
+    }
+
+    @Test
+    public void excludePackageWithNotPackage() {
+        rootPackage.getChildren().get(1).exclude();
+
+        List<TestSelection> selections = encoder.encode(roots, true, LIMIT, false);
+
+        Assert.assertEquals(Collections.singletonMap("notPackage", "com.pkg2"),
+                selections.get(0).getInstrumentationArgs());
+    }
+
+    @Test
+    public void listClassesWhenShorterThanExclusions() {
+        TestPlanElement pkg1 = rootPackage.getChildren().get(0);
+        pkg1.getChildren().get(0).exclude();
+        pkg1.getChildren().get(1).getChildren().get(0).exclude();
+
+        List<TestSelection> selections = encoder.encode(roots, true, LIMIT, false);
+
+        Map<String, String> args = selections.get(0).getInstrumentationArgs();
+        Assert.assertEquals(Collections.singletonMap("class", TEST_NAME_2 + "#test5," + TEST_NAME_3), args);
+    }
+
+    @Test
+    public void excludeSingleMethodOfCompactPlanWithNotClass() {
+        CompactTestPlan plan = CompactTestPlan.of(provideTestPlanElements());
+        BitSet excluded = new BitSet();
+        excluded.set(plan.getTestNode(0));
+
+        List<TestSelection> selections = encoder.encode(plan, excluded, true, LIMIT, false);
+
+        Assert.assertEquals(1, selections.size());
+        Assert.assertEquals(Collections.singletonMap("notClass", TEST_NAME_1 + "#test1"),
+                selections.get(0).getInstrumentationArgs());
+    }
+
+    @Test
+    public void excludePackageOfCompactPlanWithNotPackage() {
+        CompactTestPlan plan = CompactTestPlan.of(provideTestPlanElements());
+        BitSet excluded = new BitSet();
+        excluded.set(plan.getParent(plan.getParent(plan.getTestNode(5))));
+
+        List<TestSelection> selections = encoder.encode(plan, excluded, true, LIMIT, false);
+
+        Assert.assertEquals(Collections.singletonMap("notPackage", "com.pkg2"),
+                selections.get(0).getInstrumentationArgs());
+    }
+
+    @Test
+    public void listClassesOfCompactPlanWhenNegativeSelectionNotAllowed() {
+        CompactTestPlan plan = CompactTestPlan.of(provideTestPlanElements());
+
+        List<TestSelection> selections = encoder.encode(plan, new BitSet(), false, LIMIT, false);
+
+        Assert.assertEquals(Arrays.asList(TEST_NAME_1, TEST_NAME_2, TEST_NAME_3),
+                selections.get(0).getClasses());
+    }
+
+    @Test
+    public void returnEmptyListWhenAllTestsExcluded() {
+        rootPackage.exclude();
+
+        Assert.assertTrue(encoder.encode(roots, true, LIMIT, false).isEmpty());
+    }
+
+    @Test
+    public void splitClassesByArgumentLimit() {
+        List<TestSelection> selections = encoder.encode(roots, false,
+                TEST_NAME_1.length() * 2 + 1 + " -e class ".length(), false);
+
+        Assert.assertEquals(2, selections.size());
+        Assert.assertEquals(Arrays.asList(TEST_NAME_1, TEST_NAME_2), selections.get(0).getClasses());
+        Assert.assertEquals(Collections.singletonList(TEST_NAME_3), selections.get(1).getClasses());
+    }
+
+    @Test
+    public void dontSplitClassesWhenPassedInTestFile() {
+        List<TestSelection> selections = encoder.encode(roots, false, TEST_NAME_1.length(), true);
+
+        Assert.assertEquals(1, selections.size());
+        Assert.assertEquals(Arrays.asList(TEST_NAME_1, TEST_NAME_2, TEST_NAME_3),
+                selections.get(0).getClasses());
+    }
+}
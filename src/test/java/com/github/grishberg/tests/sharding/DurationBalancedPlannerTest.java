@@ -0,0 +1,78 @@
+package com.github.grishberg.tests.sharding;
+
+import com.github.grishberg.tests.planner.TestPlanElement;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for {@link DurationBalancedPlanner} and {@link TestDurationHistory}.
+ */
+@RunWith(JUnit4.class)
+public class DurationBalancedPlannerTest {
+    private static final String FAST_CLASS = "com.pkg1.FastTest";
+    private static final String SLOW_CLASS = "com.pkg1.SlowTest";
+    private final TestDurationHistory history = new TestDurationHistory();
+    private DurationBalancedPlanner planner;
+
+    @Before
+    public void setUp() {
+        history.addDuration(FAST_CLASS, "test1", 100);
+        history.addDuration(SLOW_CLASS, "test1", 5000);
+        history.addDuration(SLOW_CLASS, "test2", 3000);
+        planner = new DurationBalancedPlanner(history);
+    }
+
+    @Test
+    public void estimateKnownTestFromHistory() {
+        Assert.assertEquals(5000, history.estimateDuration(new TestPlanElement("", "test1", SLOW_CLASS)));
+    }
+
+    @Test
+    public void estimateNewTestByClassAverage() {
+        Assert.assertEquals(4000, history.estimateDuration(new TestPlanElement("", "test3", SLOW_CLASS)));
+    }
+
+    @Test
+    public void estimateNewClassByAverageOfAllTests() {
+        Assert.assertEquals(2700, history.estimateDuration(new TestPlanElement("", "test1", "com.NewTest")));
+    }
+
+    @Test
+    public void estimateByDefaultWhenHistoryIsEmpty() {
+        Assert.assertEquals(TestDurationHistory.DEFAULT_DURATION_MS, new TestDurationHistory()
+                .estimateDuration(new TestPlanElement("", "test1", SLOW_CLASS)));
+    }
+
+    @Test
+    public void orderLongestBatchesFirst() {
+        TestBatch fast = createBatch(0, new TestPlanElement("", "test1", FAST_CLASS));
+        TestBatch slow = createBatch(1, new TestPlanElement("", "test1", SLOW_CLASS));
+
+        List<TestBatch> ordered = planner.orderByDuration(Arrays.asList(fast, slow));
+
+        Assert.assertEquals(slow, ordered.get(0));
+        Assert.assertEquals(fast, ordered.get(1));
+    }
+
+    @Test
+    public void keepOrderWhenHistoryIsEmpty() {
+        planner = new DurationBalancedPlanner(new TestDurationHistory());
+        List<TestBatch> batches = Arrays.asList(
+                createBatch(0, new TestPlanElement("", "test1", FAST_CLASS)),
+                createBatch(1, new TestPlanElement("", "test1", SLOW_CLASS)));
+
+        Assert.assertEquals(batches, planner.orderByDuration(batches));
+    }
+
+    private TestBatch createBatch(int index, TestPlanElement test) {
+        return new TestBatch(index, new ArrayList<>(), Collections.singletonList(test));
+    }
+}
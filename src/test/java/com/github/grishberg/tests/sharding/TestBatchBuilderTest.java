@@ -0,0 +1,89 @@
+package com.github.grishberg.tests.sharding;
+
+import com.github.grishberg.tests.commands.ClearCommand;
+import com.github.grishberg.tests.commands.DeviceRunnerCommand;
+import com.github.grishberg.tests.planner.TestPlanElement;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for {@link TestBatchBuilder}.
+ */
+@RunWith(JUnit4.class)
+public class TestBatchBuilderTest {
+    private static final String TEST_CLASS = "com.pkg1.Test1";
+
+    @Test
+    public void splitByBatchSize() {
+        TestBatchBuilder builder = new TestBatchBuilder(annotations -> new ArrayList<>(), 2);
+
+        List<TestBatch> batches = builder.buildBatches(provideTests(5));
+
+        Assert.assertEquals(3, batches.size());
+        Assert.assertEquals(2, batches.get(0).getTests().size());
+        Assert.assertEquals(1, batches.get(2).getTests().size());
+        Assert.assertEquals("test_2", batches.get(2).getName());
+    }
+
+    @Test
+    public void startNewBatchWhenHasCommandsForAnnotations() {
+        final List<String> clearData = Arrays.asList("ClearData");
+        TestBatchBuilder builder = new TestBatchBuilder(
+                annotations -> provideCommands(annotations == clearData), 10);
+        List<TestPlanElement> tests = provideTests(3);
+        tests.set(1, new TestPlanElement("", "test1", TEST_CLASS) {
+            @Override
+            public List<String> getAnnotations() {
+                return clearData;
+            }
+        });
+
+        List<TestBatch> batches = builder.buildBatches(tests);
+
+        Assert.assertEquals(2, batches.size());
+        Assert.assertTrue(batches.get(0).getPreCommands().isEmpty());
+        Assert.assertEquals(1, batches.get(0).getTests().size());
+        Assert.assertTrue(batches.get(1).getPreCommands().get(0) instanceof ClearCommand);
+        Assert.assertEquals(2, batches.get(1).getTests().size());
+    }
+
+    @Test
+    public void collectorPublishesBatchWhenItIsComplete() {
+        TestBatchBuilder builder = new TestBatchBuilder(annotations -> new ArrayList<>(), 2);
+        ArrayList<TestBatch> batches = new ArrayList<>();
+        TestBatchBuilder.BatchCollector collector = builder.newCollector(batches::add);
+        List<TestPlanElement> tests = provideTests(3);
+
+        collector.add(tests.get(0));
+        collector.add(tests.get(1));
+        Assert.assertTrue(batches.isEmpty());
+        collector.add(tests.get(2));
+        Assert.assertEquals(1, batches.size());
+        collector.finish();
+
+        Assert.assertEquals(2, batches.size());
+        Assert.assertEquals(1, batches.get(1).getTests().size());
+    }
+
+    private List<DeviceRunnerCommand> provideCommands(boolean needCommands) {
+        ArrayList<DeviceRunnerCommand> commands = new ArrayList<>();
+        if (needCommands) {
+            commands.add(new ClearCommand());
+        }
+        return commands;
+    }
+
+    private List<TestPlanElement> provideTests(int count) {
+        ArrayList<TestPlanElement> tests = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            tests.add(new TestPlanElement("", "test" + i, TEST_CLASS));
+        }
+        return tests;
+    }
+}
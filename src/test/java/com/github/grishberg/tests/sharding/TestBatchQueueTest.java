@@ -0,0 +1,112 @@
+package com.github.grishberg.tests.sharding;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Tests for {@link TestBatchQueue}.
+ */
+@RunWith(JUnit4.class)
+public class TestBatchQueueTest {
+    private static final String DEVICE_1 = "device1";
+    private static final String DEVICE_2 = "device2";
+    private final TestBatchQueue queue = new TestBatchQueue();
+
+    @Test
+    public void returnNullWhenEmpty() {
+        Assert.assertNull(queue.poll(DEVICE_1));
+    }
+
+    @Test
+    public void takeBatchesFromBacklogInOrder() {
+        TestBatch first = createBatch(0);
+        TestBatch second = createBatch(1);
+        queue.addAll(Arrays.asList(first, second));
+
+        Assert.assertEquals(first, queue.poll(DEVICE_1));
+        Assert.assertEquals(second, queue.poll(DEVICE_2));
+        Assert.assertNull(queue.poll(DEVICE_1));
+    }
+
+    @Test
+    public void takeOwnBatchesBeforeBacklog() {
+        TestBatch own = createBatch(0);
+        TestBatch common = createBatch(1);
+        queue.addAll(Collections.singletonList(common));
+        queue.assign(DEVICE_1, Collections.singletonList(own));
+
+        Assert.assertEquals(own, queue.poll(DEVICE_1));
+        Assert.assertEquals(common, queue.poll(DEVICE_1));
+    }
+
+    @Test
+    public void stealFromTailOfOtherDeviceWhenIdle() {
+        TestBatch first = createBatch(0);
+        TestBatch last = createBatch(1);
+        queue.assign(DEVICE_1, Arrays.asList(first, last));
+
+        Assert.assertEquals(last, queue.poll(DEVICE_2));
+        Assert.assertEquals(first, queue.poll(DEVICE_1));
+        Assert.assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void takeReturnsNullWhenClosedAndEmpty() throws Exception {
+        queue.close();
+
+        Assert.assertNull(queue.take(DEVICE_1));
+    }
+
+    @Test
+    public void takeWaitsForAddedBatch() throws Exception {
+        TestBatch batch = createBatch(0);
+        Thread producer = new Thread(() -> {
+            queue.addAll(Collections.singletonList(batch));
+            queue.close();
+        });
+        producer.start();
+
+        Assert.assertEquals(batch, queue.take(DEVICE_1));
+        queue.finish(batch);
+        Assert.assertNull(queue.take(DEVICE_1));
+        producer.join();
+    }
+
+    @Test
+    public void takeReturnedBatchFromDisconnectedDevice() throws Exception {
+        TestBatch batch = createBatch(0);
+        queue.addAll(Collections.singletonList(batch));
+        queue.close();
+        Assert.assertEquals(batch, queue.take(DEVICE_1));
+        Thread disconnectedDevice = new Thread(() -> queue.returnBatch(batch));
+        disconnectedDevice.start();
+
+        Assert.assertEquals(batch, queue.take(DEVICE_2));
+        queue.finish(batch);
+        Assert.assertNull(queue.take(DEVICE_2));
+        disconnectedDevice.join();
+    }
+
+    @Test
+    public void hasUnfinishedBatchesWhenReturnedBatchIsNotTaken() throws Exception {
+        TestBatch batch = createBatch(0);
+        queue.addAll(Collections.singletonList(batch));
+        queue.close();
+        queue.take(DEVICE_1);
+        queue.returnBatch(batch);
+
+        Assert.assertTrue(queue.hasUnfinishedBatches());
+        queue.finish(queue.take(DEVICE_2));
+        Assert.assertFalse(queue.hasUnfinishedBatches());
+    }
+
+    private TestBatch createBatch(int index) {
+        return new TestBatch(index, new ArrayList<>(), new ArrayList<>());
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.grishberg.tests.sharding;
+
+import com.github.grishberg.tests.common.RunnerLogger;
+import com.github.grishberg.tests.planner.TestPlanElement;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.file.Files;
+
+/**
+ * Tests for loading {@link TestDurationHistory} from xml reports.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class TestDurationHistoryTest {
+    private static final String REPORT = "<?xml version='1.0' encoding='UTF-8' ?>\n" +
+            "<testsuite name=\"com.pkg1.Test1\" tests=\"2\" time=\"3.5\">\n" +
+            "  <testcase name=\"test1\" classname=\"com.pkg1.Test1\" time=\"1.5\" />\n" +
+            "  <testcase name=\"test2\" classname=\"com.pkg1.Test1\" time=\"2.0\" />\n" +
+            "</testsuite>";
+    @Mock
+    RunnerLogger logger;
+    private File resultsDir;
+
+    @Before
+    public void setUp() throws Exception {
+        resultsDir = Files.createTempDirectory("results").toFile();
+        try (FileWriter writer = new FileWriter(new File(resultsDir, "TEST-device-project-test_0.xml"))) {
+            writer.write(REPORT);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : resultsDir.listFiles()) {
+            file.delete();
+        }
+        resultsDir.delete();
+    }
+
+    @Test
+    public void loadDurationsFromReports() {
+        TestDurationHistory history = TestDurationHistory.load(resultsDir, logger);
+
+        Assert.assertFalse(history.isEmpty());
+        Assert.assertEquals(1500, history.estimateDuration(
+                new TestPlanElement("", "test1", "com.pkg1.Test1")));
+        Assert.assertEquals(1750, history.estimateDuration(
+                new TestPlanElement("", "test3", "com.pkg1.Test1")));
+    }
+
+    @Test
+    public void returnEmptyHistoryWhenDirNotExists() {
+        TestDurationHistory history = TestDurationHistory.load(new File(resultsDir, "absent"), logger);
+
+        Assert.assertTrue(history.isEmpty());
+    }
+}
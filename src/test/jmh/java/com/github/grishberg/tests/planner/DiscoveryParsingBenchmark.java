@@ -0,0 +1,61 @@
+package com.github.grishberg.tests.planner;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing of am instrument -e log true output.
+ * Raw output is fed to receiver in chunks of the same size as adb shell reads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DiscoveryParsingBenchmark {
+    @Param({"1000", "10000", "100000"})
+    int testCount;
+
+    // ddmlib reads shell output to 16 KB buffer
+    private static final int ADB_CHUNK_SIZE = 16384;
+    private String[] lines;
+    private byte[] output;
+
+    @Setup
+    public void setUp() {
+        lines = SyntheticSuite.makeOutputLines(testCount);
+        output = String.join("\r\n", lines).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public List<TestPlanElement> processNewLines() {
+        InstrumentTestLogParser parser = new InstrumentTestLogParser();
+        parser.processNewLines(lines);
+        parser.done();
+        return parser.getTestInstances();
+    }
+
+    @Benchmark
+    public List<TestPlanElement> receiveRawOutput() {
+        InstrumentOutputReceiver receiver = new InstrumentOutputReceiver();
+        for (int offset = 0; offset < output.length; offset += ADB_CHUNK_SIZE) {
+            receiver.addOutput(output, offset, Math.min(ADB_CHUNK_SIZE, output.length - offset));
+        }
+        receiver.flush();
+        return receiver.getTestInstances();
+    }
+}
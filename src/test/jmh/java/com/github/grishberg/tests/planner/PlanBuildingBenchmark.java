@@ -0,0 +1,67 @@
+package com.github.grishberg.tests.planner;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building of package tree, compact plan, compound plan and argument batches from discovered tests.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlanBuildingBenchmark {
+    @Param({"1000", "10000", "100000"})
+    int testCount;
+
+    private final PackageTreeGenerator packageTreeGenerator = new PackageTreeGenerator();
+    private List<TestPlanElement> testPlan;
+    private List<TestPlanElement> compoundPlan;
+
+    @Setup
+    public void setUp() {
+        testPlan = SyntheticSuite.makeTestPlan(testCount);
+        compoundPlan = new InstrumentalTestHolder(testPlan, packageTreeGenerator)
+                .provideCompoundTestPlan();
+    }
+
+    @Benchmark
+    public List<TestPlanElement> makePackageTree() {
+        return packageTreeGenerator.makePackageTree(testPlan);
+    }
+
+    @Benchmark
+    public List<TestPlanElement> provideCompoundTestPlan() {
+        return new InstrumentalTestHolder(testPlan, packageTreeGenerator).provideCompoundTestPlan();
+    }
+
+    @Benchmark
+    public List<TestPlanElement> provideCompactCompoundTestPlan() {
+        return CompactTestPlan.of(testPlan).getCompoundElements(new BitSet());
+    }
+
+    @Benchmark
+    public List<List<TestPlanElement>> splitTestsByArgumentLimit() {
+        return TestPlanSplitter.splitByArgumentLimit(testPlan);
+    }
+
+    @Benchmark
+    public List<List<TestPlanElement>> splitCompoundPlanByArgumentLimit() {
+        return TestPlanSplitter.splitByArgumentLimit(compoundPlan);
+    }
+}
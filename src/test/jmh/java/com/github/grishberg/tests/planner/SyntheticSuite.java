@@ -0,0 +1,87 @@
+package com.github.grishberg.tests.planner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates am instrument -e log true output in the shape of am_instrument_output.txt
+ * for synthetic suites of given size.
+ */
+class SyntheticSuite {
+    private static final int METHODS_PER_CLASS = 10;
+    private static final int CLASSES_PER_PACKAGE = 20;
+    private static final int PACKAGES_PER_MODULE = 10;
+    private static final String ROOT_PACKAGE = "com.github.grishberg.monorepo";
+
+    private SyntheticSuite() {/* not used */}
+
+    /**
+     * @return output lines for {@code testCount} tests, each test has start and finish blocks.
+     */
+    static String[] makeOutputLines(int testCount) {
+        ArrayList<String> lines = new ArrayList<>(testCount * 15);
+        for (int i = 0; i < testCount; i++) {
+            String className = makeClassName(i);
+            String method = "test" + (i % METHODS_PER_CLASS);
+            String current = String.valueOf(i + 1);
+            addStatusBlock(lines, className, method, current, testCount, "");
+            addStatus(lines, "feature", "+feature" + (i % 3) + "?param1=enabled&param2=disabled");
+            if (i % 4 == 0) {
+                addStatus(lines, "flags", "flag1=value1,flag2=value2");
+            }
+            addStatus(lines, "annotations", makeAnnotations(i));
+            lines.add("INSTRUMENTATION_STATUS_CODE: 1");
+            addStatusBlock(lines, className, method, current, testCount, ".");
+            lines.add("INSTRUMENTATION_STATUS_CODE: 0");
+        }
+        lines.add("INSTRUMENTATION_RESULT: stream=");
+        lines.add("");
+        lines.add("Time: 0.01");
+        lines.add("");
+        lines.add("OK (" + testCount + " tests)");
+        lines.add("");
+        lines.add("");
+        lines.add("INSTRUMENTATION_CODE: -1");
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    /**
+     * @return parsed test plan for {@code testCount} tests.
+     */
+    static List<TestPlanElement> makeTestPlan(int testCount) {
+        InstrumentTestLogParser parser = new InstrumentTestLogParser();
+        parser.processNewLines(makeOutputLines(testCount));
+        parser.done();
+        return parser.getTestInstances();
+    }
+
+    private static void addStatusBlock(List<String> lines, String className, String method,
+                                       String current, int testCount, String stream) {
+        addStatus(lines, "id", "AndroidJUnitRunner");
+        addStatus(lines, "current", current);
+        addStatus(lines, "class", className);
+        addStatus(lines, "stream", stream);
+        addStatus(lines, "numtests", String.valueOf(testCount));
+        addStatus(lines, "test", method);
+    }
+
+    private static void addStatus(List<String> lines, String key, String value) {
+        lines.add("INSTRUMENTATION_STATUS: " + key + "=" + value);
+    }
+
+    private static String makeClassName(int testIndex) {
+        int classIndex = testIndex / METHODS_PER_CLASS;
+        int packageIndex = classIndex / CLASSES_PER_PACKAGE;
+        int moduleIndex = packageIndex / PACKAGES_PER_MODULE;
+        return ROOT_PACKAGE + ".module" + moduleIndex + ".feature" + packageIndex
+                + ".ui.Example" + classIndex + "Test";
+    }
+
+    private static String makeAnnotations(int testIndex) {
+        int classIndex = testIndex / METHODS_PER_CLASS;
+        return "com.github.grishberg.annotaions.Feature,"
+                + ROOT_PACKAGE + ".annotations.Group" + (classIndex % 5)
+                + (testIndex % 2 == 0 ? ",android.support.test.filters.LargeTest" : "")
+                + ",org.junit.Test";
+    }
+}